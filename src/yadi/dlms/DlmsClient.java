@@ -17,17 +17,23 @@
  */
 package yadi.dlms;
 
+import yadi.dlms.cosem.AssociationCache;
 import yadi.dlms.cosem.Cosem;
+import yadi.dlms.cosem.CosemAddress;
 import yadi.dlms.cosem.CosemParameters;
 import yadi.dlms.cosem.LnDescriptor;
 import yadi.dlms.cosem.SnDescriptor;
+import yadi.dlms.linklayer.HdlcLinkLayer;
 import yadi.dlms.linklayer.LinkLayer;
 import yadi.dlms.linklayer.LinkLayerException;
 import yadi.dlms.phylayer.PhyLayer;
 import yadi.dlms.phylayer.PhyLayerException;
+import yadi.dlms.phylayer.PhyLayerException.PhyLayerExceptionReason;
 
 public class DlmsClient {
 	
+	private static final int BLOCK_RECOVERY_RETRIES = 3;
+	
 	private final Cosem cosem;
 	private final LinkLayer link;
 	
@@ -47,6 +53,10 @@ public class DlmsClient {
 	public DlmsClient(LinkLayer link, CosemParameters params) {
 		this.link = link;
 		this.cosem = new Cosem(params);
+		if (link instanceof HdlcLinkLayer) {
+			//the HDLC layer is window 1 NRM, one frame is answered by one frame
+			cosem.limitGeneralBlockTransferWindow(1);
+		}
 	}
 	
 	/**
@@ -57,6 +67,21 @@ public class DlmsClient {
 		return cosem.getParameters();
 	}
 	
+	/**
+	 * Retrieves the max pdu size accepted by the meter
+	 * @return the size negotiated by the association
+	 */
+	public int getMaxPduSize() {
+		return cosem.getMaxPduSize();
+	}
+	
+	/**
+	 * Discards the state of a block transfer interrupted by a failure, so the next request starts a new one
+	 */
+	public void abortTransfer() {
+		cosem.abortTransfer();
+	}
+	
 	/**
 	 * Connects to the server
 	 * @param phy PhyLayer to transmit / receive bytes
@@ -67,6 +92,30 @@ public class DlmsClient {
 	public void connect(PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
 		cosem.reset();
 		link.connect(phy);
+		associate(phy);
+	}
+	
+	/**
+	 * Connects to the server reusing the association cached for the meter, if there is a valid one.
+	 * Otherwise a new association is established and stored in the cache
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param cache AssociationCache shared by the connections
+	 * @param meterId identification of the meter
+	 * @throws PhyLayerException
+	 * @throws DlmsException 
+	 * @throws LinkLayerException 
+	 */
+	public void connect(PhyLayer phy, AssociationCache cache, String meterId) throws PhyLayerException, DlmsException, LinkLayerException {
+		cosem.reset();
+		link.connect(phy);
+		if (cosem.restoreAssociation(cache.get(meterId))) {
+			return;
+		}
+		associate(phy);
+		cache.put(meterId, cosem.getAssociation());
+	}
+	
+	private void associate(PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
 		do {
 			link.send(phy, cosem.connectionRequest());
 		} while (!cosem.parseConnectionResponse(link.read(phy)));
@@ -93,9 +142,18 @@ public class DlmsClient {
 	 * @throws LinkLayerException 
 	 */
 	public void get(PhyLayer phy, LnDescriptor obj) throws PhyLayerException, DlmsException, LinkLayerException {
-		do {
-			link.send(phy, cosem.requestGet(obj));
-		} while(!cosem.parseGetResponse(obj, link.read(phy)));
+		try {
+			sendApdu(phy, cosem.requestGet(obj));
+			while (!cosem.parseGetResponse(obj, readApdu(phy))) {
+				if (!cosem.isReceivingStream()) {
+					sendApdu(phy, cosem.requestGet(obj));
+				}
+			}
+		} catch (PhyLayerException | DlmsException | LinkLayerException e) {
+			//a transfer in blocks left behind would be continued by the next request
+			cosem.abortTransfer();
+			throw e;
+		}
 	}
 	
 	/**
@@ -107,9 +165,17 @@ public class DlmsClient {
 	 * @throws LinkLayerException 
 	 */
 	public void set(PhyLayer phy, LnDescriptor obj) throws PhyLayerException, DlmsException, LinkLayerException {
-		do {
-			link.send(phy, cosem.requestSet(obj));
-		} while (!cosem.parseSetResponse(obj, link.read(phy)));
+		try {
+			sendApdu(phy, cosem.requestSet(obj));
+			while (!cosem.parseSetResponse(obj, readApdu(phy))) {
+				if (!cosem.isReceivingStream()) {
+					sendApdu(phy, cosem.requestSet(obj));
+				}
+			}
+		} catch (PhyLayerException | DlmsException | LinkLayerException e) {
+			cosem.abortTransfer();
+			throw e;
+		}
 	}
 	
 	/**
@@ -121,22 +187,228 @@ public class DlmsClient {
 	 * @throws LinkLayerException 
 	 */
 	public void action(PhyLayer phy, LnDescriptor obj) throws PhyLayerException, DlmsException, LinkLayerException {
-		do {
-			link.send(phy, cosem.requestAction(obj));
-		} while (!cosem.parseActionResponse(obj, link.read(phy)));
+		try {
+			sendApdu(phy, cosem.requestAction(obj));
+			while (!cosem.parseActionResponse(obj, readApdu(phy))) {
+				if (!cosem.isReceivingStream()) {
+					sendApdu(phy, cosem.requestAction(obj));
+				}
+			}
+		} catch (PhyLayerException | DlmsException | LinkLayerException e) {
+			cosem.abortTransfer();
+			throw e;
+		}
+	}
+
+	/**
+	 * Performs a GET operation on an address that may be shared with other sessions
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param address attribute to be read
+	 * @return the data received
+	 * @throws PhyLayerException 
+	 * @throws DlmsException 
+	 * @throws LinkLayerException 
+	 */
+	public byte[] get(PhyLayer phy, CosemAddress address) throws PhyLayerException, DlmsException, LinkLayerException {
+		return get(phy, address, null);
+	}
+	
+	/**
+	 * Performs a GET operation with selective access on an address that may be shared with other sessions
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param address attribute to be read
+	 * @param accessSelection access selector followed by the access parameters, or null
+	 * @return the data received
+	 * @throws PhyLayerException 
+	 * @throws DlmsException 
+	 * @throws LinkLayerException 
+	 */
+	public byte[] get(PhyLayer phy, CosemAddress address, byte[] accessSelection) throws PhyLayerException, DlmsException, LinkLayerException {
+		LnDescriptor obj = new LnDescriptor(address, accessSelection);
+		get(phy, obj);
+		return obj.getResponseData();
+	}
+	
+	/**
+	 * Starts a GET operation whose response is retrieved piece by piece, as the data blocks arrive.
+	 * The next block is only requested when the data of the previous one was taken, so a large attribute
+	 * can be processed while it's transferred
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param address attribute to be read
+	 * @param accessSelection access selector followed by the access parameters, or null
+	 * @return the transfer, nothing is sent until its data is requested
+	 */
+	public GetTransfer getTransfer(PhyLayer phy, CosemAddress address, byte[] accessSelection) {
+		return new GetTransfer(phy, new LnDescriptor(address, accessSelection));
+	}
+	
+	/**
+	 * GET operation whose response is retrieved piece by piece, see getTransfer
+	 */
+	public class GetTransfer implements AutoCloseable {
+		private final PhyLayer phy;
+		private final LnDescriptor obj;
+		private boolean requestPending = true;
+		private boolean finished;
+		
+		private GetTransfer(PhyLayer phy, LnDescriptor obj) {
+			this.phy = phy;
+			this.obj = obj;
+		}
+		
+		/**
+		 * Receives the next piece of the response, requesting the next data block if necessary
+		 * @return the data received, or null if the whole response was already retrieved
+		 * @throws PhyLayerException 
+		 * @throws DlmsException 
+		 * @throws LinkLayerException 
+		 */
+		public byte[] nextData() throws PhyLayerException, DlmsException, LinkLayerException {
+			while (!finished) {
+				if (requestPending) {
+					sendApdu(phy, cosem.requestGet(obj));
+				}
+				if (cosem.parseGetResponse(obj, readApdu(phy))) {
+					finished = true;
+					return obj.getResponseData();
+				}
+				requestPending = !cosem.isReceivingStream();
+				byte[] data = cosem.takeReceivedData();
+				if (data.length != 0) {
+					return data;
+				}
+			}
+			return null;
+		}
+		
+		public boolean isFinished() {
+			return finished;
+		}
+		
+		/**
+		 * Abandons the remaining blocks of the response, if any
+		 */
+		@Override public void close() {
+			if (!finished) {
+				finished = true;
+				cosem.abortTransfer();
+			}
+		}
+	}
+	
+	/**
+	 * Performs a SET operation on an address that may be shared with other sessions
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param address attribute to be written
+	 * @param data the value to be written
+	 * @throws PhyLayerException 
+	 * @throws DlmsException 
+	 * @throws LinkLayerException 
+	 */
+	public void set(PhyLayer phy, CosemAddress address, byte[] data) throws PhyLayerException, DlmsException, LinkLayerException {
+		set(phy, new LnDescriptor(address, data));
+	}
+	
+	/**
+	 * Performs a ACTION operation on an address that may be shared with other sessions
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param address method to be invoked
+	 * @param data the method parameters
+	 * @return the data returned by the method, if any
+	 * @throws PhyLayerException 
+	 * @throws DlmsException 
+	 * @throws LinkLayerException 
+	 */
+	public byte[] action(PhyLayer phy, CosemAddress address, byte[] data) throws PhyLayerException, DlmsException, LinkLayerException {
+		LnDescriptor obj = new LnDescriptor(address, data);
+		action(phy, obj);
+		return obj.getResponseData();
+	}
+
+	/**
+	 * Sends an APDU followed by the remaining blocks of the window, if a general block transfer is in progress
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param apdu the APDU generated by the Cosem layer
+	 * @throws PhyLayerException
+	 * @throws LinkLayerException
+	 */
+	private void sendApdu(PhyLayer phy, byte[] apdu) throws PhyLayerException, LinkLayerException {
+		link.send(phy, apdu);
+		byte[] block;
+		while ((block = cosem.nextStreamedBlock()) != null) {
+			link.send(phy, block);
+		}
+	}
+
+	/**
+	 * Reads an APDU. If it doesn't arrive while a general block transfer is in progress, the blocks received
+	 * so far are acknowledged so the server retransmits the lost ones
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @return the APDU received
+	 * @throws PhyLayerException
+	 * @throws LinkLayerException
+	 */
+	private byte[] readApdu(PhyLayer phy) throws PhyLayerException, LinkLayerException {
+		int retries = 0;
+		while (true) {
+			try {
+				return link.read(phy);
+			} catch (PhyLayerException e) {
+				byte[] request;
+				if (e.getReason() != PhyLayerExceptionReason.TIMEOUT || retries++ == BLOCK_RECOVERY_RETRIES
+						|| (request = cosem.recoverBlockTransfer()) == null) {
+					throw e;
+				}
+				sendApdu(phy, request);
+			}
+		}
 	}
 
 	public LinkLayer getLinkLayer() {
 		return link;
 	}
 
-	public void read(PhyLayer phy, SnDescriptor desc) throws PhyLayerException, LinkLayerException, DlmsException {
-		link.send(phy, cosem.readRequest(desc));
-		cosem.parseReadResponse(desc, link.read(phy));
+	/**
+	 * Performs a READ operation, all the variables are read in the same request
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param descs Short-name descriptors of the variables to be accessed
+	 * @throws PhyLayerException 
+	 * @throws DlmsException 
+	 * @throws LinkLayerException 
+	 */
+	public void read(PhyLayer phy, SnDescriptor... descs) throws PhyLayerException, LinkLayerException, DlmsException {
+		try {
+			sendApdu(phy, cosem.readRequest(descs));
+			while (!cosem.parseReadResponse(descs, readApdu(phy))) {
+				if (!cosem.isReceivingStream()) {
+					sendApdu(phy, cosem.readRequest(descs));
+				}
+			}
+		} catch (PhyLayerException | DlmsException | LinkLayerException e) {
+			cosem.abortTransfer();
+			throw e;
+		}
 	}
 
-	public void write(PhyLayer phy, SnDescriptor desc) throws PhyLayerException, LinkLayerException, DlmsException {
-		link.send(phy, cosem.writeRequest(desc));
-		cosem.parseWriteResponse(desc, link.read(phy));
+	/**
+	 * Performs a WRITE operation, all the variables are written in the same request
+	 * @param phy PhyLayer to transmit / receive bytes
+	 * @param descs Short-name descriptors of the variables to be accessed
+	 * @throws PhyLayerException 
+	 * @throws DlmsException 
+	 * @throws LinkLayerException 
+	 */
+	public void write(PhyLayer phy, SnDescriptor... descs) throws PhyLayerException, LinkLayerException, DlmsException {
+		try {
+			sendApdu(phy, cosem.writeRequest(descs));
+			while (!cosem.parseWriteResponse(descs, readApdu(phy))) {
+				if (!cosem.isReceivingStream()) {
+					sendApdu(phy, cosem.writeRequest(descs));
+				}
+			}
+		} catch (PhyLayerException | DlmsException | LinkLayerException e) {
+			cosem.abortTransfer();
+			throw e;
+		}
 	}
 }
@@ -52,6 +52,10 @@ public class DlmsException extends Exception {
 		SECURITY_FAIL,
 		RECEIVED_INVALID_GET_RESPONSE,
 		RECEIVED_INVALID_SET_RESPONSE,
+		RECEIVED_INVALID_ACTION_RESPONSE,
+		RECEIVED_INVALID_READ_RESPONSE,
+		RECEIVED_INVALID_WRITE_RESPONSE,
+		RECEIVED_INVALID_BLOCK_TRANSFER,
 		UNKNOWN_ACCESS_RESULT_FAILURE,
 		ACCESS_RESULT_HARDWARE_FAULT,
 		ACCESS_RESULT_TEMPORARY_FAILURE,
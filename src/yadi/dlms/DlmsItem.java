@@ -17,18 +17,47 @@
  */
 package yadi.dlms;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
+import yadi.dlms.DlmsException.DlmsExceptionReason;
+import yadi.dlms.classes.clock.ClockStatus;
+import yadi.dlms.classes.clock.CosemDate;
+import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.classes.clock.CosemTime;
+
 public class DlmsItem {
 	
 	private final DlmsType type;
-	private final String value;
+	private String value;
+	private final byte[] data;
+	private final int offset;
+	private final int length;
 	private final ArrayList<DlmsItem> children = new ArrayList<DlmsItem>();
 	
 	public DlmsItem(DlmsType type, String value) {
 		this.type = type;
 		this.value = value;
+		this.data = null;
+		this.offset = 0;
+		this.length = 0;
+	}
+	
+	/**
+	 * Creates an item backed by its encoded payload, the string value is only built when requested.
+	 * The array is not copied, it must not be changed while the item is in use
+	 * @param type the DlmsType of the item
+	 * @param data array containing the payload of the item (without tag and length)
+	 * @param offset index of the payload in data
+	 * @param length size of the payload
+	 */
+	DlmsItem(DlmsType type, byte[] data, int offset, int length) {
+		this.type = type;
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
 	}
 	
 	public void addChildren(DlmsItem item) {
@@ -44,7 +73,112 @@ public class DlmsItem {
 	}
 	
 	public String getValue() {
+		if (value == null && data != null) {
+			try {
+				value = DlmsParser.getString(type, Arrays.copyOfRange(data, offset, offset + length));
+			} catch (DlmsException e) {
+				throw new IllegalStateException(e);
+			}
+		}
 		return value;
 	}
+	
+	/**
+	 * Retrieves the value of an integer, enum or boolean item
+	 * @return the value, unsigned 64 bits values are returned with the same bits
+	 * @throws DlmsException if the item is not numeric
+	 */
+	public long asLong() throws DlmsException {
+		return toLong(type, payload());
+	}
+	
+	/**
+	 * Retrieves the value of a floating point or integer item
+	 * @return the value as double
+	 * @throws DlmsException if the item is not numeric
+	 */
+	public double asDouble() throws DlmsException {
+		return toDouble(type, payload());
+	}
+	
+	/**
+	 * Retrieves the payload of a non container item, e.g. the contents of an octet-string
+	 * @return a copy of the encoded value, without tag and length
+	 * @throws DlmsException if the item is an array or structure
+	 */
+	public byte[] asBytes() throws DlmsException {
+		if (type == DlmsType.ARRAY || type == DlmsType.STRUCTURE || data == null) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+		return Arrays.copyOfRange(data, offset, offset + length);
+	}
+	
+	/**
+	 * Retrieves the value of a date-time item or of a 12 bytes octet-string holding a date-time
+	 * @return the date-time value
+	 * @throws DlmsException if the item is not a date-time
+	 */
+	public CosemDateTime asDateTime() throws DlmsException {
+		if (type != DlmsType.DATE_TIME && type != DlmsType.OCTET_STRING && type != DlmsType.OCTET_STRING_AS_DATETIME
+				&& type != DlmsType.OCTET_STRING_12) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+		return toDateTime(payload());
+	}
+	
+	private ByteBuffer payload() throws DlmsException {
+		if (data == null) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+		return ByteBuffer.wrap(data, offset, length);
+	}
+
+	static long toLong(DlmsType type, ByteBuffer payload) throws DlmsException {
+		switch (type) {
+		case BOOLEAN:
+		case ENUM:
+		case UINT8:
+			return payload.get() & 0xFF;
+		case INT8:
+			return payload.get();
+		case UINT16:
+			return payload.getShort() & 0xFFFF;
+		case INT16:
+			return payload.getShort();
+		case UINT32:
+			return payload.getInt() & 0xFFFFFFFFL;
+		case INT32:
+			return payload.getInt();
+		case UINT64:
+		case INT64:
+			return payload.getLong();
+		default:
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+	}
+	
+	static double toDouble(DlmsType type, ByteBuffer payload) throws DlmsException {
+		switch (type) {
+		case FLOAT32:
+			return payload.getFloat();
+		case FLOAT64:
+			return payload.getDouble();
+		case UINT64:
+			long val = payload.getLong();
+			return val >= 0 ? val : (double)(val >>> 1) * 2.0 + (val & 1);
+		default:
+			return toLong(type, payload);
+		}
+	}
+	
+	static CosemDateTime toDateTime(ByteBuffer payload) throws DlmsException {
+		if (payload.remaining() != 12) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+		CosemDate date = new CosemDate(payload.getShort() & 0xFFFF, payload.get() & 0xFF, payload.get() & 0xFF, payload.get() & 0xFF);
+		CosemTime time = new CosemTime(payload.get() & 0xFF, payload.get() & 0xFF, payload.get() & 0xFF, payload.get() & 0xFF);
+		int deviation = payload.getShort() & 0xFFFF;
+		return new CosemDateTime(date, time, deviation, new ClockStatus(payload.get() & 0xFF));
+	}
 
 }
@@ -47,40 +47,71 @@ public class DlmsParser {
 	 */
 	public static DlmsItem getDlmsItem(byte[] data) throws DlmsException {
 		verify(data);
-		DlmsType type = DlmsType.fromTag(data[0]);
-		DlmsItem item = new DlmsItem(type, getString(data));
-		int numberOfItems = getNumberOfItems(type,data);
-		for (int i = 0; i < numberOfItems; ++i) {
-			data = parseItems(item, getNextData(data));
-		}
-		return item;
+		return new ItemDecoder(data).next();
 	}
 
-	private static byte[] parseItems(DlmsItem parent, byte[] data) throws DlmsException {
-		if (data.length == 0) {
-			return data;
+	/**
+	 * Walks the A-XDR tree once, keeping the offset of the next element instead of copying the remaining data
+	 */
+	private static final class ItemDecoder {
+		private final byte[] data;
+		private int offset;
+		
+		ItemDecoder(byte[] data) {
+			this.data = data;
 		}
-		DlmsType type = DlmsType.fromTag(data[0]);
-		DlmsItem item = new DlmsItem(type, getString(data));
-		parent.addChildren(item);
-		int numberOfItems = getNumberOfItems(type,data);
-		for (int i = 0; i < numberOfItems; ++i) {
-			data = parseItems(item, getNextData(data));
+		
+		DlmsItem next() throws DlmsException {
+			require(1);
+			DlmsType type = DlmsType.fromTag(data[offset++]);
+			if (type == DlmsType.NULL_DATA) {
+				return new DlmsItem(type, data, offset, 0);
+			}
+			if (type.size != 0) {
+				return scalar(type, type.size);
+			}
+			int size = readSize();
+			switch (type) {
+			case ARRAY:
+			case STRUCTURE:
+				//the value of containers is rendered from the bytes after the length, as it always was
+				DlmsItem item = new DlmsItem(type, data, offset, Math.min(size, data.length - offset));
+				for (int i = 0; i < size; ++i) {
+					item.addChildren(next());
+				}
+				return item;
+			case BITSTRING:
+				return scalar(type, (size + 7) / 8);
+			default:
+				return scalar(type, size);
+			}
 		}
-		return data;
-	}
-	
-	private static byte[] getNextData(byte[] data) throws DlmsException {
-		if (data == null || data.length == 0) {
-			return new byte[0];
+		
+		private DlmsItem scalar(DlmsType type, int size) throws DlmsException {
+			require(size);
+			DlmsItem item = new DlmsItem(type, data, offset, size);
+			offset += size;
+			return item;
 		}
-		DlmsType type = DlmsType.fromTag(data[0]);
-		if (getNumberOfItems(type,data) == 0) {
-			int offset = type.size == 0 ? getSize(data) + getOffset(data) : type.size + 1;
-			return Arrays.copyOfRange(data, offset, data.length);
+		
+		private int readSize() throws DlmsException {
+			require(1);
+			try {
+				int lengthSize = DlmsType.lengthSize(data[offset]);
+				require(lengthSize);
+				int size = DlmsType.readLength(data, offset);
+				offset += lengthSize;
+				return size;
+			} catch (IllegalArgumentException e) {
+				throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+			}
+		}
+		
+		private void require(int size) throws DlmsException {
+			if (size < 0 || data.length - offset < size) {
+				throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+			}
 		}
-		int offset = getOffset(data);
-		return Arrays.copyOfRange(data, offset, data.length);
 	}
 
 	/**
@@ -96,6 +127,9 @@ public class DlmsParser {
 	}
 	
 	public static String getString(DlmsType type, ByteArrayInputStream is) throws DlmsException {
+		if (type == DlmsType.NULL_DATA) {
+			return "";
+		}
 		verify(is);
 		return DlmsParser.getStringValue(type, getPayload(type, is));
 	}
@@ -147,15 +181,9 @@ public class DlmsParser {
 		return DlmsParser.getTimeStringValue(getPayload(type, data));
 	}
 	
-	private static int getNumberOfItems(DlmsType type, byte[] data) {
-		if (type.equals(DlmsType.ARRAY) ||type.equals(DlmsType.STRUCTURE)) {
-			return getSize(data);
-		}
-		return 0;
-	}
-
 	private static void verify(byte[] data) throws DlmsException {
-		if (data == null || data.length < 2) {
+		//null-data is the only element made of the tag alone
+		if (data == null || data.length == 0 || (data.length == 1 && data[0] != DlmsType.NULL_DATA.tag)) {
 			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
 		}
 	}
@@ -167,14 +195,14 @@ public class DlmsParser {
 	}
 	
 	public static byte[] getPayload(DlmsType type, byte[] data) {
-		int offset = type.size == 0 ? getOffset(data) : 1;
-		int size = type.size == 0 ? getSize(data) : type.size;
+		int offset = type.isVariableSize() ? getOffset(data) : 1;
+		int size = type.isVariableSize() ? getSize(data) : type.size;
 		return Arrays.copyOfRange(data, offset, offset+size);
 	}
 	
 	public static byte[] getPayload(DlmsType type, ByteArrayInputStream is) throws DlmsException {
 		try {
-			int size = type.size == 0 ? getSize(is) : type.size;
+			int size = type.isVariableSize() ? getSize(is) : type.size;
 			byte[] data = new byte[size];
 			is.read(data);
 			return data;
@@ -184,7 +212,10 @@ public class DlmsParser {
 	}
 	
 	public static byte[] pack(DlmsType type, byte[] data) {
-		int offset = type.size == 0 ? 1 : 0;
+		if (type == DlmsType.NULL_DATA && data.length != 0) {
+			throw new IllegalArgumentException("null-data has no contents");
+		}
+		int offset = type.isVariableSize() ? 1 : 0;
 		byte[] retval = new byte[data.length + 1 + offset];
 		retval[0] = (byte) type.tag;
 		if (offset != 0) {
@@ -217,6 +248,8 @@ public class DlmsParser {
 
 	private static String getStringValue(DlmsType type, byte[] payload) throws DlmsException {
 		switch (type) {
+		case NULL_DATA:
+			return "";
 		case ARRAY:
 			return bytesToHex(payload);
 		case BCD:
@@ -268,6 +301,8 @@ public class DlmsParser {
 	
 	public static byte[] getByteValue(DlmsType type, String value) throws DlmsException {
 		switch (type) {
+		case NULL_DATA:
+			return pack(type, new byte[0]);
 		case ARRAY:
 		case BCD:
 		case BITSTRING:
@@ -306,64 +341,21 @@ public class DlmsParser {
 	}
 
 	private static int getOffset(byte[] data) {
-		if ((data[1] & 0xFF) <= 0x80) {
-			return 2;
-		}
-		return (data[1] & 0x0F) + 2;
+		return DlmsType.lengthSize(data[1]) + 1;
 	}
 
 	private static int getSize(byte[] data) {
-		if ((data[1] & 0xFF) <= 0x80) {
-			return data[1] & 0xFF;
-		}
-		if (data[1] == (byte)0x81) {
-			return data[2] & 0xFF;
-		}
-		if (data[1] == (byte)0x82) {
-			return ByteBuffer.wrap(data, 2, 2).getShort();
-		}
-		if (data[1] == (byte)0x83) {
-			return ByteBuffer.allocate(4).put((byte)0x00).put(data, 2, 3).getInt(0);
-		}
-		if (data[1] == (byte)0x84) {
-			return ByteBuffer.wrap(data, 2, 4).getInt();
-		}
-		throw new IllegalArgumentException();
+		return DlmsType.readLength(data, 1);
 	}
 	
 	private static int getSize(ByteArrayInputStream is) {
-		int size = is.read();
-		if (size <= 0x80) {
-			return size;
-		}
-		if (size == 0x81) {
-			return is.read();
-		}
-		if (size== 0x82) {
-			size = is.read();
-			size <<= 8;
-			size |= is.read();
-			return size;
-		}
-		if (size == 0x83) {
-			size = is.read();
-			size <<= 8;
-			size |= is.read();
-			size <<= 8;
-			size |= is.read();
-			return size;
-		}
-		if (size == 0x84) {
-			size = is.read();
-			size <<= 8;
-			size |= is.read();
-			size <<= 8;
-			size |= is.read();
-			size <<= 8;
-			size |= is.read();
-			return size;
+		int first = is.read();
+		byte[] length = new byte[DlmsType.lengthSize(first)];
+		length[0] = (byte)first;
+		if (is.read(length, 1, length.length - 1) != length.length - 1) {
+			throw new IllegalArgumentException();
 		}
-		throw new IllegalArgumentException();
+		return DlmsType.readLength(length, 0);
 	}
 	
 	private static String bytesToHex(byte[] data) {
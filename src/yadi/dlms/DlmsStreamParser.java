@@ -0,0 +1,340 @@
+package yadi.dlms;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import yadi.dlms.DlmsException.DlmsExceptionReason;
+import yadi.dlms.classes.clock.CosemDateTime;
+
+/**
+ * Pull parser for A-XDR encoded data received in chunks.
+ * The data is fed as it arrives (e.g. one data block at a time) and each call to next() returns the next
+ * event: the start of an array or structure with its number of elements, a value, or the end of a container.
+ * Only the bytes of the element being decoded are kept, so payloads of any size are parsed with constant memory.
+ */
+public class DlmsStreamParser {
+
+	public enum Event {
+		/** start of an array, getSize() returns the number of elements */
+		START_ARRAY,
+		/** start of a structure, getSize() returns the number of elements */
+		START_STRUCTURE,
+		/** a simple value, retrieved with getType() and the value accessors */
+		VALUE,
+		/** a null-data element */
+		NULL_DATA,
+		/** end of the current array or structure */
+		END,
+		/** the next event is not complete yet, more data must be fed */
+		NEED_DATA,
+		/** all the data was parsed and endOfInput() was called */
+		END_OF_INPUT
+	}
+	
+	private byte[] buffer = new byte[256];
+	private int start;
+	private int end;
+	private boolean endOfInput;
+	
+	private int[] remaining = new int[8];
+	private int depth;
+	private int skipDepth = -1;
+	private long skipBytes;
+	
+	private Event event;
+	private DlmsType type;
+	private int size;
+	private byte[] value = new byte[16];
+	private int valueLength;
+	
+	/**
+	 * Appends data to be parsed
+	 * @param data array with the data
+	 * @param offset index of the first byte
+	 * @param length number of bytes
+	 */
+	public void feed(byte[] data, int offset, int length) {
+		if (endOfInput) {
+			throw new IllegalStateException();
+		}
+		if (buffer.length - end < length) {
+			int pending = end - start;
+			if (buffer.length < pending + length) {
+				buffer = Arrays.copyOfRange(buffer, start, start + Math.max(buffer.length * 2, pending + length));
+			} else {
+				System.arraycopy(buffer, start, buffer, 0, pending);
+			}
+			start = 0;
+			end = pending;
+		}
+		System.arraycopy(data, offset, buffer, end, length);
+		end += length;
+	}
+	
+	public void feed(byte[] data) {
+		feed(data, 0, data.length);
+	}
+	
+	/**
+	 * Signals that no more data will be fed
+	 */
+	public void endOfInput() {
+		endOfInput = true;
+	}
+	
+	/**
+	 * Parses the next event
+	 * @return the event parsed, NEED_DATA if more data must be fed before the event can be parsed
+	 * @throws DlmsException if the data is not valid A-XDR
+	 */
+	public Event next() throws DlmsException {
+		event = parseNext();
+		return event;
+	}
+	
+	/**
+	 * Retrieves the next element as it was encoded, tag and length included, without decoding it.
+	 * Whole elements (e.g. the entries of a profile) can be handed over as soon as all their bytes were fed
+	 * @return a copy of the encoded element, or null if more data must be fed
+	 * @throws DlmsException if the data is not valid A-XDR
+	 */
+	public byte[] nextElement() throws DlmsException {
+		if (skipBytes > 0 || skipDepth >= 0 || (depth > 0 && remaining[depth - 1] == 0)) {
+			throw new IllegalStateException();
+		}
+		int elementEnd = elementEnd(start);
+		if (elementEnd < 0) {
+			needData();
+			return null;
+		}
+		byte[] element = Arrays.copyOfRange(buffer, start, elementEnd);
+		start = elementEnd;
+		event = null;
+		elementDone();
+		return element;
+	}
+	
+	/**
+	 * Skips the remaining elements of the array or structure just started, without decoding them.
+	 * The next event returned is the one after the end of the container (its END is not returned)
+	 */
+	public void skip() {
+		if (event != Event.START_ARRAY && event != Event.START_STRUCTURE) {
+			throw new IllegalStateException();
+		}
+		skipDepth = depth - 1;
+	}
+	
+	/**
+	 * @return the number of containers currently open
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * @return the number of elements of the container just started
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * @return the type of the last element parsed
+	 */
+	public DlmsType getType() {
+		return type;
+	}
+	
+	public long getLong() throws DlmsException {
+		return DlmsItem.toLong(type, valueBuffer());
+	}
+	
+	public double getDouble() throws DlmsException {
+		return DlmsItem.toDouble(type, valueBuffer());
+	}
+	
+	public CosemDateTime getDateTime() throws DlmsException {
+		return DlmsItem.toDateTime(valueBuffer());
+	}
+	
+	/**
+	 * @return a copy of the payload of the last value parsed
+	 */
+	public byte[] getBytes() throws DlmsException {
+		return Arrays.copyOf(value, valueBuffer().remaining());
+	}
+	
+	/**
+	 * @return the last value parsed as a DlmsItem
+	 */
+	public DlmsItem getItem() throws DlmsException {
+		return new DlmsItem(type, getBytes(), 0, valueLength);
+	}
+	
+	private ByteBuffer valueBuffer() throws DlmsException {
+		if (event != Event.VALUE) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+		return ByteBuffer.wrap(value, 0, valueLength);
+	}
+	
+	private Event parseNext() throws DlmsException {
+		while (true) {
+			if (skipBytes > 0) {
+				int skipped = (int)Math.min(skipBytes, end - start);
+				start += skipped;
+				skipBytes -= skipped;
+				if (skipBytes > 0) {
+					return needData();
+				}
+				elementDone();
+			}
+			if (depth > 0 && remaining[depth - 1] == 0) {
+				--depth;
+				elementDone();
+				if (depth == skipDepth) {
+					skipDepth = -1;
+					continue;
+				}
+				if (skipDepth < 0) {
+					return Event.END;
+				}
+				continue;
+			}
+			if (start == end) {
+				if (!endOfInput) {
+					return Event.NEED_DATA;
+				}
+				if (depth != 0) {
+					throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+				}
+				return Event.END_OF_INPUT;
+			}
+			
+			int pos = start;
+			int tag = buffer[pos++] & 0xFF;
+			if (tag == 0) {
+				start = pos;
+				elementDone();
+				if (skipDepth < 0) {
+					type = null;
+					return Event.NULL_DATA;
+				}
+				continue;
+			}
+			DlmsType elementType = DlmsType.fromTag(tag);
+			long len = elementType.size;
+			if (len == 0) {
+				if (pos == end) {
+					return needData();
+				}
+				int lengthSize = lengthSize(pos);
+				if (end - pos < lengthSize) {
+					return needData();
+				}
+				len = readLength(pos);
+				pos += lengthSize;
+			}
+			
+			if (elementType == DlmsType.ARRAY || elementType == DlmsType.STRUCTURE) {
+				start = pos;
+				push((int)len);
+				if (skipDepth < 0) {
+					type = elementType;
+					size = (int)len;
+					return elementType == DlmsType.ARRAY ? Event.START_ARRAY : Event.START_STRUCTURE;
+				}
+				continue;
+			}
+			
+			if (elementType == DlmsType.BITSTRING) {
+				len = (len + 7) / 8;
+			}
+			if (skipDepth >= 0) {
+				start = pos;
+				skipBytes = len;
+				if (len == 0) {
+					elementDone();
+				}
+				continue;
+			}
+			if (end - pos < len) {
+				return needData();
+			}
+			if (value.length < len) {
+				value = new byte[(int)len];
+			}
+			System.arraycopy(buffer, pos, value, 0, (int)len);
+			valueLength = (int)len;
+			start = pos + (int)len;
+			type = elementType;
+			elementDone();
+			return Event.VALUE;
+		}
+	}
+	
+	/**
+	 * @return the position after the element starting at pos, -1 if it wasn't completely fed
+	 */
+	private int elementEnd(int pos) throws DlmsException {
+		if (pos >= end) {
+			return -1;
+		}
+		int tag = buffer[pos++] & 0xFF;
+		int fixedSize = DlmsType.fixedSize(tag);
+		if (fixedSize >= 0) {
+			return end - pos >= fixedSize ? pos + fixedSize : -1;
+		}
+		DlmsType type = DlmsType.fromTag(tag);
+		if (pos == end || end - pos < lengthSize(pos)) {
+			return -1;
+		}
+		int length = readLength(pos);
+		pos += lengthSize(pos);
+		if (type == DlmsType.ARRAY || type == DlmsType.STRUCTURE) {
+			for (int i = 0; i < length && pos >= 0; ++i) {
+				pos = elementEnd(pos);
+			}
+			return pos;
+		}
+		int contents = type.contentsSize(length);
+		return end - pos >= contents ? pos + contents : -1;
+	}
+	
+	private int lengthSize(int pos) throws DlmsException {
+		try {
+			return DlmsType.lengthSize(buffer[pos]);
+		} catch (IllegalArgumentException e) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+	}
+	
+	private int readLength(int pos) throws DlmsException {
+		try {
+			return DlmsType.readLength(buffer, pos);
+		} catch (IllegalArgumentException e) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+	}
+	
+	private Event needData() throws DlmsException {
+		if (endOfInput) {
+			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		}
+		return Event.NEED_DATA;
+	}
+	
+	private void push(int count) {
+		if (depth == remaining.length) {
+			remaining = Arrays.copyOf(remaining, depth * 2);
+		}
+		remaining[depth++] = count;
+	}
+	
+	private void elementDone() {
+		if (depth > 0) {
+			remaining[depth - 1]--;
+		}
+	}
+}
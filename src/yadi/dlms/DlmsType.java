@@ -17,9 +17,14 @@
  */
 package yadi.dlms;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import yadi.dlms.DlmsException.DlmsExceptionReason;
 
 public enum DlmsType {
+	NULL_DATA(0,0),
 	ARRAY(1,0),
 	STRUCTURE(2,0),
 	BCD(13,0),
@@ -46,7 +51,25 @@ public enum DlmsType {
 	OCTET_STRING_12(9,0);
 	
 	public final int tag;
-	final int size;
+	public final int size;
+	
+	private static final DlmsType[] typesByTag = new DlmsType[256];
+	private static final int[] fixedSizes = new int[256];
+	
+	static {
+		Arrays.fill(fixedSizes, -1);
+		fixedSizes[NULL_DATA.tag] = 0;
+		for (DlmsType type : values()) {
+			int index = type.tag & 0xFF;
+			//tags shared by the octet-string subtypes resolve to the first one declared, see fromOctetString
+			if (typesByTag[index] == null) {
+				typesByTag[index] = type;
+				if (type.size != 0) {
+					fixedSizes[index] = type.size;
+				}
+			}
+		}
+	}
 	
 	DlmsType(int tag, int size) {
 		this.tag = (byte)tag;
@@ -54,11 +77,146 @@ public enum DlmsType {
 	}
 	
 	public static DlmsType fromTag(int tag) throws DlmsException {
-		for (DlmsType type: values()) {
-			if (type.tag == tag) {
-				return type;
+		DlmsType type = tag >= 0 && tag < typesByTag.length ? typesByTag[tag] : null;
+		if (type == null) {
+			throw new DlmsException(DlmsExceptionReason.NO_SUCH_TYPE, "Tag: "+tag);
+		}
+		return type;
+	}
+	
+	/**
+	 * Resolves the subtype of an octet-string from its length, as the tag alone is ambiguous
+	 * @param length number of bytes of the octet-string
+	 * @return OCTET_STRING_12 for 12 bytes long strings (date-time candidates), OCTET_STRING otherwise
+	 */
+	public static DlmsType fromOctetString(int length) {
+		return length == 12 ? OCTET_STRING_12 : OCTET_STRING;
+	}
+	
+	/**
+	 * Retrieves the size of the contents of a fixed size type without resolving the type
+	 * @param tag tag of the element
+	 * @return the number of bytes after the tag, or -1 if the type is unknown or the contents are length prefixed
+	 */
+	public static int fixedSize(int tag) {
+		return fixedSizes[tag & 0xFF];
+	}
+	
+	/**
+	 * @return true if the contents are preceded by an A-XDR length
+	 */
+	public boolean isVariableSize() {
+		return size == 0 && this != NULL_DATA;
+	}
+	
+	/**
+	 * Retrieves the number of bytes of contents from the A-XDR length of a variable size element
+	 * @param length the length encoded after the tag, in elements or bits
+	 * @return the number of bytes that follow the length, 0 for arrays and structures as their elements follow
+	 */
+	public int contentsSize(int length) {
+		switch (this) {
+		case ARRAY:
+		case STRUCTURE:
+			return 0;
+		case BITSTRING:
+			return (length + 7) / 8;
+		default:
+			return size != 0 ? size : length;
+		}
+	}
+	
+	/**
+	 * Retrieves the number of bytes of an A-XDR length from its first byte
+	 * @param first the first byte of the length
+	 * @return 1 for lengths up to 127, otherwise 1 plus the number of bytes that follow (1 to 4)
+	 * @throws IllegalArgumentException if the byte doesn't start a valid length (0x80 or more than 4 bytes)
+	 */
+	public static int lengthSize(int first) {
+		first &= 0xFF;
+		if (first < 0x80) {
+			return 1;
+		}
+		int nBytes = first & 0x7F;
+		if (nBytes == 0 || nBytes > 4) {
+			throw new IllegalArgumentException("invalid size = "+first);
+		}
+		return nBytes + 1;
+	}
+	
+	/**
+	 * Decodes an A-XDR length
+	 * @param data array with the length
+	 * @param offset index of the first byte of the length, all the bytes of the length must be in the array
+	 * @return the length
+	 * @throws IllegalArgumentException if the length is not valid or doesn't fit an int
+	 */
+	public static int readLength(byte[] data, int offset) {
+		int nBytes = lengthSize(data[offset]) - 1;
+		if (nBytes == 0) {
+			return data[offset];
+		}
+		int length = 0;
+		for (int i = 1; i <= nBytes; ++i) {
+			length = (length << 8) | (data[offset + i] & 0xFF);
+		}
+		return checkLength(length);
+	}
+	
+	/**
+	 * Decodes an A-XDR length
+	 * @param buffer buffer positioned at the length, it's left after the length
+	 * @return the length
+	 * @throws IllegalArgumentException if the length is not valid or doesn't fit an int
+	 * @throws BufferUnderflowException if the length is truncated
+	 */
+	public static int readLength(ByteBuffer buffer) {
+		int first = buffer.get() & 0xFF;
+		int nBytes = lengthSize(first) - 1;
+		if (nBytes == 0) {
+			return first;
+		}
+		int length = 0;
+		for (int i = 0; i < nBytes; ++i) {
+			length = (length << 8) | (buffer.get() & 0xFF);
+		}
+		return checkLength(length);
+	}
+	
+	/**
+	 * Skips an encoded element, including all the elements inside it when it's an array or a structure
+	 * @param buffer buffer positioned at the tag of the element, it's left after the element
+	 * @throws IllegalArgumentException if a tag or a length is not valid
+	 * @throws BufferUnderflowException if the element is truncated
+	 */
+	public static void skip(ByteBuffer buffer) {
+		int pending = 1;
+		while (pending-- > 0) {
+			int tag = buffer.get() & 0xFF;
+			int contents = fixedSize(tag);
+			if (contents < 0) {
+				DlmsType type = typesByTag[tag];
+				if (type == null) {
+					throw new IllegalArgumentException("received tag = "+tag);
+				}
+				int length = readLength(buffer);
+				if (type == ARRAY || type == STRUCTURE) {
+					pending += length;
+					continue;
+				}
+				contents = type.contentsSize(length);
 			}
+			if (buffer.remaining() < contents) {
+				throw new BufferUnderflowException();
+			}
+			buffer.position(buffer.position() + contents);
+		}
+	}
+	
+	private static int checkLength(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("invalid size = "+(length & 0xFFFFFFFFL));
 		}
-		throw new DlmsException(DlmsExceptionReason.NO_SUCH_TYPE, "Tag: "+tag);
+		return length;
 	}
 }
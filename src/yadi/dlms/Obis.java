@@ -19,7 +19,10 @@ package yadi.dlms;
 
 public class Obis {
 	
-	private final byte[] value;
+	private static final int CACHE_SIZE = 1024;
+	private static final Obis[] cache = new Obis[CACHE_SIZE];
+	
+	private final long value;
 	
 	/**
 	 * Creates a OBIS using the byte value for each group
@@ -31,7 +34,7 @@ public class Obis {
 	 * @param F byte value of group F
 	 */
 	public Obis(int A, int B, int C, int D, int E, int F) {
-		value = new byte[] {(byte)A, (byte)B, (byte)C, (byte)D, (byte)E, (byte)F};
+		value = pack(A, B, C, D, E, F);
 	}
 	
 	/**
@@ -42,8 +45,7 @@ public class Obis {
 		if (value.length != 6) {
 			throw new IllegalArgumentException();
 		}
-		this.value = new byte[6];
-		System.arraycopy(value, 0, this.value, 0, 6);
+		this.value = pack(value[0], value[1], value[2], value[3], value[4], value[5]);
 	}
 	
 	/**
@@ -51,17 +53,75 @@ public class Obis {
 	 * @param obis a String representing the OBIS in the form A.B.C.D.E.F
 	 */
 	public Obis(String obis) {
-		String[] data = obis.split("\\.");
-		if (data.length != 6) {
-			System.out.println(data.length);
+		value = parse(obis);
+	}
+	
+	private Obis(long value) {
+		this.value = value;
+	}
+	
+	/**
+	 * Retrieves a OBIS from the intern cache, creating it if it's not there
+	 * @param value the OBIS packed as returned by toLong()
+	 * @return a OBIS with the value given, the same instance is returned while it stays in the cache
+	 */
+	public static Obis valueOf(long value) {
+		if ((value & ~0xFFFFFFFFFFFFL) != 0) {
+			throw new IllegalArgumentException("OBIS must have 6 bytes");
+		}
+		int index = (int)((value * 0x9E3779B97F4A7C15L) >>> 54) & (CACHE_SIZE - 1);
+		Obis obis = cache[index];
+		if (obis == null || obis.value != value) {
+			obis = new Obis(value);
+			cache[index] = obis;
+		}
+		return obis;
+	}
+	
+	/**
+	 * Same as new Obis(String), but interned and without intermediate allocations
+	 * @param obis a String representing the OBIS in the form A.B.C.D.E.F
+	 * @return a OBIS with the value given
+	 */
+	public static Obis valueOf(CharSequence obis) {
+		return valueOf(parse(obis));
+	}
+	
+	public static Obis valueOf(byte[] value, int offset) {
+		if (offset < 0 || value.length - offset < 6) {
+			throw new IllegalArgumentException();
+		}
+		return valueOf(pack(value[offset], value[offset + 1], value[offset + 2], value[offset + 3], value[offset + 4], value[offset + 5]));
+	}
+	
+	/**
+	 * Parses the string representation of a OBIS
+	 * @param obis a String representing the OBIS in the form A.B.C.D.E.F
+	 * @return the six groups packed in a long, A being the most significant
+	 */
+	public static long parse(CharSequence obis) {
+		long packed = 0;
+		int groups = 0;
+		int group = -1;
+		for (int i = 0; i < obis.length(); ++i) {
+			char c = obis.charAt(i);
+			if (c >= '0' && c <= '9') {
+				group = (group < 0 ? 0 : group * 10) + (c - '0');
+				if (group > 0xFF) {
+					throw new IllegalArgumentException("invalid OBIS group: "+obis);
+				}
+			} else if (c == '.' && group >= 0 && groups < 5) {
+				packed = (packed << 8) | group;
+				++groups;
+				group = -1;
+			} else {
+				throw new IllegalArgumentException("invalid OBIS: "+obis);
+			}
+		}
+		if (groups != 5 || group < 0) {
 			throw new IllegalArgumentException("OBIS must have 6 bytes");
 		}
-		value = new byte[] {(byte)Integer.parseInt(data[0]),
-							(byte)Integer.parseInt(data[1]),
-							(byte)Integer.parseInt(data[2]),
-							(byte)Integer.parseInt(data[3]),
-							(byte)Integer.parseInt(data[4]),
-							(byte)Integer.parseInt(data[5])};
+		return (packed << 8) | group;
 	}
 	
 	/**
@@ -69,11 +129,71 @@ public class Obis {
 	 * @return byte array of the OBIS value
 	 */
 	public byte[] getValue() {
+		byte[] bytes = new byte[6];
+		writeTo(bytes, 0);
+		return bytes;
+	}
+	
+	/**
+	 * Writes the value of each group of the OBIS
+	 * @param dst destination array
+	 * @param offset index of dst where group A is written
+	 */
+	public void writeTo(byte[] dst, int offset) {
+		for (int i = 0; i < 6; ++i) {
+			dst[offset + i] = (byte)(value >>> (40 - 8 * i));
+		}
+	}
+	
+	/**
+	 * Retrieves the value of one group
+	 * @param index index of the group, 0 for A up to 5 for F
+	 * @return value of the group, from 0 to 255
+	 */
+	public int getGroup(int index) {
+		if (index < 0 || index > 5) {
+			throw new IllegalArgumentException();
+		}
+		return (int)(value >>> (40 - 8 * index)) & 0xFF;
+	}
+	
+	/**
+	 * @return the six groups packed in a long, A being the most significant
+	 */
+	public long toLong() {
 		return value;
 	}
 	
+	/**
+	 * Appends the string representation A.B.C.D.E.F without intermediate strings
+	 * @param sb destination of the text
+	 * @return sb
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
+		for (int i = 0; i < 6; ++i) {
+			if (i != 0) {
+				sb.append('.');
+			}
+			sb.append(getGroup(i));
+		}
+		return sb;
+	}
+	
+	@Override public boolean equals(Object obj) {
+		return obj instanceof Obis && ((Obis)obj).value == value;
+	}
+	
+	@Override public int hashCode() {
+		return Long.hashCode(value);
+	}
+	
 	@Override public String toString() {
-		return String.format("%d.%d.%d.%d.%d.%d", value[0] & 0xFF, value[1] & 0xFF, value[2] & 0xFF, value[3] & 0xFF, value[4] & 0xFF, value[5] & 0xFF);
+		return appendTo(new StringBuilder(23)).toString();
+	}
+	
+	private static long pack(int A, int B, int C, int D, int E, int F) {
+		return ((long)(A & 0xFF) << 40) | ((long)(B & 0xFF) << 32) | ((long)(C & 0xFF) << 24)
+				| ((D & 0xFF) << 16) | ((E & 0xFF) << 8) | (F & 0xFF);
 	}
 
 }
@@ -1,6 +1,9 @@
 package yadi.dlms.classes;
 
+import java.nio.ByteBuffer;
+
 import yadi.dlms.DlmsException;
+import yadi.dlms.Obis;
 import yadi.dlms.classes.clock.CosemDate;
 import yadi.dlms.classes.clock.CosemDateTime;
 import yadi.dlms.classes.clock.CosemTime;
@@ -16,10 +19,27 @@ public class CosemSerializerProxy extends CosemSerializer {
 		this.executer = executer;
 	}
 	
+	public CosemSerializerProxy(CosemProxyExecuter executer, ByteBuffer buffer) {
+		super(buffer);
+		this.executer = executer;
+	}
+	
 	public void write() throws PhyLayerException, DlmsException, LinkLayerException {
 		executer.execute(this.serialize());
 	}
 	
+	@Override
+	public CosemSerializerProxy reset() {
+		super.reset();
+		return this;
+	}
+	
+	@Override
+	public CosemSerializerProxy obis(Obis obis) {
+		super.obis(obis);
+		return this;
+	}
+	
 	@Override
 	public CosemSerializerProxy array(int size) {
 		super.array(size);
@@ -1,6 +1,14 @@
 package yadi.dlms.classes.activitycalendar;
 
+import yadi.dlms.cosem.CosemSchema;
+
 public class DayProfile {
+	
+	public static final CosemSchema<DayProfile> SCHEMA = CosemSchema.<DayProfile>structure()
+			.uint8(DayProfile::getDayId)
+			.array(DayProfileAction.SCHEMA, DayProfileAction[]::new, DayProfile::getDaySchedule)
+			.build((v) -> new DayProfile(v.getInt(0), v.get(1)));
+	
 	private final int dayId;
 	private final DayProfileAction[] daySchedule;
 	
@@ -1,8 +1,16 @@
 package yadi.dlms.classes.activitycalendar;
 
 import yadi.dlms.classes.clock.CosemTime;
+import yadi.dlms.cosem.CosemSchema;
 
 public class DayProfileAction {
+	
+	public static final CosemSchema<DayProfileAction> SCHEMA = CosemSchema.<DayProfileAction>structure()
+			.time(DayProfileAction::getStartTime)
+			.octetString(DayProfileAction::getScriptLogicalName)
+			.uint16(DayProfileAction::getScriptSelector)
+			.build((v) -> new DayProfileAction(v.get(0), v.get(1), v.getInt(2)));
+	
 	private final CosemTime startTime;
 	private final byte[] scriptLogicalName;
 	private final int scriptSelector;
@@ -1,8 +1,16 @@
 package yadi.dlms.classes.activitycalendar;
 
 import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.cosem.CosemSchema;
 
 public class SeasonProfile {
+	
+	public static final CosemSchema<SeasonProfile> SCHEMA = CosemSchema.<SeasonProfile>structure()
+			.octetStringText(SeasonProfile::getProfileName)
+			.datetime(SeasonProfile::getStart)
+			.octetStringText(SeasonProfile::getWeekName)
+			.build((v) -> new SeasonProfile(v.get(0), v.get(1), v.get(2)));
+	
 	private final String profileName;
 	private final CosemDateTime start;
 	private final String weekName;
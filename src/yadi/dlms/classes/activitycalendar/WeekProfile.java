@@ -1,6 +1,20 @@
 package yadi.dlms.classes.activitycalendar;
 
+import yadi.dlms.cosem.CosemSchema;
+
 public class WeekProfile {
+	
+	public static final CosemSchema<WeekProfile> SCHEMA = CosemSchema.<WeekProfile>structure()
+			.octetStringText(WeekProfile::getProfileName)
+			.uint8(WeekProfile::getMondayDayId)
+			.uint8(WeekProfile::getTuesdayDayId)
+			.uint8(WeekProfile::getWednesdayDayId)
+			.uint8(WeekProfile::getThursdayDayId)
+			.uint8(WeekProfile::getFridayDayId)
+			.uint8(WeekProfile::getSaturdayDayId)
+			.uint8(WeekProfile::getSundayDayId)
+			.build((v) -> new WeekProfile(v.get(0), v.getInt(1), v.getInt(2), v.getInt(3), v.getInt(4), v.getInt(5), v.getInt(6), v.getInt(7)));
+	
 	private final String profileName;
 	private final int mondayDayId;
 	private final int tuesdayDayId;
@@ -4,49 +4,49 @@ package yadi.dlms.classes.clock;
 import yadi.dlms.DlmsClient;
 import yadi.dlms.DlmsException;
 import yadi.dlms.Obis;
+import yadi.dlms.cosem.CosemAddress;
 import yadi.dlms.cosem.CosemParser;
 import yadi.dlms.cosem.CosemSerializer;
-import yadi.dlms.cosem.LnDescriptor;
 import yadi.dlms.linklayer.LinkLayerException;
 import yadi.dlms.phylayer.PhyLayer;
 import yadi.dlms.phylayer.PhyLayerException;
 
 public class Clock {
 
-	private final LnDescriptor attTime;
-	private final LnDescriptor attTimeZone;
-	private final LnDescriptor attStatus;
-	private final LnDescriptor attDaylightBegin;
-	private final LnDescriptor attDaylightEnd;
-	private final LnDescriptor attDaylightDeviation;
-	private final LnDescriptor attDaylightEnabled;
-	private final LnDescriptor attClockBase;
-	private final LnDescriptor mtdAdjustToQuater;
-	private final LnDescriptor mtdAdjustToMeasurePeriod;
-	private final LnDescriptor mtdAdjustToMinute;
-	private final LnDescriptor mtdAdjustToPresetTime;
-	private final LnDescriptor mtdPresetAdjustingTime;
-	private final LnDescriptor mtdShiftTime;
+	private final CosemAddress attTime;
+	private final CosemAddress attTimeZone;
+	private final CosemAddress attStatus;
+	private final CosemAddress attDaylightBegin;
+	private final CosemAddress attDaylightEnd;
+	private final CosemAddress attDaylightDeviation;
+	private final CosemAddress attDaylightEnabled;
+	private final CosemAddress attClockBase;
+	private final CosemAddress mtdAdjustToQuater;
+	private final CosemAddress mtdAdjustToMeasurePeriod;
+	private final CosemAddress mtdAdjustToMinute;
+	private final CosemAddress mtdAdjustToPresetTime;
+	private final CosemAddress mtdPresetAdjustingTime;
+	private final CosemAddress mtdShiftTime;
 	
 	public Clock() {
 		this(new Obis("0.0.1.0.0.255"));
 	}
 	
 	public Clock(Obis obis) {
-		attTime = new LnDescriptor(8, obis, 2);
-		attTimeZone = new LnDescriptor(8, obis, 3);
-		attStatus = new LnDescriptor(8, obis, 4);
-		attDaylightBegin = new LnDescriptor(8, obis, 2);
-		attDaylightEnd = new LnDescriptor(8, obis, 2);
-		attDaylightDeviation = new LnDescriptor(8, obis, 2);
-		attDaylightEnabled = new LnDescriptor(8, obis, 2);
-		attClockBase = new LnDescriptor(8, obis, 2);
-		mtdAdjustToQuater = new LnDescriptor(8, obis, 2);
-		mtdAdjustToMeasurePeriod = new LnDescriptor(8, obis, 2);
-		mtdAdjustToMinute = new LnDescriptor(8, obis, 2);
-		mtdAdjustToPresetTime = new LnDescriptor(8, obis, 2);
-		mtdPresetAdjustingTime = new LnDescriptor(8, obis, 2);
-		mtdShiftTime = new LnDescriptor(8, obis, 2);
+		attTime = new CosemAddress(8, obis, 2);
+		attTimeZone = new CosemAddress(8, obis, 3);
+		attStatus = new CosemAddress(8, obis, 4);
+		attDaylightBegin = new CosemAddress(8, obis, 2);
+		attDaylightEnd = new CosemAddress(8, obis, 2);
+		attDaylightDeviation = new CosemAddress(8, obis, 2);
+		attDaylightEnabled = new CosemAddress(8, obis, 2);
+		attClockBase = new CosemAddress(8, obis, 2);
+		mtdAdjustToQuater = new CosemAddress(8, obis, 2);
+		mtdAdjustToMeasurePeriod = new CosemAddress(8, obis, 2);
+		mtdAdjustToMinute = new CosemAddress(8, obis, 2);
+		mtdAdjustToPresetTime = new CosemAddress(8, obis, 2);
+		mtdPresetAdjustingTime = new CosemAddress(8, obis, 2);
+		mtdShiftTime = new CosemAddress(8, obis, 2);
 	}
 	
 	public CosemDateTime readDateTime(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
@@ -58,18 +58,15 @@ public class Clock {
 	}
 	
 	public int readTimeZone(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attTimeZone);
-		return new CosemParser(attTimeZone.getResponseData()).int16();
+		return new CosemParser(dlms.get(phy, attTimeZone)).int16();
 	}
 	
 	public void writeTimeZone(DlmsClient dlms, PhyLayer phy, int deviation) throws PhyLayerException, DlmsException, LinkLayerException {
-		attTimeZone.setRequestData(new CosemSerializer().int16(deviation).serialize());
-		dlms.set(phy, attTimeZone);
+		dlms.set(phy, attTimeZone, CosemSerializer.acquire().int16(deviation).serializeAndRelease());
 	}
 	
 	public ClockStatus readClockStatus(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attStatus);
-		return new ClockStatus(new CosemParser(attStatus.getResponseData()).uint8());
+		return new ClockStatus(new CosemParser(dlms.get(phy, attStatus)).uint8());
 	}
 	
 	public CosemDateTime readDaylightSavingBegin(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
@@ -89,72 +86,59 @@ public class Clock {
 	}
 	
 	public int readDaylightSavingDeviation(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attDaylightDeviation);
-		return new CosemParser(attDaylightDeviation.getResponseData()).int8();
+		return new CosemParser(dlms.get(phy, attDaylightDeviation)).int8();
 	}
 	
 	public void writeDaylightSavingDeviation(DlmsClient dlms, PhyLayer phy, int deviation) throws PhyLayerException, DlmsException, LinkLayerException {
-		attDaylightDeviation.setRequestData(new CosemSerializer().int8(deviation).serialize());
-		dlms.set(phy, attDaylightDeviation);
+		dlms.set(phy, attDaylightDeviation, CosemSerializer.acquire().int8(deviation).serializeAndRelease());
 	}
 	
 	public boolean isDaylightSavingEnabled(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attDaylightEnabled);
-		return new CosemParser(attDaylightEnabled.getResponseData()).bool();
+		return new CosemParser(dlms.get(phy, attDaylightEnabled)).bool();
 	}
 	
 	public void setDaylightSavingEnabled(DlmsClient dlms, PhyLayer phy, boolean enabled) throws PhyLayerException, DlmsException, LinkLayerException {
-		attDaylightEnabled.setRequestData(new CosemSerializer().bool(enabled).serialize());
-		dlms.set(phy, attDaylightEnabled);
+		dlms.set(phy, attDaylightEnabled, CosemSerializer.acquire().bool(enabled).serializeAndRelease());
 	}
 	
 	public ClockBase readClockBase(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attClockBase);
-		return ClockBase.fromValue(new CosemParser(attClockBase.getResponseData()).enumeration());
+		return ClockBase.fromValue(new CosemParser(dlms.get(phy, attClockBase)).enumeration());
 	}
 	
-	private CosemDateTime readLocalDateTime(DlmsClient dlms, PhyLayer phy, LnDescriptor desc) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, desc);
-		return new CosemParser(desc.getResponseData()).datetime();
+	private CosemDateTime readLocalDateTime(DlmsClient dlms, PhyLayer phy, CosemAddress desc) throws PhyLayerException, DlmsException, LinkLayerException {
+		return new CosemParser(dlms.get(phy, desc)).datetime();
 	}
 	
 	public void adjustToQuarter(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdAdjustToQuater.setRequestData(new CosemSerializer().int8(0).serialize());
-		dlms.action(phy, mtdAdjustToQuater);
+		dlms.action(phy, mtdAdjustToQuater, CosemSerializer.acquire().int8(0).serializeAndRelease());
 	}
 	
 	public void adjustToMeasuringPeriod(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdAdjustToMeasurePeriod.setRequestData(new CosemSerializer().int8(0).serialize());
-		dlms.action(phy, mtdAdjustToMeasurePeriod);
+		dlms.action(phy, mtdAdjustToMeasurePeriod, CosemSerializer.acquire().int8(0).serializeAndRelease());
 	}
 	
 	public void adjustToMinute(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdAdjustToMinute.setRequestData(new CosemSerializer().int8(0).serialize());
-		dlms.action(phy, mtdAdjustToMinute);
+		dlms.action(phy, mtdAdjustToMinute, CosemSerializer.acquire().int8(0).serializeAndRelease());
 	}
 	
 	public void adjustToPresetTime(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdAdjustToPresetTime.setRequestData(new CosemSerializer().int8(0).serialize());
-		dlms.action(phy, mtdAdjustToPresetTime);
+		dlms.action(phy, mtdAdjustToPresetTime, CosemSerializer.acquire().int8(0).serializeAndRelease());
 	}
 	
 	public void presetAdjustingTime(DlmsClient dlms, PhyLayer phy, PresetTime pt) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdPresetAdjustingTime.setRequestData(new CosemSerializer()
+		dlms.action(phy, mtdPresetAdjustingTime, CosemSerializer.acquire()
 												.structure(3)
 												.datetime(pt.getPresetTime())
 												.datetime(pt.getValidityStart())
 												.datetime(pt.getValidityEnd())
-												.serialize());
-		dlms.action(phy, mtdPresetAdjustingTime);
+												.serializeAndRelease());
 	}
 	
 	public void shiftTime(DlmsClient dlms, PhyLayer phy, int shiftSeconds) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdShiftTime.setRequestData(new CosemSerializer().int16(shiftSeconds).serialize());
-		dlms.action(phy, mtdShiftTime);
+		dlms.action(phy, mtdShiftTime, CosemSerializer.acquire().int16(shiftSeconds).serializeAndRelease());
 	}
 	
-	private void writeLocalDateTime(DlmsClient dlms, PhyLayer phy, CosemDateTime dt, LnDescriptor desc) throws PhyLayerException, DlmsException, LinkLayerException {
-		desc.setRequestData(new CosemSerializer().datetime(dt).serialize());
-		dlms.set(phy, desc);
+	private void writeLocalDateTime(DlmsClient dlms, PhyLayer phy, CosemDateTime dt, CosemAddress desc) throws PhyLayerException, DlmsException, LinkLayerException {
+		dlms.set(phy, desc, CosemSerializer.acquire().datetime(dt).serializeAndRelease());
 	}
 }
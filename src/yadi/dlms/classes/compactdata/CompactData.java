@@ -0,0 +1,121 @@
+package yadi.dlms.classes.compactdata;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.DlmsException;
+import yadi.dlms.Obis;
+import yadi.dlms.classes.profilegeneric.CaptureObject;
+import yadi.dlms.cosem.CosemAddress;
+import yadi.dlms.cosem.CosemParser;
+import yadi.dlms.cosem.CosemSerializer;
+import yadi.dlms.linklayer.LinkLayerException;
+import yadi.dlms.phylayer.PhyLayer;
+import yadi.dlms.phylayer.PhyLayerException;
+
+/**
+ * Compact data (class 62). The template is read once and kept, it's read again only when a compact buffer
+ * carries another template id.
+ */
+public class CompactData {
+
+	private final CosemAddress attCompactBuffer;
+	private final CosemAddress attCaptureObjects;
+	private final CosemAddress attTemplateId;
+	private final CosemAddress attTemplateDescription;
+	private final CosemAddress attCaptureMethod;
+	private final CosemAddress mtdReset;
+	private final CosemAddress mtdCapture;
+	private volatile CompactDataTemplate template;
+
+	public CompactData(Obis obis) {
+		attCompactBuffer = new CosemAddress(62, obis, 2);
+		attCaptureObjects = new CosemAddress(62, obis, 3);
+		attTemplateId = new CosemAddress(62, obis, 4);
+		attTemplateDescription = new CosemAddress(62, obis, 5);
+		attCaptureMethod = new CosemAddress(62, obis, 6);
+		mtdReset = new CosemAddress(62, obis, 1);
+		mtdCapture = new CosemAddress(62, obis, 2);
+	}
+
+	/**
+	 * Retrieves the template, reading it from the meter only the first time
+	 * @return the compiled template
+	 */
+	public CompactDataTemplate getTemplate(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		CompactDataTemplate current = template;
+		if (current == null) {
+			int templateId = getTemplateId(dlms, phy);
+			byte[] description = new CosemParser(dlms.get(phy, attTemplateDescription)).octetString();
+			current = new CompactDataTemplate(templateId, description);
+			template = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Sets a template known in advance (e.g. kept from another meter of the same model), so it isn't read
+	 */
+	public void setTemplate(CompactDataTemplate template) {
+		this.template = template;
+	}
+
+	/**
+	 * Discards the template, it's read again on the next access
+	 */
+	public void invalidateTemplate() {
+		template = null;
+	}
+
+	/**
+	 * Reads and decodes the compact buffer
+	 * @param record a record created by the current template, or null to create a new one
+	 * @return the record with the values decoded, null if the buffer is empty (nothing captured since the last reset)
+	 */
+	public CompactDataTemplate.Record read(DlmsClient dlms, PhyLayer phy, CompactDataTemplate.Record record) throws PhyLayerException, DlmsException, LinkLayerException {
+		byte[] buffer = getCompactBuffer(dlms, phy);
+		if (buffer.length == 0) {
+			return null;
+		}
+		CompactDataTemplate current = getTemplate(dlms, phy);
+		if ((buffer[0] & 0xFF) != current.getTemplateId()) {
+			//the capture objects were changed since the template was read
+			invalidateTemplate();
+			current = getTemplate(dlms, phy);
+			record = null;
+		}
+		if (record == null || record.getTemplate() != current) {
+			record = current.newRecord();
+		}
+		return current.decode(buffer, record);
+	}
+
+	/**
+	 * @return the contents of the compact_buffer octet-string, template id included
+	 */
+	public byte[] getCompactBuffer(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		return new CosemParser(dlms.get(phy, attCompactBuffer)).octetString();
+	}
+
+	public CaptureObject[] getCaptureObjects(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		return CaptureObject.SCHEMA.decodeArray(dlms.get(phy, attCaptureObjects), CaptureObject[]::new);
+	}
+
+	public int getTemplateId(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		return new CosemParser(dlms.get(phy, attTemplateId)).uint8();
+	}
+
+	/**
+	 * @return 0 if the buffer is captured on reset and capture, 1 if it's captured on each read
+	 */
+	public int getCaptureMethod(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		return new CosemParser(dlms.get(phy, attCaptureMethod)).enumeration();
+	}
+
+	public void reset(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		dlms.action(phy, mtdReset, CosemSerializer.acquire().int8(0).serializeAndRelease());
+	}
+
+	public void capture(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		dlms.action(phy, mtdCapture, CosemSerializer.acquire().int8(0).serializeAndRelease());
+	}
+
+}
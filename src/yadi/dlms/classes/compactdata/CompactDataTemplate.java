@@ -0,0 +1,310 @@
+package yadi.dlms.classes.compactdata;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import yadi.dlms.DlmsException;
+import yadi.dlms.DlmsType;
+
+/**
+ * Decoder of the compact_buffer of a compact data object, compiled from its template_description.
+ * The compact buffer holds the template id followed by the captured values without their tags: the types
+ * come from the template, and arrays and structures are flattened into their simple values (fields).
+ * Decoding writes into a reusable Record, so nothing is allocated per buffer.
+ */
+public class CompactDataTemplate {
+
+	/**
+	 * Values of the fields of a decoded compact buffer, reused between buffers decoded by the same template.
+	 * Octet-strings, strings and dates are referenced in the decoded buffer, not copied
+	 */
+	public static final class Record {
+		private final CompactDataTemplate template;
+		private final long[] numbers;
+		private final double[] reals;
+		private final int[] offsets;
+		private final int[] lengths;
+		private byte[] source;
+
+		private Record(CompactDataTemplate template) {
+			this.template = template;
+			int size = template.tags.length;
+			numbers = new long[size];
+			reals = new double[size];
+			offsets = new int[size];
+			lengths = new int[size];
+		}
+
+		public CompactDataTemplate getTemplate() {
+			return template;
+		}
+
+		public int getFieldCount() {
+			return numbers.length;
+		}
+
+		public DlmsType getType(int field) {
+			return template.getType(field);
+		}
+
+		/**
+		 * @return the value of an integer, enum or boolean field
+		 */
+		public long getLong(int field) {
+			if (template.kinds[field] != INTEGER) {
+				throw new IllegalArgumentException("field "+field+" is "+getType(field));
+			}
+			return numbers[field];
+		}
+
+		/**
+		 * @return the value of a floating point or integer field
+		 */
+		public double getDouble(int field) {
+			if (template.kinds[field] == INTEGER) {
+				return numbers[field];
+			}
+			if (template.kinds[field] != REAL) {
+				throw new IllegalArgumentException("field "+field+" is "+getType(field));
+			}
+			return reals[field];
+		}
+
+		/**
+		 * @return a copy of the contents of an octet-string, string, bit-string or date/time field
+		 */
+		public byte[] getBytes(int field) {
+			checkBytes(field);
+			return Arrays.copyOfRange(source, offsets[field], offsets[field] + lengths[field]);
+		}
+
+		/**
+		 * @return the position of the contents of a variable size or date/time field in the decoded buffer
+		 */
+		public int getOffset(int field) {
+			checkBytes(field);
+			return offsets[field];
+		}
+
+		public int getLength(int field) {
+			checkBytes(field);
+			return lengths[field];
+		}
+
+		private void checkBytes(int field) {
+			if (template.kinds[field] != BYTES) {
+				throw new IllegalArgumentException("field "+field+" is "+getType(field));
+			}
+		}
+	}
+
+	private static final int NONE = 0;
+	private static final int INTEGER = 1;
+	private static final int REAL = 2;
+	private static final int BYTES = 3;
+
+	private final int templateId;
+	private final byte[] description;
+	private final int[] tags;
+	private final int[] kinds;
+
+	/**
+	 * Compiles a template
+	 * @param templateId the template_id of the compact data object
+	 * @param description the contents of the template_description octet-string
+	 * @throws IllegalArgumentException if the description is not valid
+	 */
+	public CompactDataTemplate(int templateId, byte[] description) {
+		this.templateId = templateId;
+		this.description = description.clone();
+		List<Integer> fields = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.wrap(description);
+		try {
+			compile(buffer, fields);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("truncated template description");
+		}
+		if (buffer.hasRemaining()) {
+			throw new IllegalArgumentException("invalid template description");
+		}
+		tags = new int[fields.size()];
+		kinds = new int[tags.length];
+		for (int i = 0; i < tags.length; ++i) {
+			tags[i] = fields.get(i);
+			kinds[i] = kindOf(tags[i]);
+		}
+	}
+
+	public int getTemplateId() {
+		return templateId;
+	}
+
+	public byte[] getDescription() {
+		return description.clone();
+	}
+
+	/**
+	 * @return the number of simple values in a compact buffer
+	 */
+	public int getFieldCount() {
+		return tags.length;
+	}
+
+	public DlmsType getType(int field) {
+		try {
+			return DlmsType.fromTag(tags[field]);
+		} catch (DlmsException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return a record to be reused by decode
+	 */
+	public Record newRecord() {
+		return new Record(this);
+	}
+
+	/**
+	 * Decodes a compact buffer
+	 * @param compactBuffer the contents of the compact_buffer octet-string, template id included
+	 * @param record a record created by this template, overwritten with the values decoded
+	 * @return the record
+	 * @throws IllegalArgumentException if the buffer doesn't match the template
+	 */
+	public Record decode(byte[] compactBuffer, Record record) {
+		return decode(compactBuffer, 0, compactBuffer.length, record);
+	}
+
+	public Record decode(byte[] data, int offset, int length, Record record) {
+		if (record.template != this) {
+			throw new IllegalArgumentException("record of another template");
+		}
+		int end = offset + length;
+		if (offset < 0 || length < 1 || end > data.length) {
+			throw new IllegalArgumentException();
+		}
+		if ((data[offset] & 0xFF) != templateId) {
+			throw new IllegalArgumentException("received template id = "+(data[offset] & 0xFF));
+		}
+		int pos = offset + 1;
+		for (int i = 0; i < tags.length; ++i) {
+			int tag = tags[i];
+			int size = DlmsType.fixedSize(tag);
+			if (size < 0) {
+				//length prefixed value
+				if (pos >= end) {
+					throw new IllegalArgumentException();
+				}
+				int lengthSize = DlmsType.lengthSize(data[pos]);
+				if (pos + lengthSize > end) {
+					throw new IllegalArgumentException();
+				}
+				size = getType(i).contentsSize(DlmsType.readLength(data, pos));
+				pos += lengthSize;
+			}
+			if (size < 0 || pos + size > end) {
+				throw new IllegalArgumentException();
+			}
+			switch (kinds[i]) {
+			case INTEGER:
+				record.numbers[i] = readInteger(data, pos, tag);
+				break;
+			case REAL:
+				long bits = readBigEndian(data, pos, size);
+				record.reals[i] = size == 4 ? Float.intBitsToFloat((int)bits) : Double.longBitsToDouble(bits);
+				break;
+			case BYTES:
+				record.offsets[i] = pos;
+				record.lengths[i] = size;
+				break;
+			default:
+				break;
+			}
+			pos += size;
+		}
+		if (pos != end) {
+			throw new IllegalArgumentException("compact buffer doesn't match the template");
+		}
+		record.source = data;
+		return record;
+	}
+
+	private static void compile(ByteBuffer description, List<Integer> fields) {
+		int tag = description.get() & 0xFF;
+		if (tag == DlmsType.ARRAY.tag) {
+			int count = description.getShort() & 0xFFFF;
+			List<Integer> element = new ArrayList<>();
+			compile(description, element);
+			for (int i = 0; i < count; ++i) {
+				fields.addAll(element);
+			}
+		} else if (tag == DlmsType.STRUCTURE.tag) {
+			int count = DlmsType.readLength(description);
+			for (int i = 0; i < count; ++i) {
+				compile(description, fields);
+			}
+		} else if (kindOf(tag) < 0) {
+			throw new IllegalArgumentException("invalid type in template description: "+tag);
+		} else {
+			fields.add(tag);
+		}
+	}
+
+	private static int kindOf(int tag) {
+		DlmsType type;
+		try {
+			type = DlmsType.fromTag(tag);
+		} catch (DlmsException e) {
+			return -1;
+		}
+		switch (type) {
+		case NULL_DATA:
+			return NONE;
+		case BOOLEAN:
+		case ENUM:
+		case INT8:
+		case UINT8:
+		case INT16:
+		case UINT16:
+		case INT32:
+		case UINT32:
+		case INT64:
+		case UINT64:
+			return INTEGER;
+		case FLOAT32:
+		case FLOAT64:
+			return REAL;
+		case ARRAY:
+		case STRUCTURE:
+			return -1;
+		default:
+			return BYTES;
+		}
+	}
+
+	private static long readInteger(byte[] data, int pos, int tag) {
+		if (tag == DlmsType.INT8.tag) {
+			return data[pos];
+		}
+		if (tag == DlmsType.INT16.tag) {
+			return (short)readBigEndian(data, pos, 2);
+		}
+		if (tag == DlmsType.INT32.tag) {
+			return (int)readBigEndian(data, pos, 4);
+		}
+		return readBigEndian(data, pos, DlmsType.fixedSize(tag));
+	}
+
+	private static long readBigEndian(byte[] data, int pos, int size) {
+		long value = 0;
+		for (int i = 0; i < size; ++i) {
+			value = (value << 8) | (data[pos + i] & 0xFF);
+		}
+		return value;
+	}
+
+}
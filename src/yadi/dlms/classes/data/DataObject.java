@@ -21,8 +21,8 @@ import yadi.dlms.DlmsClient;
 import yadi.dlms.DlmsException;
 import yadi.dlms.Obis;
 import yadi.dlms.classes.CosemSerializerProxy;
+import yadi.dlms.cosem.CosemAddress;
 import yadi.dlms.cosem.CosemParser;
-import yadi.dlms.cosem.LnDescriptor;
 import yadi.dlms.cosem.SnDescriptor;
 import yadi.dlms.linklayer.LinkLayerException;
 import yadi.dlms.phylayer.PhyLayer;
@@ -30,20 +30,17 @@ import yadi.dlms.phylayer.PhyLayerException;
 
 public class DataObject {
 
-	private final LnDescriptor attValue;
+	private final CosemAddress attValue;
 	
 	public static CosemParser getAttribute(DlmsClient dlms, PhyLayer phy, int classId, String obis, int att) throws DlmsException, PhyLayerException, LinkLayerException {
-		LnDescriptor desc = new LnDescriptor(classId, new Obis(obis), att);
-		dlms.get(phy, desc);
-		return new CosemParser(desc.getResponseData());
+		CosemAddress desc = new CosemAddress(classId, new Obis(obis), att);
+		return new CosemParser(dlms.get(phy, desc));
 	}
 	
 	public static CosemParser getAttribute(DlmsClient dlms, PhyLayer phy, int classId, String obis, int att,
 			byte[] selectiveAccess) throws PhyLayerException, DlmsException, LinkLayerException {
-		LnDescriptor desc = new LnDescriptor(classId, new Obis(obis), att);
-		desc.setRequestData(selectiveAccess);
-		dlms.get(phy, desc);
-		return new CosemParser(desc.getResponseData());
+		CosemAddress desc = new CosemAddress(classId, new Obis(obis), att);
+		return new CosemParser(dlms.get(phy, desc, selectiveAccess));
 	}
 	
 	public static CosemParser readAttribute(DlmsClient dlms, PhyLayer phy, int shortName) throws PhyLayerException, LinkLayerException, DlmsException {
@@ -53,10 +50,9 @@ public class DataObject {
 	}
 	
 	public static CosemSerializerProxy setAttribute(DlmsClient dlms, PhyLayer phy, int classId, String obis, int att) throws DlmsException, PhyLayerException, LinkLayerException {
-		LnDescriptor desc = new LnDescriptor(classId, new Obis(obis), att);
+		CosemAddress desc = new CosemAddress(classId, new Obis(obis), att);
 		return new CosemSerializerProxy((data) -> {
-			desc.setRequestData(data);
-			dlms.set(phy, desc);
+			dlms.set(phy, desc, data);
 		});
 	}
 	
@@ -69,10 +65,9 @@ public class DataObject {
 	}
 	
 	public static CosemSerializerProxy execAttribute(DlmsClient dlms, PhyLayer phy, int classId, String obis, int att) {
-		LnDescriptor desc = new LnDescriptor(classId, new Obis(obis), att);
+		CosemAddress desc = new CosemAddress(classId, new Obis(obis), att);
 		return new CosemSerializerProxy((data) -> {
-			desc.setRequestData(data);
-			dlms.action(phy, desc);
+			dlms.action(phy, desc, data);
 		});
 	}
 	
@@ -85,18 +80,16 @@ public class DataObject {
 	}
 	
 	public DataObject(Obis obis) {
-		attValue = new LnDescriptor(1, obis, 2);
+		attValue = new CosemAddress(1, obis, 2);
 	}
 	
 	public CosemParser getValue(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
-		dlms.get(phy, attValue);
-		return new CosemParser(attValue.getResponseData());
+		return new CosemParser(dlms.get(phy, attValue));
 	}
 	
 	public CosemSerializerProxy setValue(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
 		return new CosemSerializerProxy((data) -> {
-			attValue.setRequestData(data);
-			dlms.set(phy, attValue);
+			dlms.set(phy, attValue, data);
 		});
 	}
 
@@ -1,7 +1,15 @@
 package yadi.dlms.classes.imagetransfer;
 
+import yadi.dlms.cosem.CosemSchema;
+
 public class ImageInformation {
 	
+	public static final CosemSchema<ImageInformation> SCHEMA = CosemSchema.<ImageInformation>structure()
+			.uint32(ImageInformation::getSize)
+			.octetStringText(ImageInformation::getIdentification)
+			.octetString(ImageInformation::getSignature)
+			.build((v) -> new ImageInformation(v.getInt(0), v.get(1), v.get(2)));
+	
 	private final int size;
 	private final String identification;
 	private final byte[] signature;
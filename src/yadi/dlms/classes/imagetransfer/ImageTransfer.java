@@ -3,9 +3,9 @@ package yadi.dlms.classes.imagetransfer;
 import yadi.dlms.DlmsClient;
 import yadi.dlms.DlmsException;
 import yadi.dlms.Obis;
+import yadi.dlms.cosem.CosemAddress;
 import yadi.dlms.cosem.CosemParser;
 import yadi.dlms.cosem.CosemSerializer;
-import yadi.dlms.cosem.LnDescriptor;
 import yadi.dlms.linklayer.LinkLayerException;
 import yadi.dlms.phylayer.PhyLayer;
 import yadi.dlms.phylayer.PhyLayerException;
@@ -14,105 +14,94 @@ public class ImageTransfer {
 	
 	private static final int classId = 18; 
 	
-	private final LnDescriptor attImageBlockSize;
-	private final LnDescriptor attImageTransferredBlockStatus;
-	private final LnDescriptor attImageFirstNotTransferredBlockNumber;
-	private final LnDescriptor attImageTransferEnabled;
-	private final LnDescriptor attImageTransferStatus;
-	private final LnDescriptor attImageToActiveInfo;
-	private final LnDescriptor mtdImageTransferInitiate;
-	private final LnDescriptor mtdImageBlockTransfer;
-	private final LnDescriptor mtdImageVerify;
-	private final LnDescriptor mtdImageActivate;
+	private final CosemAddress attImageBlockSize;
+	private final CosemAddress attImageTransferredBlockStatus;
+	private final CosemAddress attImageFirstNotTransferredBlockNumber;
+	private final CosemAddress attImageTransferEnabled;
+	private final CosemAddress attImageTransferStatus;
+	private final CosemAddress attImageToActiveInfo;
+	private final CosemAddress mtdImageTransferInitiate;
+	private final CosemAddress mtdImageBlockTransfer;
+	private final CosemAddress mtdImageVerify;
+	private final CosemAddress mtdImageActivate;
 	
 	public ImageTransfer() {
 		this(new Obis("0.0.44.0.0.255"));
 	}
 	
 	public ImageTransfer(Obis obis) {
-		attImageBlockSize = new LnDescriptor(classId, obis, 2);
-		attImageTransferredBlockStatus = new LnDescriptor(classId, obis, 3);
-		attImageFirstNotTransferredBlockNumber = new LnDescriptor(classId, obis, 4);
-		attImageTransferEnabled = new LnDescriptor(classId, obis, 5);
-		attImageTransferStatus = new LnDescriptor(classId, obis, 6);
-		attImageToActiveInfo = new LnDescriptor(classId, obis, 7);
-		mtdImageTransferInitiate = new LnDescriptor(classId, obis, 1);
-		mtdImageBlockTransfer = new LnDescriptor(classId, obis, 2);
-		mtdImageVerify = new LnDescriptor(classId, obis, 3);
-		mtdImageActivate = new LnDescriptor(classId, obis, 4);
+		attImageBlockSize = new CosemAddress(classId, obis, 2);
+		attImageTransferredBlockStatus = new CosemAddress(classId, obis, 3);
+		attImageFirstNotTransferredBlockNumber = new CosemAddress(classId, obis, 4);
+		attImageTransferEnabled = new CosemAddress(classId, obis, 5);
+		attImageTransferStatus = new CosemAddress(classId, obis, 6);
+		attImageToActiveInfo = new CosemAddress(classId, obis, 7);
+		mtdImageTransferInitiate = new CosemAddress(classId, obis, 1);
+		mtdImageBlockTransfer = new CosemAddress(classId, obis, 2);
+		mtdImageVerify = new CosemAddress(classId, obis, 3);
+		mtdImageActivate = new CosemAddress(classId, obis, 4);
 	}
 	
 	public int getBlockSize(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attImageBlockSize);
-		return CosemParser.make(attImageBlockSize.getResponseData()).integer();
+		return CosemParser.make(dlms.get(phy, attImageBlockSize)).integer();
 	}
 	
 	public boolean[] getTransferredBlockStatus(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attImageTransferredBlockStatus);
-		return CosemParser.make(attImageTransferredBlockStatus.getResponseData()).bitstring();
+		return CosemParser.make(dlms.get(phy, attImageTransferredBlockStatus)).bitstring();
 	}
 	
 	public int getFirstNotTransferredBlockNumber(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attImageFirstNotTransferredBlockNumber);
-		return CosemParser.make(attImageFirstNotTransferredBlockNumber.getResponseData()).integer();
+		return CosemParser.make(dlms.get(phy, attImageFirstNotTransferredBlockNumber)).integer();
 	}
 	
 	public boolean isTransferEnabled(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attImageTransferEnabled);
-		return CosemParser.make(attImageTransferEnabled.getResponseData()).bool();
+		return CosemParser.make(dlms.get(phy, attImageTransferEnabled)).bool();
 	}
 	
 	public ImageTransferStatus getTransferStatus(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attImageTransferStatus);
-		return ImageTransferStatus.fromValue(CosemParser.make(attImageTransferStatus.getResponseData()).integer());
+		return ImageTransferStatus.fromValue(CosemParser.make(dlms.get(phy, attImageTransferStatus)).integer());
 	}
 	
 	public ImageInformation getImageToActiveInformation(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attImageToActiveInfo);
-		CosemParser parser = CosemParser.make(attImageToActiveInfo.getResponseData());
+		CosemParser parser = CosemParser.make(dlms.get(phy, attImageToActiveInfo));
 		parser.verifyArraySize(1);
-		parser.verifyStructureSize(3);
-		return new ImageInformation(parser.uint32(), new String(parser.octetString()), parser.octetString());
+		return ImageInformation.SCHEMA.decode(parser);
 	}
 
 	public void initiateTransfer(DlmsClient dlms, PhyLayer phy, byte[] imageIdentifier, int imageSize) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdImageTransferInitiate.setRequestData(
-			new CosemSerializer()
+		dlms.action(phy, mtdImageTransferInitiate,
+			CosemSerializer.acquire()
 			.structure(2)
 			.octetString(imageIdentifier)
 			.uint32(imageSize)
-			.serialize()
+			.serializeAndRelease()
 		);
-		dlms.action(phy, mtdImageTransferInitiate);
 	}
 	
 	public void blockTransfer(DlmsClient dlms, PhyLayer phy, int blockNum, byte[] blockData) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdImageBlockTransfer.setRequestData(
-			new CosemSerializer()
+		dlms.action(phy, mtdImageBlockTransfer,
+			CosemSerializer.acquire()
 			.structure(2)
 			.uint32(blockNum)
 			.octetString(blockData)
-			.serialize()
+			.serializeAndRelease()
 		);
-		dlms.action(phy, mtdImageBlockTransfer);
 	}
 	
 	public void verifyImage(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdImageVerify.setRequestData(
-			new CosemSerializer()
+		dlms.action(phy, mtdImageVerify,
+			CosemSerializer.acquire()
 			.int8(0)
-			.serialize()
+			.serializeAndRelease()
 		);
-		dlms.action(phy, mtdImageVerify);
 	}
 	
 	public void activateImage(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		mtdImageActivate.setRequestData(
-			new CosemSerializer()
+		dlms.action(phy, mtdImageActivate,
+			CosemSerializer.acquire()
 			.int8(0)
-			.serialize()
+			.serializeAndRelease()
 		);
-		dlms.action(phy, mtdImageActivate);
 	}
 	
 	public void executeImageTransfer(DlmsClient dlms, PhyLayer phy, Image image) throws PhyLayerException, DlmsException, LinkLayerException, ImageTransferException {
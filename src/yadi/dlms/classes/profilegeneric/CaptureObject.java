@@ -1,8 +1,17 @@
 package yadi.dlms.classes.profilegeneric;
 
 import yadi.dlms.Obis;
+import yadi.dlms.cosem.CosemSchema;
 
 public class CaptureObject {
+	
+	public static final CosemSchema<CaptureObject> SCHEMA = CosemSchema.<CaptureObject>structure()
+			.uint16(CaptureObject::getClassId)
+			.obis(CaptureObject::getObis)
+			.int8(CaptureObject::getIndex)
+			.uint16(CaptureObject::getDataIndex)
+			.build((v) -> new CaptureObject(v.getInt(0), v.get(1), v.getInt(2), v.getInt(3)));
+	
 	private final int classId;
 	private final Obis obis;
 	private final int index;
@@ -0,0 +1,673 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import yadi.dlms.DlmsType;
+import yadi.dlms.Obis;
+
+/**
+ * Profile buffer stored by column, using the capture objects as schema.
+ * Integers are kept in long arrays, floating point values in double arrays and date-times as the local time
+ * in milliseconds since the epoch plus their deviation and clock status, so appending a row doesn't
+ * allocate anything per cell. Null-data cells are marked in a bitmap per column.
+ * The type of a column is set by its first non null value. Date-times encoded as 12 byte octet-strings are only
+ * decoded as such in date-time columns: the clock time attribute or the columns set by dateTimeColumn, in any
+ * other column they are kept as bytes, as are the date and time types.
+ * Compressed buffers, where values equal to the previous entry and capture times following the capture
+ * period are sent as null-data, are expanded while appended if the capture period is set.
+ */
+public class ColumnarProfileBuffer {
+
+	public enum ColumnType {
+		/**
+		 * No value other than null-data was appended yet
+		 */
+		EMPTY,
+		INTEGER,
+		FLOAT,
+		DATETIME,
+		/**
+		 * Strings and other variable size values, kept as the contents after the A-XDR length
+		 */
+		BYTES
+	}
+
+	private static final int DEFAULT_CAPACITY = 64;
+	private static final int PARALLEL_CHUNK_ROWS = 4096;
+
+	private static final class Column {
+		ColumnType type = ColumnType.EMPTY;
+		long[] longs;
+		double[] doubles;
+		short[] deviations;
+		byte[] clockStatus;
+		byte[][] bytes;
+		long[] nulls;
+		boolean captureTime;
+		boolean dateTime;
+	}
+
+	private final CaptureObject[] captureObjects;
+	private final Column[] columns;
+	private int capacity;
+	private int rows;
+	private boolean expandNullData;
+	private long capturePeriodMillis;
+
+	public ColumnarProfileBuffer(CaptureObject[] captureObjects) {
+		this(captureObjects, DEFAULT_CAPACITY);
+	}
+
+	public ColumnarProfileBuffer(CaptureObject[] captureObjects, int capacity) {
+		this.captureObjects = captureObjects.clone();
+		this.columns = new Column[captureObjects.length];
+		this.capacity = Math.max(1, capacity);
+		for (int i = 0; i < columns.length; ++i) {
+			columns[i] = new Column();
+			columns[i].nulls = new long[(this.capacity + 63) / 64];
+			columns[i].captureTime = captureObjects[i].getClassId() == 8 && captureObjects[i].getIndex() == 2;
+			columns[i].dateTime = columns[i].captureTime;
+		}
+	}
+
+	/**
+	 * Parses the contents of the buffer attribute, an array of structures with one element per capture object
+	 * @param captureObjects the capture objects of the profile
+	 * @param data the encoded buffer
+	 * @return the rows in columns
+	 */
+	public static ColumnarProfileBuffer parse(CaptureObject[] captureObjects, byte[] data) {
+		ColumnarProfileBuffer buffer = new ColumnarProfileBuffer(captureObjects);
+		buffer.appendAll(ByteBuffer.wrap(data));
+		return buffer;
+	}
+
+	/**
+	 * Parses a buffer that may be compressed with null-data, see expandNullData
+	 * @param captureObjects the capture objects of the profile
+	 * @param data the encoded buffer
+	 * @param capturePeriod the capture period of the profile in seconds
+	 * @return the expanded rows in columns
+	 */
+	public static ColumnarProfileBuffer parse(CaptureObject[] captureObjects, byte[] data, int capturePeriod) {
+		ColumnarProfileBuffer buffer = new ColumnarProfileBuffer(captureObjects).expandNullData(capturePeriod);
+		buffer.appendAll(ByteBuffer.wrap(data));
+		return buffer;
+	}
+
+	/**
+	 * Parses a large buffer using several threads. The entries are located first, skipping over their
+	 * elements, then ranges of entries are decoded in parallel and their columns concatenated
+	 * @param captureObjects the capture objects of the profile
+	 * @param data the encoded buffer
+	 * @param pool the pool running the decoding, e.g. ForkJoinPool.commonPool()
+	 * @return the rows in columns
+	 */
+	public static ColumnarProfileBuffer parseParallel(CaptureObject[] captureObjects, byte[] data, ForkJoinPool pool) {
+		return parseParallel(captureObjects, data, -1, pool);
+	}
+
+	/**
+	 * Parses a large buffer that may be compressed with null-data using several threads, see parseParallel
+	 * @param capturePeriod the capture period of the profile in seconds, -1 to keep the null-data
+	 */
+	public static ColumnarProfileBuffer parseParallel(CaptureObject[] captureObjects, byte[] data, int capturePeriod, ForkJoinPool pool) {
+		int[] rowStarts;
+		try {
+			rowStarts = scanRows(ByteBuffer.wrap(data));
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException();
+		}
+		int rowCount = rowStarts.length - 1;
+		ColumnarProfileBuffer[] parts = new ColumnarProfileBuffer[(rowCount + PARALLEL_CHUNK_ROWS - 1) / PARALLEL_CHUNK_ROWS];
+		pool.invoke(new DecodeTask(captureObjects, data, rowStarts, parts, 0, parts.length));
+
+		ColumnarProfileBuffer buffer = new ColumnarProfileBuffer(captureObjects, rowCount);
+		for (ColumnarProfileBuffer part : parts) {
+			buffer.append(part);
+		}
+		if (capturePeriod >= 0) {
+			buffer.expandNullData(capturePeriod);
+			buffer.expandAppendedNullData();
+		}
+		return buffer;
+	}
+
+	/**
+	 * Decodes the chunks of entries [from, to) into parts, splitting the range until a single chunk is left
+	 */
+	private static final class DecodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CaptureObject[] captureObjects;
+		private final byte[] data;
+		private final int[] rowStarts;
+		private final ColumnarProfileBuffer[] parts;
+		private final int from;
+		private final int to;
+
+		DecodeTask(CaptureObject[] captureObjects, byte[] data, int[] rowStarts, ColumnarProfileBuffer[] parts, int from, int to) {
+			this.captureObjects = captureObjects;
+			this.data = data;
+			this.rowStarts = rowStarts;
+			this.parts = parts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new DecodeTask(captureObjects, data, rowStarts, parts, from, middle),
+						new DecodeTask(captureObjects, data, rowStarts, parts, middle, to));
+				return;
+			}
+			if (from == to) {
+				return;
+			}
+			int firstRow = from * PARALLEL_CHUNK_ROWS;
+			int lastRow = Math.min(firstRow + PARALLEL_CHUNK_ROWS, rowStarts.length - 1);
+			ColumnarProfileBuffer part = new ColumnarProfileBuffer(captureObjects, lastRow - firstRow);
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			buffer.position(rowStarts[firstRow]);
+			for (int row = firstRow; row < lastRow; ++row) {
+				part.appendRow(buffer);
+			}
+			parts[from] = part;
+		}
+	}
+
+	/**
+	 * Locates the entries of an encoded buffer
+	 * @return the position of each entry, followed by the position after the last one
+	 */
+	private static int[] scanRows(ByteBuffer data) {
+		int size = readContainer(data, DlmsType.ARRAY);
+		if (size > data.remaining()) {
+			throw new IllegalArgumentException();
+		}
+		int[] rowStarts = new int[size + 1];
+		for (int i = 0; i < size; ++i) {
+			rowStarts[i] = data.position();
+			DlmsType.skip(data);
+		}
+		rowStarts[size] = data.position();
+		return rowStarts;
+	}
+
+	/**
+	 * Appends the rows of another buffer with the same capture objects
+	 * @throws IllegalArgumentException if a column has different types in both buffers
+	 */
+	public void append(ColumnarProfileBuffer other) {
+		if (other.columns.length != columns.length) {
+			throw new IllegalArgumentException("buffers with different capture objects");
+		}
+		for (int col = 0; col < columns.length; ++col) {
+			ColumnType type = other.columns[col].type;
+			if (type != ColumnType.EMPTY && type != columns[col].type && columns[col].type != ColumnType.EMPTY) {
+				throw new IllegalArgumentException("received "+type+" in a "+columns[col].type+" column");
+			}
+		}
+		ensureCapacity(rows + other.rows);
+		for (int col = 0; col < columns.length; ++col) {
+			Column src = other.columns[col];
+			Column dst = columns[col];
+			if (src.type != ColumnType.EMPTY) {
+				setType(dst, src.type);
+			}
+			for (int row = 0; row < other.rows; ++row) {
+				if ((src.nulls[row >>> 6] & (1L << row)) != 0) {
+					int target = rows + row;
+					dst.nulls[target >>> 6] |= 1L << target;
+				}
+			}
+			switch (src.type) {
+			case INTEGER:
+				System.arraycopy(src.longs, 0, dst.longs, rows, other.rows);
+				break;
+			case FLOAT:
+				System.arraycopy(src.doubles, 0, dst.doubles, rows, other.rows);
+				break;
+			case DATETIME:
+				System.arraycopy(src.longs, 0, dst.longs, rows, other.rows);
+				System.arraycopy(src.deviations, 0, dst.deviations, rows, other.rows);
+				System.arraycopy(src.clockStatus, 0, dst.clockStatus, rows, other.rows);
+				break;
+			case BYTES:
+				System.arraycopy(src.bytes, 0, dst.bytes, rows, other.rows);
+				break;
+			default:
+				break;
+			}
+		}
+		rows += other.rows;
+	}
+
+	/**
+	 * Expands the null-data of the rows already appended, in order
+	 */
+	private void expandAppendedNullData() {
+		for (Column column : columns) {
+			for (int row = 1; row < rows; ++row) {
+				if ((column.nulls[row >>> 6] & (1L << row)) != 0 && copyPrevious(column, row)) {
+					column.nulls[row >>> 6] &= ~(1L << row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Expands the null-data of the rows appended from now on: a null capture time (clock time attribute) is
+	 * the previous one plus the capture period, any other null value is the previous value of the column.
+	 * Cells are left null when there's no previous value, or for capture times if the capture period is 0
+	 * @param capturePeriod the capture period of the profile in seconds, 0 for asynchronous capture
+	 * @return this buffer
+	 */
+	public ColumnarProfileBuffer expandNullData(int capturePeriod) {
+		if (capturePeriod < 0) {
+			throw new IllegalArgumentException();
+		}
+		expandNullData = true;
+		capturePeriodMillis = capturePeriod * 1000L;
+		return this;
+	}
+
+	/**
+	 * Decodes the 12 byte octet-strings of a column as date-times, e.g. the capture time of a register.
+	 * The clock time attribute is always a date-time column
+	 * @param col index of the column
+	 * @return this buffer
+	 */
+	public ColumnarProfileBuffer dateTimeColumn(int col) {
+		columns[col].dateTime = true;
+		return this;
+	}
+
+	/**
+	 * Appends the rows of an encoded array of entries
+	 * @param data buffer positioned at the array, it's left after the last entry
+	 */
+	public void appendAll(ByteBuffer data) {
+		try {
+			int size = readContainer(data, DlmsType.ARRAY);
+			if (size > data.remaining()) {
+				throw new IllegalArgumentException();
+			}
+			ensureCapacity(rows + size);
+			for (int i = 0; i < size; ++i) {
+				appendRow(data);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * Appends one encoded entry
+	 * @param data buffer positioned at the structure of the entry, it's left after the entry
+	 */
+	public void appendRow(ByteBuffer data) {
+		try {
+			if (readContainer(data, DlmsType.STRUCTURE) != columns.length) {
+				throw new IllegalArgumentException("entry doesn't match the capture objects");
+			}
+			ensureCapacity(rows + 1);
+			for (int col = 0; col < columns.length; ++col) {
+				readCell(data, columns[col]);
+			}
+			++rows;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public CaptureObject getCaptureObject(int col) {
+		return captureObjects[col];
+	}
+
+	public ColumnType getColumnType(int col) {
+		return columns[col].type;
+	}
+
+	/**
+	 * Retrieves the column of a captured attribute
+	 * @return the index of the column or -1 if the attribute isn't captured
+	 */
+	public int findColumn(int classId, Obis obis, int index) {
+		for (int col = 0; col < captureObjects.length; ++col) {
+			CaptureObject co = captureObjects[col];
+			if (co.getClassId() == classId && co.getIndex() == index && co.getObis().equals(obis)) {
+				return col;
+			}
+		}
+		return -1;
+	}
+
+	public boolean isNull(int row, int col) {
+		checkRow(row);
+		return (columns[col].nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	public long getLong(int row, int col) {
+		return column(row, col, ColumnType.INTEGER).longs[row];
+	}
+
+	/**
+	 * @return the value of a floating point or integer cell
+	 */
+	public double getDouble(int row, int col) {
+		Column column = columns[col];
+		if (column.type == ColumnType.INTEGER) {
+			checkRow(row);
+			return column.longs[row];
+		}
+		return column(row, col, ColumnType.FLOAT).doubles[row];
+	}
+
+	/**
+	 * @return the local time of a date-time cell in milliseconds since the epoch, ignoring the deviation
+	 */
+	public long getLocalMillis(int row, int col) {
+		return column(row, col, ColumnType.DATETIME).longs[row];
+	}
+
+	public LocalDateTime getLocalDateTime(int row, int col) {
+		long millis = getLocalMillis(row, col);
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int)Math.floorMod(millis, 1000L) * 1000000, ZoneOffset.UTC);
+	}
+
+	/**
+	 * @return the deviation of a date-time cell in minutes, -32768 (0x8000) if not specified
+	 */
+	public int getDeviation(int row, int col) {
+		return column(row, col, ColumnType.DATETIME).deviations[row];
+	}
+
+	public int getClockStatus(int row, int col) {
+		return column(row, col, ColumnType.DATETIME).clockStatus[row] & 0xFF;
+	}
+
+	public byte[] getBytes(int row, int col) {
+		return column(row, col, ColumnType.BYTES).bytes[row].clone();
+	}
+
+	/**
+	 * @return a copy of an integer or date-time column, null cells are 0
+	 */
+	public long[] getLongColumn(int col) {
+		Column column = columns[col];
+		if (column.type != ColumnType.INTEGER && column.type != ColumnType.DATETIME) {
+			throw new IllegalArgumentException("column "+col+" is "+column.type);
+		}
+		return Arrays.copyOf(column.longs, rows);
+	}
+
+	/**
+	 * @return a copy of a floating point or integer column, null cells are 0
+	 */
+	public double[] getDoubleColumn(int col) {
+		Column column = columns[col];
+		double[] values = new double[rows];
+		if (column.type == ColumnType.INTEGER) {
+			for (int row = 0; row < rows; ++row) {
+				values[row] = column.longs[row];
+			}
+		} else if (column.type == ColumnType.FLOAT) {
+			System.arraycopy(column.doubles, 0, values, 0, rows);
+		} else if (column.type != ColumnType.EMPTY) {
+			throw new IllegalArgumentException("column "+col+" is "+column.type);
+		}
+		return values;
+	}
+
+	/**
+	 * @return the local times, in milliseconds since the epoch, of the first date-time column
+	 */
+	public long[] getTimestamps() {
+		for (int col = 0; col < columns.length; ++col) {
+			if (columns[col].type == ColumnType.DATETIME) {
+				return getLongColumn(col);
+			}
+		}
+		throw new IllegalArgumentException("no date-time column");
+	}
+
+	private Column column(int row, int col, ColumnType type) {
+		checkRow(row);
+		Column column = columns[col];
+		if (column.type != type) {
+			throw new IllegalArgumentException("column "+col+" is "+column.type);
+		}
+		return column;
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("row "+row);
+		}
+	}
+
+	private void readCell(ByteBuffer data, Column column) {
+		int tag = data.get() & 0xFF;
+		if (tag == DlmsType.NULL_DATA.tag) {
+			if (!expandNullData || !copyPrevious(column, rows)) {
+				column.nulls[rows >>> 6] |= 1L << rows;
+			}
+			return;
+		}
+		if (tag == DlmsType.FLOAT32.tag) {
+			setType(column, ColumnType.FLOAT).doubles[rows] = Float.intBitsToFloat(data.getInt());
+		} else if (tag == DlmsType.FLOAT64.tag) {
+			setType(column, ColumnType.FLOAT).doubles[rows] = Double.longBitsToDouble(data.getLong());
+		} else if (tag == DlmsType.DATE_TIME.tag) {
+			readDateTime(data, column);
+		} else if (tag == DlmsType.OCTET_STRING.tag) {
+			int size = DlmsType.readLength(data);
+			if (size == 12 && column.dateTime) {
+				readDateTime(data, column);
+			} else {
+				readBytes(data, column, size);
+			}
+		} else if (tag == DlmsType.ARRAY.tag || tag == DlmsType.STRUCTURE.tag) {
+			int start = data.position() - 1;
+			int size = DlmsType.readLength(data);
+			for (int i = 0; i < size; ++i) {
+				DlmsType.skip(data);
+			}
+			int end = data.position();
+			data.position(start);
+			readBytes(data, column, end - start);
+		} else if (tag == DlmsType.DATE.tag || tag == DlmsType.TIME.tag) {
+			readBytes(data, column, DlmsType.fixedSize(tag));
+		} else if (DlmsType.fixedSize(tag) > 0) {
+			setType(column, ColumnType.INTEGER).longs[rows] = readInteger(data, tag);
+		} else {
+			DlmsType type = typeOf(tag);
+			readBytes(data, column, type.contentsSize(DlmsType.readLength(data)));
+		}
+	}
+
+	private static long readInteger(ByteBuffer data, int tag) {
+		switch (typeOf(tag)) {
+		case INT8:
+			return data.get();
+		case UINT8:
+		case ENUM:
+		case BOOLEAN:
+			return data.get() & 0xFF;
+		case INT16:
+			return data.getShort();
+		case UINT16:
+			return data.getShort() & 0xFFFF;
+		case INT32:
+			return data.getInt();
+		case UINT32:
+			return data.getInt() & 0xFFFFFFFFL;
+		case INT64:
+		case UINT64:
+			return data.getLong();
+		default:
+			throw new IllegalArgumentException("received tag = "+tag);
+		}
+	}
+
+	/**
+	 * Fills the current cell with the expansion of a null-data
+	 * @return false if there's no previous value to expand
+	 */
+	private boolean copyPrevious(Column column, int row) {
+		int previous = row - 1;
+		if (previous < 0 || (column.nulls[previous >>> 6] & (1L << previous)) != 0) {
+			return false;
+		}
+		switch (column.type) {
+		case INTEGER:
+			column.longs[row] = column.longs[previous];
+			return true;
+		case FLOAT:
+			column.doubles[row] = column.doubles[previous];
+			return true;
+		case DATETIME:
+			if (column.captureTime && capturePeriodMillis == 0) {
+				return false;
+			}
+			column.longs[row] = column.longs[previous] + (column.captureTime ? capturePeriodMillis : 0);
+			column.deviations[row] = column.deviations[previous];
+			column.clockStatus[row] = column.clockStatus[previous];
+			return true;
+		case BYTES:
+			column.bytes[row] = column.bytes[previous];
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void readDateTime(ByteBuffer data, Column column) {
+		int year = data.getShort() & 0xFFFF;
+		int month = data.get() & 0xFF;
+		int day = data.get() & 0xFF;
+		data.get(); //day of week
+		int hour = data.get() & 0xFF;
+		int minute = data.get() & 0xFF;
+		int second = data.get() & 0xFF;
+		int hundredths = data.get() & 0xFF;
+		short deviation = data.getShort();
+		byte status = data.get();
+		if (year == 0xFFFF || month < 1 || month > 12 || day < 1 || day > 31) {
+			//not a complete date, e.g. a wildcard
+			column.nulls[rows >>> 6] |= 1L << rows;
+			return;
+		}
+		long seconds = daysFromCivil(year, month, day) * 86400L
+				+ (hour == 0xFF ? 0 : hour) * 3600 + (minute == 0xFF ? 0 : minute) * 60 + (second == 0xFF ? 0 : second);
+		setType(column, ColumnType.DATETIME);
+		column.longs[rows] = seconds * 1000 + (hundredths == 0xFF ? 0 : hundredths * 10);
+		column.deviations[rows] = deviation;
+		column.clockStatus[rows] = status;
+	}
+
+	private void readBytes(ByteBuffer data, Column column, int size) {
+		if (size > data.remaining()) {
+			throw new IllegalArgumentException();
+		}
+		byte[] value = new byte[size];
+		data.get(value);
+		setType(column, ColumnType.BYTES).bytes[rows] = value;
+	}
+
+	private Column setType(Column column, ColumnType type) {
+		if (column.type == type) {
+			return column;
+		}
+		if (column.type != ColumnType.EMPTY) {
+			throw new IllegalArgumentException("received "+type+" in a "+column.type+" column");
+		}
+		column.type = type;
+		switch (type) {
+		case INTEGER:
+			column.longs = new long[capacity];
+			break;
+		case FLOAT:
+			column.doubles = new double[capacity];
+			break;
+		case DATETIME:
+			column.longs = new long[capacity];
+			column.deviations = new short[capacity];
+			column.clockStatus = new byte[capacity];
+			break;
+		case BYTES:
+			column.bytes = new byte[capacity][];
+			break;
+		default:
+			break;
+		}
+		return column;
+	}
+
+	private void ensureCapacity(int required) {
+		if (required <= capacity) {
+			return;
+		}
+		capacity = Math.max(required, capacity * 2);
+		for (Column column : columns) {
+			column.nulls = Arrays.copyOf(column.nulls, (capacity + 63) / 64);
+			if (column.longs != null) {
+				column.longs = Arrays.copyOf(column.longs, capacity);
+			}
+			if (column.doubles != null) {
+				column.doubles = Arrays.copyOf(column.doubles, capacity);
+			}
+			if (column.deviations != null) {
+				column.deviations = Arrays.copyOf(column.deviations, capacity);
+				column.clockStatus = Arrays.copyOf(column.clockStatus, capacity);
+			}
+			if (column.bytes != null) {
+				column.bytes = Arrays.copyOf(column.bytes, capacity);
+			}
+		}
+	}
+
+	private static int readContainer(ByteBuffer data, DlmsType type) {
+		int tag = data.get() & 0xFF;
+		if (tag != type.tag) {
+			throw new IllegalArgumentException("received tag = "+tag);
+		}
+		return DlmsType.readLength(data);
+	}
+
+	private static DlmsType typeOf(int tag) {
+		try {
+			return DlmsType.fromTag(tag);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("received tag = "+tag);
+		}
+	}
+
+	/**
+	 * Days since 1970-01-01 of a date of the proleptic Gregorian calendar
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		year -= month <= 2 ? 1 : 0;
+		int era = Math.floorDiv(year, 400);
+		int yoe = year - era * 400;
+		int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468;
+	}
+
+}
@@ -0,0 +1,459 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import yadi.dlms.classes.profilegeneric.ColumnarProfileBuffer.ColumnType;
+
+/**
+ * Append-only file of profile entries stored by column, written and read through memory mappings.
+ * The file starts with a header holding the capture objects, followed by chunks: each appended
+ * ColumnarProfileBuffer becomes a chunk where every column is a null bitmap and an array of fixed width
+ * values (8 bytes per integer, float or date-time, plus the deviation and clock status of date-times).
+ * Byte columns are kept as offsets followed by the contents.
+ * The size of a chunk is written last, once the rest of the chunk was forced to the storage, so it marks the
+ * chunk as committed: after a failure the chunks without a size are ignored and overwritten by the next append.
+ * The reader accesses the mapped chunks directly, values are decoded only when read.
+ *
+ * <pre>
+ * try (ColumnarProfileFile.Writer writer = ColumnarProfileFile.create(path, captureObjects)) {
+ *     writer.append(profile.getColumnarBuffer(dlms, phy, captureObjects));
+ * }
+ * try (ColumnarProfileFile.Reader reader = ColumnarProfileFile.open(path)) {
+ *     long energy = reader.getLong(row, 1);
+ * }
+ * </pre>
+ */
+public final class ColumnarProfileFile {
+
+	private static final int MAGIC = 0x59504346; //"YPCF"
+	private static final int VERSION = 1;
+	private static final int CHUNK_HEADER_SIZE = 8;
+	private static final ColumnType[] COLUMN_TYPES = ColumnType.values();
+
+	private ColumnarProfileFile() {
+	}
+
+	/**
+	 * Creates a file, replacing an existing one
+	 * @param path the file to be created
+	 * @param captureObjects the capture objects of the entries to be stored
+	 * @return the writer, the header is already written
+	 */
+	public static Writer create(Path path, CaptureObject[] captureObjects) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			byte[] schema = CaptureObject.SCHEMA.encodeArray(captureObjects);
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, 12 + schema.length);
+			header.putInt(MAGIC).putInt(VERSION).putInt(schema.length).put(schema);
+			header.force();
+			return new Writer(channel, captureObjects.length, 12 + schema.length);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing file to append more entries
+	 */
+	public static Writer append(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			Layout layout = scan(channel, path);
+			return new Writer(channel, layout.captureObjects.length, layout.end);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a file to be read, the chunks written up to now are mapped
+	 */
+	public static Reader open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			Layout layout = scan(channel, path);
+			return new Reader(layout);
+		}
+	}
+
+	public static final class Writer implements Closeable {
+		private final FileChannel channel;
+		private final int columns;
+		private long end;
+
+		private Writer(FileChannel channel, int columns, long end) {
+			this.channel = channel;
+			this.columns = columns;
+			this.end = end;
+		}
+
+		/**
+		 * Appends the rows of a buffer as a new chunk
+		 * @param buffer rows with the capture objects of the file
+		 */
+		public void append(ColumnarProfileBuffer buffer) throws IOException {
+			if (buffer.getColumnCount() != columns) {
+				throw new IllegalArgumentException("buffer with different capture objects");
+			}
+			int rows = buffer.getRowCount();
+			long size = CHUNK_HEADER_SIZE;
+			byte[][][] bytes = new byte[columns][][];
+			for (int col = 0; col < columns; ++col) {
+				size += 1 + nullsSize(rows);
+				switch (buffer.getColumnType(col)) {
+				case INTEGER:
+				case FLOAT:
+					size += 8L * rows;
+					break;
+				case DATETIME:
+					size += 11L * rows;
+					break;
+				case BYTES:
+					bytes[col] = new byte[rows][];
+					size += 4L * (rows + 1);
+					for (int row = 0; row < rows; ++row) {
+						bytes[col][row] = buffer.isNull(row, col) ? new byte[0] : buffer.getBytes(row, col);
+						size += bytes[col][row].length;
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("chunk too large, append fewer rows at a time");
+			}
+			if (channel.size() > end) {
+				//remains of a chunk that was never committed
+				channel.truncate(end);
+			}
+
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, end, size);
+			out.putInt(0).putInt(rows);
+			for (int col = 0; col < columns; ++col) {
+				ColumnType type = buffer.getColumnType(col);
+				out.put((byte)type.ordinal());
+				long[] nulls = new long[nullsSize(rows) / 8];
+				for (int row = 0; row < rows; ++row) {
+					if (buffer.isNull(row, col)) {
+						nulls[row >>> 6] |= 1L << row;
+					}
+				}
+				out.asLongBuffer().put(nulls);
+				out.position(out.position() + nulls.length * 8);
+				switch (type) {
+				case INTEGER:
+					putLongs(out, buffer.getLongColumn(col));
+					break;
+				case FLOAT:
+					double[] doubles = buffer.getDoubleColumn(col);
+					out.asDoubleBuffer().put(doubles);
+					out.position(out.position() + doubles.length * 8);
+					break;
+				case DATETIME:
+					putLongs(out, buffer.getLongColumn(col));
+					for (int row = 0; row < rows; ++row) {
+						out.putShort(buffer.isNull(row, col) ? 0 : (short)buffer.getDeviation(row, col));
+					}
+					for (int row = 0; row < rows; ++row) {
+						out.put(buffer.isNull(row, col) ? 0 : (byte)buffer.getClockStatus(row, col));
+					}
+					break;
+				case BYTES:
+					int offset = 0;
+					for (int row = 0; row < rows; ++row) {
+						out.putInt(offset);
+						offset += bytes[col][row].length;
+					}
+					out.putInt(offset);
+					for (int row = 0; row < rows; ++row) {
+						out.put(bytes[col][row]);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			out.force();
+			out.putInt(0, (int)size);
+			out.force();
+			end += size;
+		}
+
+		@Override public void close() throws IOException {
+			channel.close();
+		}
+
+		private static void putLongs(ByteBuffer out, long[] values) {
+			out.asLongBuffer().put(values);
+			out.position(out.position() + values.length * 8);
+		}
+	}
+
+	/**
+	 * Read access to the chunks of a file, values are read from the mapped chunks when requested
+	 */
+	public static final class Reader implements Closeable {
+		private final CaptureObject[] captureObjects;
+		private final Chunk[] chunks;
+		private final int[] firstRows;
+		private final int rowCount;
+
+		private Reader(Layout layout) {
+			this.captureObjects = layout.captureObjects;
+			this.chunks = layout.chunks.toArray(new Chunk[layout.chunks.size()]);
+			this.firstRows = new int[chunks.length];
+			int rows = 0;
+			for (int i = 0; i < chunks.length; ++i) {
+				firstRows[i] = rows;
+				rows += chunks[i].rows;
+			}
+			this.rowCount = rows;
+		}
+
+		public CaptureObject[] getCaptureObjects() {
+			return captureObjects.clone();
+		}
+
+		public int getColumnCount() {
+			return captureObjects.length;
+		}
+
+		/**
+		 * @return the number of rows of all the chunks
+		 */
+		public int getRowCount() {
+			return rowCount;
+		}
+
+		public int getChunkCount() {
+			return chunks.length;
+		}
+
+		public Chunk getChunk(int index) {
+			return chunks[index];
+		}
+
+		public ColumnType getColumnType(int row, int col) {
+			return chunks[chunkOf(row)].getColumnType(col);
+		}
+
+		public boolean isNull(int row, int col) {
+			int chunk = chunkOf(row);
+			return chunks[chunk].isNull(row - firstRows[chunk], col);
+		}
+
+		public long getLong(int row, int col) {
+			int chunk = chunkOf(row);
+			return chunks[chunk].getLong(row - firstRows[chunk], col);
+		}
+
+		public double getDouble(int row, int col) {
+			int chunk = chunkOf(row);
+			return chunks[chunk].getDouble(row - firstRows[chunk], col);
+		}
+
+		public long getLocalMillis(int row, int col) {
+			int chunk = chunkOf(row);
+			return chunks[chunk].getLocalMillis(row - firstRows[chunk], col);
+		}
+
+		public byte[] getBytes(int row, int col) {
+			int chunk = chunkOf(row);
+			return chunks[chunk].getBytes(row - firstRows[chunk], col);
+		}
+
+		/**
+		 * The mappings are released by the garbage collector, closing only drops the references
+		 */
+		@Override public void close() {
+			Arrays.fill(chunks, null);
+		}
+
+		private int chunkOf(int row) {
+			if (row < 0 || row >= rowCount) {
+				throw new IndexOutOfBoundsException("row "+row);
+			}
+			int chunk = Arrays.binarySearch(firstRows, row);
+			if (chunk < 0) {
+				return -chunk - 2;
+			}
+			//skip empty chunks starting at the same row
+			while (chunks[chunk].rows == 0) {
+				++chunk;
+			}
+			return chunk;
+		}
+	}
+
+	/**
+	 * Rows appended at once, accessed in place in the mapped file
+	 */
+	public static final class Chunk {
+		private final ByteBuffer data;
+		private final int rows;
+		private final ColumnType[] types;
+		private final int[] nulls;
+		private final int[] values;
+
+		private Chunk(ByteBuffer data, int columns) throws IOException {
+			this.data = data;
+			this.rows = data.getInt(4);
+			this.types = new ColumnType[columns];
+			this.nulls = new int[columns];
+			this.values = new int[columns];
+			int pos = CHUNK_HEADER_SIZE;
+			for (int col = 0; col < columns; ++col) {
+				int type = data.get(pos++);
+				if (type < 0 || type >= COLUMN_TYPES.length) {
+					throw new IOException("invalid column type "+type);
+				}
+				types[col] = COLUMN_TYPES[type];
+				nulls[col] = pos;
+				pos += nullsSize(rows);
+				values[col] = pos;
+				switch (types[col]) {
+				case INTEGER:
+				case FLOAT:
+					pos += 8 * rows;
+					break;
+				case DATETIME:
+					pos += 11 * rows;
+					break;
+				case BYTES:
+					pos += 4 * (rows + 1) + data.getInt(pos + 4 * rows);
+					break;
+				default:
+					break;
+				}
+			}
+			if (pos != data.limit()) {
+				throw new IOException("invalid chunk");
+			}
+		}
+
+		public int getRowCount() {
+			return rows;
+		}
+
+		public ColumnType getColumnType(int col) {
+			return types[col];
+		}
+
+		public boolean isNull(int row, int col) {
+			checkRow(row);
+			return (data.getLong(nulls[col] + (row >>> 6) * 8) & (1L << row)) != 0;
+		}
+
+		public long getLong(int row, int col) {
+			return data.getLong(value(row, col, ColumnType.INTEGER, 8));
+		}
+
+		/**
+		 * @return the value of a floating point or integer cell
+		 */
+		public double getDouble(int row, int col) {
+			if (types[col] == ColumnType.INTEGER) {
+				return getLong(row, col);
+			}
+			return data.getDouble(value(row, col, ColumnType.FLOAT, 8));
+		}
+
+		public long getLocalMillis(int row, int col) {
+			return data.getLong(value(row, col, ColumnType.DATETIME, 8));
+		}
+
+		public int getDeviation(int row, int col) {
+			value(row, col, ColumnType.DATETIME, 0);
+			return data.getShort(values[col] + 8 * rows + 2 * row);
+		}
+
+		public int getClockStatus(int row, int col) {
+			value(row, col, ColumnType.DATETIME, 0);
+			return data.get(values[col] + 10 * rows + row) & 0xFF;
+		}
+
+		public byte[] getBytes(int row, int col) {
+			int offsets = value(row, col, ColumnType.BYTES, 4);
+			int from = data.getInt(offsets);
+			int to = data.getInt(offsets + 4);
+			byte[] value = new byte[to - from];
+			int contents = values[col] + 4 * (rows + 1);
+			for (int i = 0; i < value.length; ++i) {
+				value[i] = data.get(contents + from + i);
+			}
+			return value;
+		}
+
+		private int value(int row, int col, ColumnType type, int width) {
+			checkRow(row);
+			if (types[col] != type) {
+				throw new IllegalArgumentException("column "+col+" is "+types[col]);
+			}
+			return values[col] + row * width;
+		}
+
+		private void checkRow(int row) {
+			if (row < 0 || row >= rows) {
+				throw new IndexOutOfBoundsException("row "+row);
+			}
+		}
+	}
+
+	private static final class Layout {
+		CaptureObject[] captureObjects;
+		final List<Chunk> chunks = new ArrayList<>();
+		long end;
+	}
+
+	/**
+	 * Reads the header and maps the committed chunks, a chunk left incomplete by a failure is ignored
+	 */
+	private static Layout scan(FileChannel channel, Path path) throws IOException {
+		Layout layout = new Layout();
+		long fileSize = channel.size();
+		try {
+			ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(12, fileSize));
+			if (fixed.limit() < 12 || fixed.getInt(0) != MAGIC || fixed.getInt(4) != VERSION) {
+				throw new IOException("not a profile file: "+path);
+			}
+			int schemaSize = fixed.getInt(8);
+			if (schemaSize < 0 || 12L + schemaSize > fileSize) {
+				throw new IOException("invalid profile file: "+path);
+			}
+			byte[] schema = new byte[schemaSize];
+			channel.map(FileChannel.MapMode.READ_ONLY, 12, schemaSize).get(schema);
+			layout.captureObjects = CaptureObject.SCHEMA.decodeArray(schema, CaptureObject[]::new);
+			long pos = 12L + schemaSize;
+			while (pos + CHUNK_HEADER_SIZE <= fileSize) {
+				ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, pos, CHUNK_HEADER_SIZE);
+				int size = header.getInt(0);
+				if (size < CHUNK_HEADER_SIZE || pos + size > fileSize) {
+					break;
+				}
+				layout.chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, pos, size), layout.captureObjects.length));
+				pos += size;
+			}
+			layout.end = pos;
+		} catch (RuntimeException e) {
+			throw new IOException("invalid profile file: "+path, e);
+		}
+		return layout;
+	}
+
+	private static int nullsSize(int rows) {
+		return (rows + 63) / 64 * 8;
+	}
+
+}
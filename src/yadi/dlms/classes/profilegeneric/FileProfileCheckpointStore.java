@@ -0,0 +1,57 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Properties;
+
+import yadi.dlms.Obis;
+
+/**
+ * Keeps one file per meter and profile in a directory.
+ * A checkpoint is written to a temporary file that atomically replaces the previous one.
+ */
+public class FileProfileCheckpointStore implements ProfileCheckpointStore {
+	
+	private final Path directory;
+	
+	public FileProfileCheckpointStore(Path directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public ProfileCheckpoint load(String meterId, Obis profile) throws IOException {
+		Path file = getFile(meterId, profile);
+		Properties properties = PropertiesFile.load(file);
+		if (properties == null) {
+			return null;
+		}
+		if (!meterId.equals(properties.getProperty("meterId")) || !profile.toString().equals(properties.getProperty("profile"))) {
+			throw new IOException("checkpoint of another meter or profile: "+file);
+		}
+		try {
+			return new ProfileCheckpoint(meterId, profile,
+					Integer.parseInt(properties.getProperty("entryIndex")),
+					Base64.getDecoder().decode(properties.getProperty("lastEntry")),
+					Long.parseLong(properties.getProperty("time", "0")));
+		} catch (RuntimeException e) {
+			throw new IOException("invalid checkpoint: "+file, e);
+		}
+	}
+
+	@Override
+	public void save(ProfileCheckpoint checkpoint) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("meterId", checkpoint.getMeterId());
+		properties.setProperty("profile", checkpoint.getProfile().toString());
+		properties.setProperty("entryIndex", Integer.toString(checkpoint.getEntryIndex()));
+		properties.setProperty("lastEntry", Base64.getEncoder().encodeToString(checkpoint.getLastEntry()));
+		properties.setProperty("time", Long.toString(checkpoint.getTime()));
+		PropertiesFile.store(getFile(checkpoint.getMeterId(), checkpoint.getProfile()), properties);
+	}
+	
+	private Path getFile(String meterId, Obis profile) {
+		return directory.resolve(PropertiesFile.encodeName(meterId)+"_"+profile+".checkpoint");
+	}
+
+}
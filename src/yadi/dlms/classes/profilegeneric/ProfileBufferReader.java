@@ -0,0 +1,101 @@
+package yadi.dlms.classes.profilegeneric;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.DlmsException;
+import yadi.dlms.DlmsException.DlmsExceptionReason;
+import yadi.dlms.DlmsStreamParser;
+import yadi.dlms.cosem.CosemParser;
+import yadi.dlms.linklayer.LinkLayerException;
+import yadi.dlms.phylayer.PhyLayerException;
+
+/**
+ * Reads the entries of a profile buffer while the data blocks of the response are still being transferred.
+ * The blocks are fed to a DlmsStreamParser and entries are returned as soon as all their bytes were received,
+ * entries split between blocks are kept until the next block completes them. The next block is only requested
+ * when the entries of the previous one were consumed, so only the entry being decoded is held in memory.
+ *
+ * <pre>
+ * try (ProfileBufferReader reader = profile.readBuffer(dlms, phy)) {
+ *     ProfileGenericEntry entry;
+ *     while ((entry = reader.next()) != null) {
+ *         store(entry);
+ *     }
+ * }
+ * </pre>
+ */
+public class ProfileBufferReader implements AutoCloseable {
+
+	private final DlmsClient.GetTransfer transfer;
+	private final DlmsStreamParser parser = new DlmsStreamParser();
+	private int entryCount = -1;
+	private int entriesRead;
+
+	ProfileBufferReader(DlmsClient.GetTransfer transfer) {
+		this.transfer = transfer;
+	}
+
+	/**
+	 * Reads the next entry, requesting more data blocks if the entry wasn't completely received yet
+	 * @return the next entry or null if all the entries were read
+	 */
+	public ProfileGenericEntry next() throws PhyLayerException, DlmsException, LinkLayerException {
+		while (true) {
+			if (entryCount < 0) {
+				DlmsStreamParser.Event event = parser.next();
+				if (event == DlmsStreamParser.Event.START_ARRAY) {
+					entryCount = parser.getSize();
+					continue;
+				}
+				if (event != DlmsStreamParser.Event.NEED_DATA) {
+					throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+				}
+			} else {
+				if (entriesRead == entryCount) {
+					return null;
+				}
+				byte[] element = parser.nextElement();
+				if (element != null) {
+					++entriesRead;
+					return makeEntry(element);
+				}
+			}
+			byte[] data = transfer.nextData();
+			if (data == null) {
+				throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+			}
+			parser.feed(data);
+		}
+	}
+
+	/**
+	 * @return the number of entries of the buffer, -1 if not known yet
+	 */
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * @return the number of entries returned by next()
+	 */
+	public int getEntriesRead() {
+		return entriesRead;
+	}
+
+	/**
+	 * Stops the reading, the blocks not transferred yet are abandoned
+	 */
+	@Override public void close() {
+		transfer.close();
+	}
+
+	private static ProfileGenericEntry makeEntry(byte[] element) {
+		CosemParser parser = new CosemParser(element);
+		int items = parser.parseStructureSize();
+		ProfileGenericEntry entry = new ProfileGenericEntry(items);
+		for (int i = 0; i < items; ++i) {
+			entry.addItem(new ProfileGenericItem(parser.getNextItemRawData()));
+		}
+		return entry;
+	}
+
+}
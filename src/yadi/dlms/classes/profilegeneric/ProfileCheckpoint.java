@@ -0,0 +1,61 @@
+package yadi.dlms.classes.profilegeneric;
+
+import yadi.dlms.Obis;
+
+/**
+ * Position of the last entry of a profile already read from a meter.
+ * The entry is identified by its encoding, which includes the capture time and the values, so it can be
+ * found again even after the buffer wrapped around or the clock of the meter was changed.
+ */
+public class ProfileCheckpoint {
+	private final String meterId;
+	private final Obis profile;
+	private final int entryIndex;
+	private final byte[] lastEntry;
+	private final long time;
+	
+	/**
+	 * @param meterId identification of the meter
+	 * @param profile logical name of the profile generic object
+	 * @param entryIndex index of the last entry read when it was read, starting at 1
+	 * @param lastEntry encoding of the last entry read
+	 */
+	public ProfileCheckpoint(String meterId, Obis profile, int entryIndex, byte[] lastEntry) {
+		this(meterId, profile, entryIndex, lastEntry, 0);
+	}
+	
+	/**
+	 * @param time when the last entry was read, in milliseconds since the epoch, 0 if unknown
+	 */
+	public ProfileCheckpoint(String meterId, Obis profile, int entryIndex, byte[] lastEntry, long time) {
+		this.meterId = meterId;
+		this.profile = profile;
+		this.entryIndex = entryIndex;
+		this.lastEntry = lastEntry.clone();
+		this.time = time;
+	}
+	
+	public String getMeterId() {
+		return meterId;
+	}
+	
+	public Obis getProfile() {
+		return profile;
+	}
+	
+	public int getEntryIndex() {
+		return entryIndex;
+	}
+	
+	public byte[] getLastEntry() {
+		return lastEntry.clone();
+	}
+	
+	/**
+	 * @return when the last entry was read (local time of the client), used to predict how many entries were
+	 * captured since then. 0 if unknown
+	 */
+	public long getTime() {
+		return time;
+	}
+}
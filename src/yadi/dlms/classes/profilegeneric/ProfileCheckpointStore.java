@@ -0,0 +1,19 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.io.IOException;
+
+import yadi.dlms.Obis;
+
+public interface ProfileCheckpointStore {
+	
+	/**
+	 * @return the checkpoint saved for the profile of the meter, or null if it was never synchronised
+	 */
+	public ProfileCheckpoint load(String meterId, Obis profile) throws IOException;
+	
+	/**
+	 * Saves a checkpoint, replacing the previous one of the same meter and profile.
+	 * After a failure either the previous or the new checkpoint must be loaded, never a partial one.
+	 */
+	public void save(ProfileCheckpoint checkpoint) throws IOException;
+}
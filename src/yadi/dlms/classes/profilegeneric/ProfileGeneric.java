@@ -3,71 +3,158 @@ package yadi.dlms.classes.profilegeneric;
 import yadi.dlms.DlmsClient;
 import yadi.dlms.DlmsException;
 import yadi.dlms.Obis;
+import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.cosem.CosemAddress;
 import yadi.dlms.cosem.CosemParser;
-import yadi.dlms.cosem.LnDescriptor;
 import yadi.dlms.linklayer.LinkLayerException;
 import yadi.dlms.phylayer.PhyLayer;
 import yadi.dlms.phylayer.PhyLayerException;
+import yadi.dlms.selectiveaccess.DateTimeSelector;
+import yadi.dlms.selectiveaccess.EntrySelector;
 import yadi.dlms.selectiveaccess.SelectiveAccess;
 
 public class ProfileGeneric {
 
-	private final LnDescriptor attBuffer;
-	private final LnDescriptor attCaptureObjects;
-	private final LnDescriptor attCapturePeriod;
-	private final LnDescriptor attSortMethod;
-	private final LnDescriptor attSortObject;
-	private final LnDescriptor attEntriesInUse;
-	private final LnDescriptor attProfileEntries;
+	private final CosemAddress attBuffer;
+	private final CosemAddress attCaptureObjects;
+	private final CosemAddress attCapturePeriod;
+	private final CosemAddress attSortMethod;
+	private final CosemAddress attSortObject;
+	private final CosemAddress attEntriesInUse;
+	private final CosemAddress attProfileEntries;
 	
 	public ProfileGeneric(Obis obis) {
-		attBuffer = new LnDescriptor(7, obis, 2);
-		attCaptureObjects = new LnDescriptor(7, obis, 3);
-		attCapturePeriod = new LnDescriptor(7, obis, 4);
-		attSortMethod = new LnDescriptor(7, obis, 5);
-		attSortObject = new LnDescriptor(7, obis, 6);
-		attEntriesInUse = new LnDescriptor(7, obis, 7);
-		attProfileEntries = new LnDescriptor(7, obis, 8);
+		attBuffer = new CosemAddress(7, obis, 2);
+		attCaptureObjects = new CosemAddress(7, obis, 3);
+		attCapturePeriod = new CosemAddress(7, obis, 4);
+		attSortMethod = new CosemAddress(7, obis, 5);
+		attSortObject = new CosemAddress(7, obis, 6);
+		attEntriesInUse = new CosemAddress(7, obis, 7);
+		attProfileEntries = new CosemAddress(7, obis, 8);
 	}
 	
 	public ProfileGenericBuffer getBuffer(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attBuffer);
-		return makeProfileGenericBuffer(attBuffer.getResponseData());
+		return makeProfileGenericBuffer(dlms.get(phy, attBuffer));
 	}
 	
 	public ProfileGenericBuffer getBuffer(DlmsClient dlms, PhyLayer phy, SelectiveAccess accessSelector) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attBuffer);
-		return makeProfileGenericBuffer(attBuffer.getResponseData());
+		return makeProfileGenericBuffer(dlms.get(phy, attBuffer, accessSelector.getDescriptorData()));
+	}
+	
+	/**
+	 * Reads the entries captured in a time window, using the clock as restricting object
+	 * @param from the oldest capture time to be read
+	 * @param to the newest capture time to be read
+	 * @return the entries of the window
+	 */
+	public ProfileGenericBuffer getBuffer(DlmsClient dlms, PhyLayer phy, CosemDateTime from, CosemDateTime to) throws PhyLayerException, DlmsException, LinkLayerException {
+		return getBuffer(dlms, phy, new DateTimeSelector(from, to));
+	}
+	
+	/**
+	 * Reads a window of entries
+	 * @param fromEntry index of the first entry to be read, starting at 1
+	 * @param toEntry index of the last entry to be read, 0 for the newest one
+	 * @return the entries of the window
+	 */
+	public ProfileGenericBuffer getBuffer(DlmsClient dlms, PhyLayer phy, int fromEntry, int toEntry) throws PhyLayerException, DlmsException, LinkLayerException {
+		return getBuffer(dlms, phy, EntrySelector.builder().fromEntry(fromEntry).toEntry(toEntry).build());
+	}
+	
+	/**
+	 * Reads a window of entries restricted to some of the capture objects
+	 * @param fromEntry index of the first entry to be read, starting at 1
+	 * @param toEntry index of the last entry to be read, 0 for the newest one
+	 * @param fromColumn index of the first capture object to be read, starting at 1
+	 * @param toColumn index of the last capture object to be read, 0 for the last one
+	 * @return the entries of the window
+	 */
+	public ProfileGenericBuffer getBuffer(DlmsClient dlms, PhyLayer phy, int fromEntry, int toEntry, int fromColumn, int toColumn) throws PhyLayerException, DlmsException, LinkLayerException {
+		return getBuffer(dlms, phy, EntrySelector.builder()
+				.fromEntry(fromEntry)
+				.toEntry(toEntry)
+				.fromSelectedValue(fromColumn)
+				.toSelectedValue(toColumn)
+				.build());
+	}
+
+	/**
+	 * Starts reading the buffer entry by entry, while its data blocks are transferred
+	 * @return the reader, it must be closed if not all the entries are read
+	 */
+	public ProfileBufferReader readBuffer(DlmsClient dlms, PhyLayer phy) {
+		return new ProfileBufferReader(dlms.getTransfer(phy, attBuffer, null));
+	}
+
+	/**
+	 * Starts reading some entries of the buffer entry by entry, while its data blocks are transferred
+	 * @param accessSelector selection of the entries
+	 * @return the reader, it must be closed if not all the entries are read
+	 */
+	public ProfileBufferReader readBuffer(DlmsClient dlms, PhyLayer phy, SelectiveAccess accessSelector) {
+		return new ProfileBufferReader(dlms.getTransfer(phy, attBuffer, accessSelector.getDescriptorData()));
+	}
+
+	/**
+	 * Reads the capture objects and the buffer, stored by column
+	 * @return the entries of the buffer
+	 */
+	public ColumnarProfileBuffer getColumnarBuffer(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
+		return getColumnarBuffer(dlms, phy, getCaptureObjects(dlms, phy));
+	}
+
+	/**
+	 * Reads the buffer, stored by column, with capture objects known in advance (e.g. from a ProfileSchemaCache)
+	 * @param captureObjects the capture objects of the profile
+	 * @return the entries of the buffer
+	 * @throws IllegalArgumentException if the entries don't match the capture objects
+	 */
+	public ColumnarProfileBuffer getColumnarBuffer(DlmsClient dlms, PhyLayer phy, CaptureObject[] captureObjects) throws PhyLayerException, DlmsException, LinkLayerException {
+		return ColumnarProfileBuffer.parse(captureObjects, dlms.get(phy, attBuffer));
+	}
+
+	/**
+	 * Reads a buffer compressed with null-data and expands it, see ColumnarProfileBuffer.expandNullData
+	 * @param captureObjects the capture objects of the profile
+	 * @param capturePeriod the capture period of the profile in seconds
+	 * @return the expanded entries of the buffer
+	 */
+	public ColumnarProfileBuffer getColumnarBuffer(DlmsClient dlms, PhyLayer phy, CaptureObject[] captureObjects, int capturePeriod) throws PhyLayerException, DlmsException, LinkLayerException {
+		return ColumnarProfileBuffer.parse(captureObjects, dlms.get(phy, attBuffer), capturePeriod);
+	}
+
+	/**
+	 * Reads the capture objects and some entries of the buffer, stored by column
+	 * @param accessSelector selection of the entries, it must not restrict the capture objects
+	 * @return the selected entries
+	 */
+	public ColumnarProfileBuffer getColumnarBuffer(DlmsClient dlms, PhyLayer phy, SelectiveAccess accessSelector) throws PhyLayerException, DlmsException, LinkLayerException {
+		CaptureObject[] captureObjects = getCaptureObjects(dlms, phy);
+		return ColumnarProfileBuffer.parse(captureObjects, dlms.get(phy, attBuffer, accessSelector.getDescriptorData()));
 	}
 
 	public CaptureObject[] getCaptureObjects(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attCaptureObjects);
-		return makeCaptureObjectList(attCaptureObjects.getResponseData());
+		return makeCaptureObjectList(dlms.get(phy, attCaptureObjects));
 	}
 	
 	public int getCapturePeriod(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attCapturePeriod);
-		return CosemParser.make(attCapturePeriod.getResponseData()).integer();
+		return CosemParser.make(dlms.get(phy, attCapturePeriod)).integer();
 	}
 
 	public SortMethod getSortMethod(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attSortMethod);
-		return SortMethod.fromValue(CosemParser.make(attSortMethod.getResponseData()).enumeration());
+		return SortMethod.fromValue(CosemParser.make(dlms.get(phy, attSortMethod)).enumeration());
 	}
 	
 	public CaptureObject getSortObject(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attSortObject);
-		return makeSortObject(attSortObject.getResponseData());
+		return makeSortObject(dlms.get(phy, attSortObject));
 	}
 	
 	public int getEntriesInUse(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attEntriesInUse);
-		return CosemParser.make(attEntriesInUse.getResponseData()).integer();
+		return CosemParser.make(dlms.get(phy, attEntriesInUse)).integer();
 	}
 	
 	public int getProfileEntries(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.get(phy, attProfileEntries);
-		return CosemParser.make(attProfileEntries.getResponseData()).integer();
+		return CosemParser.make(dlms.get(phy, attProfileEntries)).integer();
 	}
 	
 	private ProfileGenericBuffer makeProfileGenericBuffer(byte[] data) {
@@ -88,22 +175,11 @@ public class ProfileGeneric {
 	}
 
 	private CaptureObject[] makeCaptureObjectList(byte[] data) {
-		CosemParser parser = new CosemParser(data);
-		int size = parser.parseArraySize();
-		CaptureObject[] list = new CaptureObject[size];
-		
-		for (int i = 0; i < size; ++i) {
-			parser.verifyStructureSize(4);
-			list[i] = new CaptureObject(parser.uint16(), new Obis(parser.octetString()), parser.int8(), parser.uint16());
-		}
-		
-		return list;
+		return CaptureObject.SCHEMA.decodeArray(data, CaptureObject[]::new);
 	}
 	
 	private CaptureObject makeSortObject(byte[] data) {
-		CosemParser parser = new CosemParser(data);
-		parser.verifyStructureSize(4);
-		return new CaptureObject(parser.uint16(), new Obis(parser.octetString()), parser.int8(), parser.uint16());
+		return CaptureObject.SCHEMA.decode(data);
 	}
 
 }
@@ -10,4 +10,12 @@ public class ProfileGenericBuffer {
 		entries.add(entry);
 	}
 	
+	public ArrayList<ProfileGenericEntry> getEntries() {
+		return entries;
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
 }
@@ -0,0 +1,176 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.io.IOException;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.DlmsException;
+import yadi.dlms.Obis;
+import yadi.dlms.linklayer.LinkLayerException;
+import yadi.dlms.phylayer.PhyLayer;
+import yadi.dlms.phylayer.PhyLayerException;
+
+/**
+ * Reads a range of entries of a profile in pages, using entry selective access.
+ * Unless a page size is set, the first page is small and the next ones are sized from the bytes per entry
+ * measured, to fit in a number of PDUs of the size negotiated with the meter.
+ * Each page is handed over as soon as it's read. If a page fails it's retried with half the entries,
+ * and if it still fails the exception is thrown: calling read again resumes at the failed page.
+ *
+ * <pre>
+ * ProfilePager pager = new ProfilePager(obis, 1, 0).setMaxRetries(2);
+ * while (!pager.isFinished()) {
+ *     try {
+ *         pager.read(dlms, phy, (from, to, entries) -&gt; store(entries));
+ *     } catch (LinkLayerException e) {
+ *         reconnect();
+ *     }
+ * }
+ * </pre>
+ */
+public class ProfilePager {
+
+	public interface PageListener {
+		/**
+		 * Receives a page, the next page is only read after it returns
+		 * @param fromEntry index of the first entry of the page
+		 * @param toEntry index of the last entry of the page
+		 * @param entries the entries read, fewer than requested if the buffer has fewer entries
+		 */
+		void onPage(int fromEntry, int toEntry, ProfileGenericBuffer entries) throws IOException;
+	}
+
+	private static final int FIRST_PAGE = 16;
+	private static final int DEFAULT_PDUS_PER_PAGE = 8;
+
+	private final ProfileGeneric profile;
+	private final int toEntry;
+	private int lastEntry;
+	private int nextEntry;
+	private int pageSize;
+	private int pdusPerPage = DEFAULT_PDUS_PER_PAGE;
+	private int maxRetries;
+	private int bytesPerEntry;
+
+	/**
+	 * Creates a pager for a range of entries
+	 * @param obis the obis of the profile
+	 * @param fromEntry index of the first entry to be read, starting at 1
+	 * @param toEntry index of the last entry to be read, 0 for the newest entry when the reading starts
+	 */
+	public ProfilePager(Obis obis, int fromEntry, int toEntry) {
+		if (fromEntry < 1 || toEntry < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.profile = new ProfileGeneric(obis);
+		this.nextEntry = fromEntry;
+		this.toEntry = toEntry;
+	}
+
+	/**
+	 * Sets a fixed number of entries per page, instead of sizing the pages from the pdu size
+	 */
+	public ProfilePager setPageSize(int entries) {
+		if (entries < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.pageSize = entries;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the pages sized from the pdu size
+	 * @param pdus the number of pdus (data blocks) a page should fit in
+	 */
+	public ProfilePager setPdusPerPage(int pdus) {
+		if (pdus < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.pdusPerPage = pdus;
+		return this;
+	}
+
+	/**
+	 * Sets how many times a failed page is retried, with half the entries each time, before giving up
+	 */
+	public ProfilePager setMaxRetries(int retries) {
+		if (retries < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.maxRetries = retries;
+		return this;
+	}
+
+	/**
+	 * @return index of the next entry to be read
+	 */
+	public int getNextEntry() {
+		return nextEntry;
+	}
+
+	public boolean isFinished() {
+		return lastEntry != 0 && nextEntry > lastEntry;
+	}
+
+	/**
+	 * Reads the remaining pages of the range
+	 * @param listener receives the pages in order
+	 */
+	public void read(DlmsClient dlms, PhyLayer phy, PageListener listener) throws PhyLayerException, DlmsException, LinkLayerException, IOException {
+		if (lastEntry == 0) {
+			lastEntry = toEntry != 0 ? toEntry : profile.getEntriesInUse(dlms, phy);
+			if (lastEntry == 0) {
+				//empty buffer
+				nextEntry = 1;
+				lastEntry = -1;
+				return;
+			}
+		}
+		while (nextEntry <= lastEntry) {
+			int entries = getPageEntries(dlms);
+			int retries = 0;
+			while (true) {
+				int last = Math.min(lastEntry, nextEntry + entries - 1);
+				ProfileGenericBuffer page;
+				try {
+					page = profile.getBuffer(dlms, phy, nextEntry, last);
+				} catch (PhyLayerException | DlmsException | LinkLayerException e) {
+					dlms.abortTransfer();
+					if (retries++ == maxRetries) {
+						throw e;
+					}
+					entries = Math.max(1, entries / 2);
+					continue;
+				}
+				measure(page);
+				listener.onPage(nextEntry, last, page);
+				nextEntry = last + 1;
+				break;
+			}
+		}
+	}
+
+	private int getPageEntries(DlmsClient dlms) {
+		if (pageSize != 0) {
+			return pageSize;
+		}
+		if (bytesPerEntry == 0) {
+			return FIRST_PAGE;
+		}
+		return Math.max(1, dlms.getMaxPduSize() * pdusPerPage / bytesPerEntry);
+	}
+
+	private void measure(ProfileGenericBuffer page) {
+		if (page.size() == 0) {
+			return;
+		}
+		int bytes = 0;
+		for (ProfileGenericEntry entry : page.getEntries()) {
+			bytes += 2;
+			for (ProfileGenericItem item : entry.getItems()) {
+				bytes += item.getData().length;
+			}
+		}
+		bytesPerEntry = Math.max(1, (bytes + page.size() - 1) / page.size());
+	}
+
+}
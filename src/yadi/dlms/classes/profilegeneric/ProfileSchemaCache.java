@@ -0,0 +1,233 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.DlmsException;
+import yadi.dlms.Obis;
+import yadi.dlms.classes.register.CosemScalarAndUnit;
+import yadi.dlms.classes.register.CosemUnit;
+import yadi.dlms.cosem.CosemAddress;
+import yadi.dlms.cosem.CosemParser;
+import yadi.dlms.linklayer.LinkLayerException;
+import yadi.dlms.phylayer.PhyLayer;
+import yadi.dlms.phylayer.PhyLayerException;
+
+/**
+ * Keeps the capture objects of the profiles and the scaler/unit of the registers, which don't change
+ * between meters of the same model and firmware, so they are read from one meter only.
+ * Entries are grouped by a model key chosen by the application (e.g. manufacturer, model and firmware
+ * version, or the logical device name). An entry is read again when it expires or after it's invalidated,
+ * e.g. when a buffer doesn't match the cached capture objects.
+ * If a directory is given, each model is kept in a file and loaded again after a restart. Saves of the same
+ * model are serialized, so the file always ends with the latest contents.
+ */
+public class ProfileSchemaCache {
+
+	private static final String CAPTURE_OBJECTS = "captureObjects.";
+	private static final String SCALER_UNIT = "scalerUnit.";
+
+	private static final class Entry<V> {
+		final V value;
+		final long timestamp;
+
+		Entry(V value, long timestamp) {
+			this.value = value;
+			this.timestamp = timestamp;
+		}
+	}
+
+	private static final class Model {
+		final Map<Obis, Entry<CaptureObject[]>> captureObjects = new ConcurrentHashMap<>();
+		final Map<Obis, Entry<CosemScalarAndUnit>> scalerUnits = new ConcurrentHashMap<>();
+	}
+
+	private final Map<String, Model> models = new ConcurrentHashMap<>();
+	private final Path directory;
+	private final long maxAge;
+
+	/**
+	 * Creates a cache kept only in memory, where entries are kept until invalidated
+	 */
+	public ProfileSchemaCache() {
+		this(null, 0);
+	}
+
+	/**
+	 * Creates a cache persisted in a directory
+	 * @param directory where the models are saved, null to keep them only in memory
+	 * @param maxAge maximum age of an entry in milliseconds, 0 to never expire
+	 */
+	public ProfileSchemaCache(Path directory, long maxAge) {
+		if (maxAge < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.directory = directory;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Retrieves the capture objects of a profile, reading them from the meter if they aren't cached
+	 * @param model the model key of the meter
+	 * @param profile the obis of the profile
+	 * @return the capture objects
+	 */
+	public CaptureObject[] getCaptureObjects(DlmsClient dlms, PhyLayer phy, String model, Obis profile) throws PhyLayerException, DlmsException, LinkLayerException, IOException {
+		CaptureObject[] captureObjects = getCaptureObjects(model, profile);
+		if (captureObjects == null) {
+			captureObjects = new ProfileGeneric(profile).getCaptureObjects(dlms, phy);
+			putCaptureObjects(model, profile, captureObjects);
+		}
+		return captureObjects;
+	}
+
+	/**
+	 * Retrieves the scaler/unit of a register, reading it from the meter if it isn't cached
+	 * @param model the model key of the meter
+	 * @param classId class of the register: register, extended register or demand register
+	 * @param obis the obis of the register
+	 * @return the scaler/unit
+	 */
+	public CosemScalarAndUnit getScalerUnit(DlmsClient dlms, PhyLayer phy, String model, int classId, Obis obis) throws PhyLayerException, DlmsException, LinkLayerException, IOException {
+		CosemScalarAndUnit scalerUnit = getScalerUnit(model, obis);
+		if (scalerUnit == null) {
+			int index = classId == 5 ? 4 : 3;
+			CosemParser parser = new CosemParser(dlms.get(phy, new CosemAddress(classId, obis, index)));
+			parser.verifyStructureSize(2);
+			scalerUnit = new CosemScalarAndUnit(parser.int8(), CosemUnit.fromValue(parser.enumeration()));
+			putScalerUnit(model, obis, scalerUnit);
+		}
+		return scalerUnit;
+	}
+
+	/**
+	 * @return the cached capture objects of a profile, or null if not cached or expired
+	 */
+	public CaptureObject[] getCaptureObjects(String model, Obis profile) throws IOException {
+		Entry<CaptureObject[]> entry = valid(getModel(model).captureObjects, profile);
+		return entry == null ? null : entry.value.clone();
+	}
+
+	/**
+	 * @return the cached scaler/unit of a register, or null if not cached or expired
+	 */
+	public CosemScalarAndUnit getScalerUnit(String model, Obis obis) throws IOException {
+		Entry<CosemScalarAndUnit> entry = valid(getModel(model).scalerUnits, obis);
+		return entry == null ? null : entry.value;
+	}
+
+	public void putCaptureObjects(String model, Obis profile, CaptureObject[] captureObjects) throws IOException {
+		Model m = getModel(model);
+		m.captureObjects.put(profile, new Entry<>(captureObjects.clone(), System.currentTimeMillis()));
+		save(model, m);
+	}
+
+	public void putScalerUnit(String model, Obis obis, CosemScalarAndUnit scalerUnit) throws IOException {
+		Model m = getModel(model);
+		m.scalerUnits.put(obis, new Entry<>(scalerUnit, System.currentTimeMillis()));
+		save(model, m);
+	}
+
+	/**
+	 * Invalidates the capture objects of a profile, e.g. after they were changed or a buffer didn't match them
+	 */
+	public void invalidateCaptureObjects(String model, Obis profile) throws IOException {
+		Model m = getModel(model);
+		if (m.captureObjects.remove(profile) != null) {
+			save(model, m);
+		}
+	}
+
+	/**
+	 * Invalidates everything cached for a model, e.g. after a firmware upgrade
+	 */
+	public void invalidate(String model) throws IOException {
+		Model m = getModel(model);
+		m.captureObjects.clear();
+		m.scalerUnits.clear();
+		save(model, m);
+	}
+
+	private <V> Entry<V> valid(Map<Obis, Entry<V>> entries, Obis obis) {
+		Entry<V> entry = entries.get(obis);
+		if (entry != null && maxAge != 0 && System.currentTimeMillis() - entry.timestamp > maxAge) {
+			entries.remove(obis, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	private Model getModel(String model) throws IOException {
+		Model m = models.get(model);
+		if (m == null) {
+			m = load(model);
+			Model previous = models.putIfAbsent(model, m);
+			if (previous != null) {
+				m = previous;
+			}
+		}
+		return m;
+	}
+
+	private Model load(String model) throws IOException {
+		Model m = new Model();
+		if (directory == null) {
+			return m;
+		}
+		Path file = getFile(model);
+		Properties properties = PropertiesFile.load(file);
+		if (properties == null) {
+			return m;
+		}
+		if (!model.equals(properties.getProperty("model"))) {
+			throw new IOException("schema cache of another model: "+file);
+		}
+		try {
+			for (String key : properties.stringPropertyNames()) {
+				String[] fields = properties.getProperty(key).split(",");
+				if (key.startsWith(CAPTURE_OBJECTS)) {
+					Obis obis = Obis.valueOf(key.substring(CAPTURE_OBJECTS.length()));
+					byte[] encoded = Base64.getDecoder().decode(fields[1]);
+					m.captureObjects.put(obis, new Entry<>(CaptureObject.SCHEMA.decodeArray(encoded, CaptureObject[]::new), Long.parseLong(fields[0])));
+				} else if (key.startsWith(SCALER_UNIT)) {
+					Obis obis = Obis.valueOf(key.substring(SCALER_UNIT.length()));
+					CosemScalarAndUnit scalerUnit = new CosemScalarAndUnit(Integer.parseInt(fields[1]), CosemUnit.fromValue(Integer.parseInt(fields[2])));
+					m.scalerUnits.put(obis, new Entry<>(scalerUnit, Long.parseLong(fields[0])));
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("invalid schema cache: "+file, e);
+		}
+		return m;
+	}
+
+	private void save(String model, Model m) throws IOException {
+		if (directory == null) {
+			return;
+		}
+		//the snapshot is taken while holding the lock, so a save never overwrites the file with older contents
+		synchronized (m) {
+			Properties properties = new Properties();
+			properties.setProperty("model", model);
+			for (Map.Entry<Obis, Entry<CaptureObject[]>> e : m.captureObjects.entrySet()) {
+				String encoded = Base64.getEncoder().encodeToString(CaptureObject.SCHEMA.encodeArray(e.getValue().value));
+				properties.setProperty(CAPTURE_OBJECTS+e.getKey(), e.getValue().timestamp+","+encoded);
+			}
+			for (Map.Entry<Obis, Entry<CosemScalarAndUnit>> e : m.scalerUnits.entrySet()) {
+				CosemScalarAndUnit scalerUnit = e.getValue().value;
+				properties.setProperty(SCALER_UNIT+e.getKey(), e.getValue().timestamp+","+scalerUnit.getScalar()+","+scalerUnit.getUnit().getValue());
+			}
+			PropertiesFile.store(getFile(model), properties);
+		}
+	}
+
+	private Path getFile(String model) {
+		return directory.resolve(PropertiesFile.encodeName(model)+".schema");
+	}
+
+}
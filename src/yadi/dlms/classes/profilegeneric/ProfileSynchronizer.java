@@ -0,0 +1,185 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.DlmsException;
+import yadi.dlms.Obis;
+import yadi.dlms.linklayer.LinkLayerException;
+import yadi.dlms.phylayer.PhyLayer;
+import yadi.dlms.phylayer.PhyLayerException;
+
+/**
+ * Reads only the entries of a profile captured since the last synchronisation of each meter.
+ * The last entry read is kept in a checkpoint, with its index and the time it was read. While the buffer is
+ * filling up the checkpoint entry keeps its index. Once the buffer is full each capture moves it one
+ * position down, so its index is predicted from the time elapsed and the capture period. The entries are
+ * read from that index with entry selective access, and only if the checkpoint entry isn't there (clock
+ * change, reset or late prediction) older entries are searched, in growing windows that don't overlap.
+ *
+ * <pre>
+ * ProfileSynchronizer.Result result = sync.fetch(dlms, phy, meterId);
+ * store(result.getEntries());
+ * sync.commit(result);
+ * </pre>
+ */
+public class ProfileSynchronizer {
+
+	private static final int FIRST_WINDOW = 16;
+
+	/**
+	 * Entries read by a synchronisation, the checkpoint is only saved when the result is committed
+	 */
+	public static class Result {
+		private final List<ProfileGenericEntry> entries;
+		private final boolean continuous;
+		private final ProfileCheckpoint checkpoint;
+
+		private Result(List<ProfileGenericEntry> entries, boolean continuous, ProfileCheckpoint checkpoint) {
+			this.entries = entries;
+			this.continuous = continuous;
+			this.checkpoint = checkpoint;
+		}
+
+		/**
+		 * @return the new entries, oldest first
+		 */
+		public List<ProfileGenericEntry> getEntries() {
+			return entries;
+		}
+
+		/**
+		 * @return false if the entry of the checkpoint was no longer in the buffer, so entries may have been lost
+		 */
+		public boolean isContinuous() {
+			return continuous;
+		}
+
+		public ProfileCheckpoint getCheckpoint() {
+			return checkpoint;
+		}
+	}
+
+	private final Obis obis;
+	private final ProfileGeneric profile;
+	private final ProfileCheckpointStore store;
+
+	public ProfileSynchronizer(Obis obis, ProfileCheckpointStore store) {
+		this.obis = obis;
+		this.profile = new ProfileGeneric(obis);
+		this.store = store;
+	}
+
+	/**
+	 * Reads the entries captured after the checkpoint of the meter, all of them on the first synchronisation
+	 * @param meterId identification of the meter
+	 * @return the new entries and the checkpoint to be committed once they are processed
+	 */
+	public Result fetch(DlmsClient dlms, PhyLayer phy, String meterId) throws PhyLayerException, DlmsException, LinkLayerException, IOException {
+		ProfileCheckpoint checkpoint = store.load(meterId, obis);
+		int entriesInUse = profile.getEntriesInUse(dlms, phy);
+		if (entriesInUse == 0) {
+			return new Result(new ArrayList<ProfileGenericEntry>(), checkpoint == null, checkpoint);
+		}
+		if (checkpoint == null) {
+			return result(meterId, read(dlms, phy, 1, entriesInUse), entriesInUse, true, null);
+		}
+
+		byte[] lastEntry = checkpoint.getLastEntry();
+		int index = checkpoint.getEntryIndex();
+		int from;
+		if (index >= 1 && index < entriesInUse) {
+			//buffer filling up: the checkpoint entry is still at the same index
+			from = index;
+		} else if (index == entriesInUse) {
+			//buffer full (or nothing captured): the checkpoint entry moved down one position per capture
+			from = Math.max(1, entriesInUse - predictCaptures(dlms, phy, checkpoint));
+		} else {
+			//buffer reset
+			from = Math.max(1, entriesInUse - FIRST_WINDOW + 1);
+		}
+
+		List<ProfileGenericEntry> entries = read(dlms, phy, from, entriesInUse);
+		int window = FIRST_WINDOW;
+		while (true) {
+			int found = lastIndexOf(entries, lastEntry);
+			if (found >= 0) {
+				return result(meterId, entries.subList(found + 1, entries.size()), entriesInUse, true, checkpoint);
+			}
+			if (from == 1) {
+				//the checkpoint entry was overwritten
+				return result(meterId, entries, entriesInUse, false, checkpoint);
+			}
+			int to = from - 1;
+			from = Math.max(1, to - window + 1);
+			List<ProfileGenericEntry> older = read(dlms, phy, from, to);
+			if (!older.isEmpty() && !entries.isEmpty() && Arrays.equals(encode(older.get(older.size() - 1)), encode(entries.get(0)))) {
+				//an entry captured in the meantime moved the entries one position down
+				older.remove(older.size() - 1);
+			}
+			older.addAll(entries);
+			entries = older;
+			window *= 4;
+		}
+	}
+
+	/**
+	 * Saves the checkpoint of a result, the next fetch returns only entries captured after it
+	 * @param result the result of a fetch whose entries were processed
+	 */
+	public void commit(Result result) throws IOException {
+		if (result.checkpoint != null) {
+			store.save(result.checkpoint);
+		}
+	}
+
+	private List<ProfileGenericEntry> read(DlmsClient dlms, PhyLayer phy, int from, int to) throws PhyLayerException, DlmsException, LinkLayerException {
+		return new ArrayList<ProfileGenericEntry>(profile.getBuffer(dlms, phy, from, to).getEntries());
+	}
+
+	/**
+	 * @return the number of entries captured since the checkpoint, one more than expected so a capture
+	 * happening while reading isn't missed. 0 if the time or the capture period are unknown
+	 */
+	private int predictCaptures(DlmsClient dlms, PhyLayer phy, ProfileCheckpoint checkpoint) throws PhyLayerException, DlmsException, LinkLayerException {
+		long elapsed = System.currentTimeMillis() - checkpoint.getTime();
+		if (checkpoint.getTime() == 0 || elapsed < 0) {
+			return 0;
+		}
+		int capturePeriod = profile.getCapturePeriod(dlms, phy);
+		if (capturePeriod <= 0) {
+			return 0;
+		}
+		return (int)Math.min(Integer.MAX_VALUE - 1, elapsed / 1000 / capturePeriod) + 1;
+	}
+
+	private static int lastIndexOf(List<ProfileGenericEntry> entries, byte[] encoded) {
+		for (int i = entries.size() - 1; i >= 0; --i) {
+			if (Arrays.equals(encoded, encode(entries.get(i)))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private Result result(String meterId, List<ProfileGenericEntry> entries, int entriesInUse, boolean continuous, ProfileCheckpoint previous) {
+		if (entries.isEmpty()) {
+			return new Result(new ArrayList<ProfileGenericEntry>(), continuous, previous);
+		}
+		ProfileCheckpoint checkpoint = new ProfileCheckpoint(meterId, obis, entriesInUse, encode(entries.get(entries.size() - 1)),
+				System.currentTimeMillis());
+		return new Result(new ArrayList<ProfileGenericEntry>(entries), continuous, checkpoint);
+	}
+
+	private static byte[] encode(ProfileGenericEntry entry) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for (ProfileGenericItem item : entry.getItems()) {
+			stream.write(item.getData(), 0, item.getData().length);
+		}
+		return stream.toByteArray();
+	}
+}
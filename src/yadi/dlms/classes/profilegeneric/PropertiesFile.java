@@ -0,0 +1,73 @@
+package yadi.dlms.classes.profilegeneric;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Properties files of the stores kept in a directory, replaced atomically when saved
+ */
+final class PropertiesFile {
+
+	private PropertiesFile() {
+	}
+
+	/**
+	 * Encodes a key as a file name: letters, digits and '-' are kept, any other byte of its UTF-8 encoding
+	 * becomes '_' followed by two hex digits, so different keys never share a file
+	 */
+	static String encodeName(String key) {
+		StringBuilder name = new StringBuilder();
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			if ((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '-') {
+				name.append((char)b);
+			} else {
+				name.append('_').append(Character.toUpperCase(Character.forDigit((b >>> 4) & 0x0F, 16)))
+						.append(Character.toUpperCase(Character.forDigit(b & 0x0F, 16)));
+			}
+		}
+		return name.toString();
+	}
+
+	/**
+	 * @return the properties of the file, or null if it doesn't exist
+	 */
+	static Properties load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(file)) {
+			properties.load(is);
+		}
+		return properties;
+	}
+
+	/**
+	 * Writes the properties to a temporary file of the same directory that replaces the file, so after a
+	 * failure either the previous or the new contents are found
+	 */
+	static void store(Path file, Properties properties) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream os = Files.newOutputStream(tmp)) {
+				properties.store(os, null);
+			}
+			try {
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
@@ -4,7 +4,7 @@ public class CosemScalarAndUnit {
 	private final int scalar;
 	private final CosemUnit unit;
 	
-	CosemScalarAndUnit(int scalar, CosemUnit unit) {
+	public CosemScalarAndUnit(int scalar, CosemUnit unit) {
 		this.scalar = scalar;
 		this.unit = unit;
 	}
@@ -28,6 +28,10 @@ public enum CosemUnit {
 		this.value = value;
 	}
 	
+	public int getValue() {
+		return value;
+	}
+	
 	public static CosemUnit fromValue(int value) {
 		for (CosemUnit u : CosemUnit.values()) {
 			if (u.value == value) {
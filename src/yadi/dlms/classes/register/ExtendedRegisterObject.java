@@ -22,26 +22,26 @@ import yadi.dlms.DlmsException;
 import yadi.dlms.Obis;
 import yadi.dlms.classes.CosemSerializerProxy;
 import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.cosem.CosemAddress;
 import yadi.dlms.cosem.CosemParser;
-import yadi.dlms.cosem.LnDescriptor;
 import yadi.dlms.linklayer.LinkLayerException;
 import yadi.dlms.phylayer.PhyLayer;
 import yadi.dlms.phylayer.PhyLayerException;
 
 public class ExtendedRegisterObject {
 	
-	private final LnDescriptor attValue;
-	private final LnDescriptor attScalarUnit;
-	private final LnDescriptor attStatus;
-	private final LnDescriptor attCaptureTime;
-	private final LnDescriptor mtdReset;
+	private final CosemAddress attValue;
+	private final CosemAddress attScalarUnit;
+	private final CosemAddress attStatus;
+	private final CosemAddress attCaptureTime;
+	private final CosemAddress mtdReset;
 	
 	public ExtendedRegisterObject(Obis obis) {
-		attValue = new LnDescriptor(3, obis, 2);
-		attScalarUnit = new LnDescriptor(3, obis, 3);
-		attStatus = new LnDescriptor(3, obis, 4);
-		attCaptureTime = new LnDescriptor(3, obis, 5);
-		mtdReset = new LnDescriptor(3, obis, 1);
+		attValue = new CosemAddress(3, obis, 2);
+		attScalarUnit = new CosemAddress(3, obis, 3);
+		attStatus = new CosemAddress(3, obis, 4);
+		attCaptureTime = new CosemAddress(3, obis, 5);
+		mtdReset = new CosemAddress(3, obis, 1);
 	}
 	
 	public static CosemParser setValue(DlmsClient dlms, PhyLayer phy, String obis) throws DlmsException, PhyLayerException, LinkLayerException {
@@ -53,35 +53,30 @@ public class ExtendedRegisterObject {
 	}
 	
 	public void reset(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.action(phy, mtdReset);
+		dlms.action(phy, mtdReset, new byte[0]);
 	}
 	
 	public CosemScalarAndUnit getUnityScalar(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
-		dlms.get(phy, attScalarUnit);
-		CosemParser parser = new CosemParser(attScalarUnit.getResponseData());
+		CosemParser parser = new CosemParser(dlms.get(phy, attScalarUnit));
 		parser.verifyStructureSize(2);
 		return new CosemScalarAndUnit(parser.int8(), CosemUnit.fromValue(parser.enumeration()));
 	}
 	
 	public CosemParser getValue(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
-		dlms.get(phy, attValue);
-		return new CosemParser(attValue.getResponseData());
+		return new CosemParser(dlms.get(phy, attValue));
 	}
 	
 	public CosemSerializerProxy setValue(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
 		return new CosemSerializerProxy((data) -> {
-			attValue.setRequestData(data);
-			dlms.set(phy, attValue);
+			dlms.set(phy, attValue, data);
 		});
 	}
 	
 	public CosemParser getStatus(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
-		dlms.get(phy, attStatus);
-		return new CosemParser(attStatus.getResponseData());
+		return new CosemParser(dlms.get(phy, attStatus));
 	}
 	
 	public CosemDateTime getCaptureTime(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
-		dlms.get(phy, attCaptureTime);
-		return new CosemParser(attCaptureTime.getResponseData()).datetime();
+		return new CosemParser(dlms.get(phy, attCaptureTime)).datetime();
 	}
 }
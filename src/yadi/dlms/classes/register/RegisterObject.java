@@ -21,26 +21,26 @@ import yadi.dlms.DlmsClient;
 import yadi.dlms.DlmsException;
 import yadi.dlms.Obis;
 import yadi.dlms.classes.CosemSerializerProxy;
+import yadi.dlms.cosem.CosemAddress;
 import yadi.dlms.cosem.CosemParser;
-import yadi.dlms.cosem.LnDescriptor;
 import yadi.dlms.linklayer.LinkLayerException;
 import yadi.dlms.phylayer.PhyLayer;
 import yadi.dlms.phylayer.PhyLayerException;
 
 public class RegisterObject {
 	
-	private final LnDescriptor attValue;
-	private final LnDescriptor attScalarUnit;
-	private final LnDescriptor mtdReset;
+	private final CosemAddress attValue;
+	private final CosemAddress attScalarUnit;
+	private final CosemAddress mtdReset;
 	
 	public static RegisterObject fromObis(String obis) {
 		return new RegisterObject(new Obis(obis));
 	}
 	
 	public RegisterObject(Obis obis) {
-		attValue = new LnDescriptor(3, obis, 2);
-		attScalarUnit = new LnDescriptor(3, obis, 3);
-		mtdReset = new LnDescriptor(3, obis, 1);
+		attValue = new CosemAddress(3, obis, 2);
+		attScalarUnit = new CosemAddress(3, obis, 3);
+		mtdReset = new CosemAddress(3, obis, 1);
 	}
 	
 	public static CosemParser getValue(DlmsClient dlms, PhyLayer phy, String obis) throws DlmsException, PhyLayerException, LinkLayerException {
@@ -52,25 +52,22 @@ public class RegisterObject {
 	}
 	
 	public void reset(DlmsClient dlms, PhyLayer phy) throws PhyLayerException, DlmsException, LinkLayerException {
-		dlms.action(phy, mtdReset);
+		dlms.action(phy, mtdReset, new byte[0]);
 	}
 	
 	public CosemScalarAndUnit getUnityScalar(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
-		dlms.get(phy, attScalarUnit);
-		CosemParser parser = new CosemParser(attScalarUnit.getResponseData());
+		CosemParser parser = new CosemParser(dlms.get(phy, attScalarUnit));
 		parser.verifyStructureSize(2);
 		return new CosemScalarAndUnit(parser.int8(), CosemUnit.fromValue(parser.enumeration()));
 	}
 	
 	public CosemParser getValue(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
-		dlms.get(phy, attValue);
-		return CosemParser.make(attValue.getResponseData());
+		return CosemParser.make(dlms.get(phy, attValue));
 	}
 	
 	public CosemSerializerProxy setValue(DlmsClient dlms, PhyLayer phy) throws DlmsException, PhyLayerException, LinkLayerException {
 		return new CosemSerializerProxy((data) -> {
-			attValue.setRequestData(data);
-			dlms.set(phy, attValue);
+			dlms.set(phy, attValue, data);
 		});
 	}
 }
@@ -1,8 +1,16 @@
 package yadi.dlms.classes.specialday;
 
 import yadi.dlms.classes.clock.CosemDate;
+import yadi.dlms.cosem.CosemSchema;
 
 public class SpecialDayEntry {
+	
+	public static final CosemSchema<SpecialDayEntry> SCHEMA = CosemSchema.<SpecialDayEntry>structure()
+			.uint16(SpecialDayEntry::getIndex)
+			.date(SpecialDayEntry::getDate)
+			.uint8(SpecialDayEntry::getDayId)
+			.build((v) -> new SpecialDayEntry(v.getInt(0), v.get(1), v.getInt(2)));
+	
 	private final int index;
 	private final CosemDate date;
 	private final int dayId;
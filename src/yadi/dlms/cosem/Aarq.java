@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import yadi.dlms.DlmsException;
 import yadi.dlms.DlmsException.DlmsExceptionReason;
 import yadi.dlms.cosem.CosemParameters.AuthenticationType;
+import yadi.dlms.cosem.CosemParameters.CipheringType;
 import yadi.dlms.cosem.CosemParameters.ReferenceType;
 import yadi.dlms.cosem.CosemParameters.SecurityType;
 
@@ -77,7 +78,10 @@ class Aarq {
 			}
 		}
 		data.write(Constants.Ber.CONTEXT_CONSTRUCTED | Constants.AarqApdu.USER_INFORMATION);
-		byte[] initiateRequest = generateInitiateRequest(params);
+		if (usesDedicatedKey(params)) {
+			connection.dedicatedKey = Security.generateDedicatedKey();
+		}
+		byte[] initiateRequest = generateInitiateRequest(params, connection);
 		data.write(initiateRequest.length+2);
 		data.write(Constants.Ber.OCTET_STRING);
 		data.write(initiateRequest.length);
@@ -108,10 +112,21 @@ class Aarq {
 		throw new DlmsException(DlmsExceptionReason.INVALID_SETTING);
 	}
 	
-	private static byte[] generateInitiateRequest(CosemParameters params) throws IOException, DlmsException {
+	static boolean usesDedicatedKey(CosemParameters params) {
+		return params.securityType != SecurityType.NONE && (params.cipheringType == CipheringType.DEDICATED
+				|| params.cipheringType == CipheringType.GENERAL_DEDICATED);
+	}
+	
+	private static byte[] generateInitiateRequest(CosemParameters params, CosemConnection connection) throws IOException, DlmsException {
 		ByteArrayOutputStream stream = new ByteArrayOutputStream();
 		stream.write(Constants.xDlmsApdu.NoCiphering.INITIATE_REQUEST);
-		stream.write(0); //Dedicated key
+		if (connection.dedicatedKey.length != 0) {
+			stream.write(1); //Dedicated key
+			stream.write(connection.dedicatedKey.length);
+			stream.write(connection.dedicatedKey);
+		} else {
+			stream.write(0); //Dedicated key
+		}
 		stream.write(0); //Response-allowed
 		stream.write(0); //Proposed quality of service
 		stream.write(Constants.DLMS_VERSION); //Dlms version
@@ -147,6 +162,13 @@ class Aarq {
 		conformanceBlock |= Constants.ConformanceBlock.BLOCK_TRANSFER_WITH_GET_OR_READ;
 		conformanceBlock |= Constants.ConformanceBlock.BLOCK_TRANSFER_WITH_SET_OR_WRITE;
 		conformanceBlock |= Constants.ConformanceBlock.SELECTIVE_ACCESS;
+		if (params.securityType != SecurityType.NONE && (params.cipheringType == CipheringType.GENERAL_GLOBAL
+				|| params.cipheringType == CipheringType.GENERAL_DEDICATED)) {
+			conformanceBlock |= Constants.ConformanceBlock.GENERAL_PROTECTION;
+		}
+		if (params.generalBlockTransfer) {
+			conformanceBlock |= Constants.ConformanceBlock.GENERAL_BLOCK_TRANSFER;
+		}
 		
 		return ByteBuffer.allocate(4).putInt(conformanceBlock).array();
 	}
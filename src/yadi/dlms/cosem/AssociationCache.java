@@ -0,0 +1,142 @@
+package yadi.dlms.cosem;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import yadi.dlms.cosem.CosemParameters.AuthenticationType;
+
+/**
+ * Keeps the application associations established with each meter, so they can be reused by later
+ * connections without a new AARQ/AARE exchange.
+ * An association is dropped when it expires or when the meter signals that it's no longer valid.
+ */
+public class AssociationCache {
+
+	/**
+	 * Parameters negotiated for an application association
+	 */
+	public static class Association {
+		final byte[] conformanceBlock;
+		final int maxPduSize;
+		final byte[] serverSysTitle;
+		final byte[] dedicatedKey;
+		final AuthenticationType authenticationType;
+		final long timestamp;
+		private volatile boolean valid = true;
+		
+		Association(byte[] conformanceBlock, int maxPduSize, byte[] serverSysTitle, byte[] dedicatedKey, AuthenticationType authenticationType) {
+			this.conformanceBlock = conformanceBlock.clone();
+			this.maxPduSize = maxPduSize;
+			this.serverSysTitle = serverSysTitle.clone();
+			this.dedicatedKey = dedicatedKey.clone();
+			this.authenticationType = authenticationType;
+			this.timestamp = System.currentTimeMillis();
+		}
+		
+		public byte[] getConformanceBlock() {
+			return conformanceBlock.clone();
+		}
+		
+		public int getMaxPduSize() {
+			return maxPduSize;
+		}
+		
+		public byte[] getServerSysTitle() {
+			return serverSysTitle.clone();
+		}
+		
+		/**
+		 * @return the authentication used to establish the association, null for a pre-established association
+		 */
+		public AuthenticationType getAuthenticationType() {
+			return authenticationType;
+		}
+		
+		public boolean isValid() {
+			return valid;
+		}
+		
+		/**
+		 * Marks the association as no longer usable, it's removed from the cache on the next access
+		 */
+		public void invalidate() {
+			valid = false;
+		}
+	}
+	
+	private final Map<String, Association> associations = new ConcurrentHashMap<>();
+	private final long maxAge;
+	
+	/**
+	 * Creates a cache where associations are kept until invalidated
+	 */
+	public AssociationCache() {
+		this(0);
+	}
+	
+	/**
+	 * Creates a cache where associations expire after a given time
+	 * @param maxAge maximum age of an association in milliseconds, 0 to never expire
+	 */
+	public AssociationCache(long maxAge) {
+		if (maxAge < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.maxAge = maxAge;
+	}
+	
+	/**
+	 * Creates an association for a meter that supports pre-established associations, with parameters known in advance
+	 * @param conformanceBlock the 3 bytes of the conformance block supported by the meter
+	 * @param maxPduSize the max pdu size accepted by the meter
+	 * @param serverSysTitle the system title of the meter, required only for ciphered associations
+	 * @return the association to be stored in the cache
+	 */
+	public static Association preEstablished(byte[] conformanceBlock, int maxPduSize, byte[] serverSysTitle) {
+		if (conformanceBlock == null || conformanceBlock.length != 3 || maxPduSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		return new Association(conformanceBlock, maxPduSize, serverSysTitle == null ? new byte[0] : serverSysTitle, new byte[0], null);
+	}
+	
+	/**
+	 * Retrieves the association of a meter
+	 * @param meterId identification of the meter
+	 * @return the association or null if there isn't a valid one
+	 */
+	public Association get(String meterId) {
+		Association association = associations.get(meterId);
+		if (association == null) {
+			return null;
+		}
+		if (!association.isValid() || (maxAge != 0 && System.currentTimeMillis() - association.timestamp > maxAge)) {
+			associations.remove(meterId, association);
+			return null;
+		}
+		return association;
+	}
+	
+	/**
+	 * Stores the association of a meter, replacing the previous one
+	 * @param meterId identification of the meter
+	 * @param association the association established
+	 */
+	public void put(String meterId, Association association) {
+		associations.put(meterId, association);
+	}
+	
+	/**
+	 * Invalidates the association of a meter
+	 * @param meterId identification of the meter
+	 */
+	public void invalidate(String meterId) {
+		Association association = associations.remove(meterId);
+		if (association != null) {
+			association.invalidate();
+		}
+	}
+	
+	public void clear() {
+		associations.clear();
+	}
+}
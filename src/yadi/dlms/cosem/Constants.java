@@ -102,6 +102,12 @@ class Constants {
 		static class Exception {
 			static final int ExceptionResponse = 216;
 		}
+		
+		static class General {
+			static final int GENERAL_GLO_CIPHERING = 219;
+			static final int GENERAL_DED_CIPHERING = 220;
+			static final int GENERAL_BLOCK_TRANSFER = 224;
+		}
 	}
 	
 	static class AarqApdu {
@@ -142,6 +148,8 @@ class Constants {
 	static class ConformanceBlock {
 		//The conformance block has a mistake here, it was fixed day 23/03/2022. reason, the order WAS inverted from MSB to LSB.
 		static final int TAG = 95; //TODO where?
+		static final int GENERAL_PROTECTION = 1 << (23-1);
+		static final int GENERAL_BLOCK_TRANSFER = 1 << (23-2);
 		static final int READ = 1 << (23-3);
 		static final int WRITE = 1 << (23-4);
 		static final int UNCONFIRMED_WRITE = 1 << (23-5);
@@ -180,6 +188,14 @@ class Constants {
 		static final int WITH_LIST = 3;
 	}
 	
+	static class SetRequest {
+		static final int NORMAL = 1;
+		static final int WITH_FIRST_DATABLOCK = 2;
+		static final int WITH_DATABLOCK = 3;
+		static final int WITH_LIST = 4;
+		static final int WITH_LIST_AND_FIRST_DATABLOCK = 5;
+	}
+	
 	static class SetResponse {
 		static final int NORMAL = 1;
 		static final int DATA_BLOCK = 2;
@@ -188,6 +204,43 @@ class Constants {
 		static final int WITH_LIST = 5;
 	}
 	
+	static class ActionRequest {
+		static final int NORMAL = 1;
+		static final int NEXT_PBLOCK = 2;
+		static final int WITH_LIST = 3;
+		static final int WITH_FIRST_PBLOCK = 4;
+		static final int WITH_LIST_AND_FIRST_PBLOCK = 5;
+		static final int WITH_PBLOCK = 6;
+	}
+	
+	static class ActionResponse {
+		static final int NORMAL = 1;
+		static final int WITH_PBLOCK = 2;
+		static final int WITH_LIST = 3;
+		static final int NEXT_PBLOCK = 4;
+	}
+	
+	static class VariableAccess {
+		static final int VARIABLE_NAME = 2;
+		static final int PARAMETERIZED_ACCESS = 4;
+		static final int BLOCK_NUMBER_ACCESS = 5;
+		static final int READ_DATA_BLOCK_ACCESS = 6;
+		static final int WRITE_DATA_BLOCK_ACCESS = 7;
+	}
+	
+	static class ReadResponse {
+		static final int DATA = 0;
+		static final int DATA_ACCESS_ERROR = 1;
+		static final int DATA_BLOCK_RESULT = 2;
+		static final int BLOCK_NUMBER = 3;
+	}
+	
+	static class WriteResponse {
+		static final int SUCCESS = 0;
+		static final int DATA_ACCESS_ERROR = 1;
+		static final int BLOCK_NUMBER = 2;
+	}
+	
 	static class AssociateSourceDiagnostic {
 		static final int NULL = 0;
 		static final int NO_REASON = 1;
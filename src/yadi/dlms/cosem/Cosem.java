@@ -19,11 +19,13 @@ package yadi.dlms.cosem;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
 import java.util.Arrays;
 
 import yadi.dlms.DlmsException;
+import yadi.dlms.DlmsType;
 import yadi.dlms.Obis;
 import yadi.dlms.DlmsException.DlmsExceptionReason;
 import yadi.dlms.cosem.CosemParameters.AuthenticationType;
@@ -35,9 +37,16 @@ public class Cosem {
 		DISCONNECTED, CONNECTED, AUTHENTICATED
 	}
 	
+	private static final int NORMAL_REQUEST_OVERHEAD = 13; //tag, type, invoke id, class id, obis, index, selector
+	private static final int SET_FIRST_DATABLOCK_OVERHEAD = NORMAL_REQUEST_OVERHEAD + 8; //last flag, block number, 3 bytes of length
+	private static final int ACTION_FIRST_PBLOCK_OVERHEAD = NORMAL_REQUEST_OVERHEAD - 1 + 8; //no selector
+	private static final int WRITE_DATABLOCK_OVERHEAD = 11; //tag, access, last flag, block number, data tag, 3 bytes of length
+	private static final CosemAddress ASSOCIATION_REPLY_TO_HLS_AUTHENTICATION = new CosemAddress(CosemClasses.ASSOCIATION_LN.id, new Obis("0.0.40.0.0.255"), 1);
+	
 	private final CosemParameters params;
 	private final CosemConnection connection;
 	private ConnectionState state = ConnectionState.DISCONNECTED;
+	private AssociationCache.Association association;
 
 	/**
 	 * Creates a Cosem object
@@ -64,6 +73,63 @@ public class Cosem {
 	 */
 	public void reset() {
 		state = ConnectionState.DISCONNECTED;
+		association = null;
+	}
+	
+	/**
+	 * Retrieves the parameters negotiated for the current association, so it can be reused later
+	 * @return the association established by the last connection
+	 */
+	public AssociationCache.Association getAssociation() {
+		if (state == ConnectionState.DISCONNECTED) {
+			throw new IllegalStateException();
+		}
+		if (association == null) {
+			association = new AssociationCache.Association(connection.conformanceBlock, connection.maxPduSize,
+					connection.serverSysTitle, connection.dedicatedKey, params.authenticationType);
+		}
+		return association;
+	}
+	
+	/**
+	 * Restores a previously established association, no connection APDUs are necessary afterwards
+	 * @param association the association to be reused
+	 * @return true if the association was restored, false if it's not valid for the current parameters
+	 */
+	public boolean restoreAssociation(AssociationCache.Association association) {
+		if (association == null || !association.isValid()) {
+			return false;
+		}
+		if (association.authenticationType != null && association.authenticationType != params.authenticationType) {
+			return false;
+		}
+		if (Aarq.usesDedicatedKey(params) && association.dedicatedKey.length == 0) {
+			//dedicated keys are only agreed in the AARQ
+			return false;
+		}
+		connection.reset();
+		connection.conformanceBlock = association.conformanceBlock.clone();
+		connection.maxPduSize = association.maxPduSize;
+		connection.serverSysTitle = association.serverSysTitle.clone();
+		connection.dedicatedKey = association.dedicatedKey.clone();
+		this.association = association;
+		state = ConnectionState.AUTHENTICATED;
+		return true;
+	}
+	
+	/**
+	 * @return the max pdu size accepted by the server, as negotiated by the association
+	 */
+	public int getMaxPduSize() {
+		return connection.maxPduSize;
+	}
+	
+	/**
+	 * Checks if there is an association in use
+	 * @return true if the association was established or restored and was not invalidated by the server
+	 */
+	public boolean isAssociated() {
+		return state != ConnectionState.DISCONNECTED;
 	}
 
 	/**
@@ -79,8 +145,8 @@ public class Cosem {
 				connection.reset();
 				return Aarq.request(params, connection);
 			case CONNECTED:
-				LnDescriptor att = new LnDescriptor(CosemClasses.ASSOCIATION_LN.id, new Obis("0.0.40.0.0.255"), 1);
-				att.setRequestData(new CosemSerializer().octetString(Security.processChallanger(params, connection)).serialize());
+				LnDescriptor att = new LnDescriptor(ASSOCIATION_REPLY_TO_HLS_AUTHENTICATION);
+				att.setRequestData(CosemSerializer.acquire().octetString(Security.processChallanger(params, connection)).serializeAndRelease());
 				return requestAction(att);
 			case AUTHENTICATED:
 				throw new IllegalStateException();
@@ -105,7 +171,7 @@ public class Cosem {
 			state = ConnectionState.CONNECTED;
 			return params.authenticationType == AuthenticationType.PUBLIC || params.authenticationType == AuthenticationType.LLS;
 		case CONNECTED:
-			LnDescriptor att = new LnDescriptor(CosemClasses.ASSOCIATION_LN.id, new Obis("0.0.40.0.0.255"), 1);
+			LnDescriptor att = new LnDescriptor(ASSOCIATION_REPLY_TO_HLS_AUTHENTICATION);
 			parseActionResponse(att, data);
 			byte[] receivedData = att.getResponseData();
 			if (receivedData == null || receivedData.length < 3 || receivedData[0] != Constants.DataType.OCTET_STRING) {
@@ -133,24 +199,21 @@ public class Cosem {
 	 * @throws DlmsException
 	 */
 	public byte[] requestGet(LnDescriptor att) throws DlmsException {
-		try {
-			ByteArrayOutputStream stream = new ByteArrayOutputStream();
-			stream.write(Constants.xDlmsApdu.NoCiphering.GET_REQUEST);
-			stream.write(connection.datablock.blockNum == 0 ? 1 : 2);
-			stream.write(params.priority | params.serviceClass | Constants.INVOKE_ID);
-			if (connection.datablock.blockNum != 0) {
-				stream.write(ByteBuffer.allocate(4).putInt(connection.datablock.blockNum).array());
-			} else {
-				stream.write(att.getClassId());
-				stream.write(att.getObis());
-				stream.write(att.getIndex());
-				stream.write(att.getRequestData().length == 0 ? 0 : 1);
-				stream.write(att.getRequestData());
-			}
-			return packFrame(Constants.xDlmsApdu.GlobalCiphering.GET_REQUEST, stream.toByteArray());
-		} catch (IOException e) {
-			throw new DlmsException(DlmsExceptionReason.INTERNAL_ERROR);
-		}
+		if (connection.gbt.isActive()) {
+			return connection.gbt.nextRequest(params.gbtWindowSize);
+		}
+		CosemSerializer stream = CosemSerializer.acquire();
+		stream.rawByte(Constants.xDlmsApdu.NoCiphering.GET_REQUEST);
+		stream.rawByte(connection.datablock.blockNum == 0 ? 1 : 2);
+		stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+		if (connection.datablock.blockNum != 0) {
+			stream.rawInt(connection.datablock.blockNum);
+		} else {
+			att.getAddress().writeTo(stream);
+			stream.rawByte(att.getRequestData().length == 0 ? 0 : 1);
+			stream.rawBuffer(att.getRequestData());
+		}
+		return transmit(Constants.xDlmsApdu.GlobalCiphering.GET_REQUEST, stream.serializeAndRelease());
 	}
 	
 	/**
@@ -160,60 +223,35 @@ public class Cosem {
 	 * @throws DlmsException
 	 */
 	public byte[] requestSet(LnDescriptor att) throws DlmsException {
-		try {
-			ByteArrayOutputStream stream = new ByteArrayOutputStream();
-			stream.write(Constants.xDlmsApdu.NoCiphering.SET_REQUEST);
-			byte[] data = att.getRequestData();
-			if (data.length > (connection.maxPduSize - 44)) {
-				if (connection.datablock.nextBlockNum == 1) {
-					connection.datablock.setData(data, connection.maxPduSize - 44);
-					//Set-Request-With-First-Datablock
-					stream.write(2);
-					stream.write(params.priority | params.serviceClass | Constants.INVOKE_ID);
-					stream.write(att.getClassId());
-					stream.write(att.getObis());
-					stream.write(att.getIndex());
-					stream.write(0);
-					stream.write(0);
-					stream.write(connection.datablock.getNextBlockNum());
-					byte[] blockdata = connection.datablock.getNextBlock();
-					if (blockdata.length > 128) {
-						stream.write(0x81);
-					}
-					stream.write(blockdata.length);
-					stream.write(blockdata);
-				} else {
-					//Set-Request-With-Datablock
-					stream.write(3);
-					stream.write(params.priority | params.serviceClass | Constants.INVOKE_ID);
-					if (connection.datablock.nextIsNull()) {
-						stream.write(0xFF);
-					} else {
-						stream.write(0);
-					}
-					stream.write(connection.datablock.getNextBlockNum());
-					byte[] blockdata = connection.datablock.getNextBlock();
-					if (blockdata.length > 128) {
-						stream.write(0x81);
-					}
-					stream.write(blockdata.length);
-					stream.write(blockdata);
-				}
-			} else {
-				//Set-Request-Normal
-				stream.write(1);
-				stream.write(params.priority | params.serviceClass | Constants.INVOKE_ID);
-				stream.write(att.getClassId());
-				stream.write(att.getObis());
-				stream.write(att.getIndex());
-				stream.write(0);
-				stream.write(att.getRequestData());
-			}
-			
-			return packFrame(Constants.xDlmsApdu.GlobalCiphering.SET_REQUEST, stream.toByteArray());
-		} catch (IOException e) {
-			throw new DlmsException(DlmsExceptionReason.INTERNAL_ERROR);
+		if (connection.gbt.isActive()) {
+			return connection.gbt.nextRequest(params.gbtWindowSize);
+		}
+		CosemSerializer stream = CosemSerializer.acquire();
+		stream.rawByte(Constants.xDlmsApdu.NoCiphering.SET_REQUEST);
+		byte[] data = att.getRequestData();
+		if (connection.datablock.isSending()) {
+			//Set-Request-With-Datablock
+			stream.rawByte(Constants.SetRequest.WITH_DATABLOCK);
+			stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+			writeNextDataBlock(stream);
+		} else if (useDataBlocks(Constants.ConformanceBlock.BLOCK_TRANSFER_WITH_SET_OR_WRITE, data.length + NORMAL_REQUEST_OVERHEAD)) {
+			connection.datablock.setData(data, getBlockSize(SET_FIRST_DATABLOCK_OVERHEAD));
+			//Set-Request-With-First-Datablock
+			stream.rawByte(Constants.SetRequest.WITH_FIRST_DATABLOCK);
+			stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+			att.getAddress().writeTo(stream);
+			stream.rawByte(0);
+			writeNextDataBlock(stream);
+		} else {
+			//Set-Request-Normal
+			stream.rawByte(Constants.SetRequest.NORMAL);
+			stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+			att.getAddress().writeTo(stream);
+			stream.rawByte(0);
+			stream.rawBuffer(data);
 		}
+		
+		return transmit(Constants.xDlmsApdu.GlobalCiphering.SET_REQUEST, stream.serializeAndRelease());
 	}
 	
 	/**
@@ -223,20 +261,38 @@ public class Cosem {
 	 * @throws DlmsException
 	 */
 	public byte[] requestAction(LnDescriptor att) throws DlmsException {
-		try {
-			ByteArrayOutputStream stream = new ByteArrayOutputStream();
-			stream.write(Constants.xDlmsApdu.NoCiphering.ACTION_REQUEST);
-			stream.write(1);
-			stream.write(params.priority | params.serviceClass | Constants.INVOKE_ID);
-			stream.write(att.getClassId());
-			stream.write(att.getObis());
-			stream.write(att.getIndex());
-			stream.write(att.getRequestData().length == 0 ? 0 : 1);
-			stream.write(att.getRequestData());
-			return packFrame(Constants.xDlmsApdu.GlobalCiphering.ACTION_REQUEST, stream.toByteArray());
-		} catch (IOException e) {
-			throw new DlmsException(DlmsExceptionReason.INTERNAL_ERROR);
-		}
+		if (connection.gbt.isActive()) {
+			return connection.gbt.nextRequest(params.gbtWindowSize);
+		}
+		CosemSerializer stream = CosemSerializer.acquire();
+		stream.rawByte(Constants.xDlmsApdu.NoCiphering.ACTION_REQUEST);
+		byte[] data = att.getRequestData();
+		if (connection.datablock.isSending()) {
+			//Action-Request-With-Pblock
+			stream.rawByte(Constants.ActionRequest.WITH_PBLOCK);
+			stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+			writeNextDataBlock(stream);
+		} else if (connection.datablock.blockNum != 0) {
+			//Action-Request-Next-Pblock
+			stream.rawByte(Constants.ActionRequest.NEXT_PBLOCK);
+			stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+			stream.rawInt(connection.datablock.blockNum);
+		} else if (useDataBlocks(Constants.ConformanceBlock.BLOCK_TRANSFER_WITH_ACTION, data.length + NORMAL_REQUEST_OVERHEAD)) {
+			connection.datablock.setData(data, getBlockSize(ACTION_FIRST_PBLOCK_OVERHEAD));
+			//Action-Request-With-First-Pblock
+			stream.rawByte(Constants.ActionRequest.WITH_FIRST_PBLOCK);
+			stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+			att.getAddress().writeTo(stream);
+			writeNextDataBlock(stream);
+		} else {
+			//Action-Request-Normal
+			stream.rawByte(Constants.ActionRequest.NORMAL);
+			stream.rawByte(params.priority | params.serviceClass | Constants.INVOKE_ID);
+			att.getAddress().writeTo(stream);
+			stream.rawByte(data.length == 0 ? 0 : 1);
+			stream.rawBuffer(data);
+		}
+		return transmit(Constants.xDlmsApdu.GlobalCiphering.ACTION_REQUEST, stream.serializeAndRelease());
 	}
 	
 	/**
@@ -247,6 +303,10 @@ public class Cosem {
 	 */
 	public boolean parseGetResponse(LnDescriptor att, byte[] data) throws DlmsException {
 		try {
+			data = receive(data);
+			if (data == null) {
+				return false;
+			}
 			data = unpackFrame(Constants.xDlmsApdu.NoCiphering.GET_RESPONSE,
 					           Constants.xDlmsApdu.GlobalCiphering.GET_RESPONSE, data);
 	
@@ -290,6 +350,10 @@ public class Cosem {
 	 * @throws DlmsException
 	 */
 	public boolean parseSetResponse(LnDescriptor att, byte[] data) throws DlmsException {
+		data = receive(data);
+		if (data == null) {
+			return false;
+		}
 		data = unpackFrame(Constants.xDlmsApdu.NoCiphering.SET_RESPONSE,
 		                   Constants.xDlmsApdu.GlobalCiphering.SET_RESPONSE, data);
 
@@ -298,27 +362,28 @@ public class Cosem {
 		}
 		
 		if (data[0] == Constants.SetResponse.NORMAL) {
+			//also ends a transfer in blocks rejected by the server
+			connection.datablock.reset();
 			verifyDataAccessResult(data[2], data.length <= 3 ? 1 : data[3]);
 			return true;
 		} else if (data[0] == Constants.SetResponse.DATA_BLOCK) {
-			if (data.length < 6) {
+			if (data.length < 6 || !connection.datablock.isSending()) {
 				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_SET_RESPONSE);
 			}
-			connection.datablock.ackBlock(ByteBuffer.allocate(4).put(data,2,4).getInt(0));
-			if (connection.datablock.thisIsLast()) {
-				connection.datablock.reset();
-				return true;
-			}
+			ackDataBlock(ByteBuffer.wrap(data, 2, 4).getInt(), DlmsExceptionReason.RECEIVED_INVALID_SET_RESPONSE);
 			return false;
 		} else if (data[0] == Constants.SetResponse.LAST_DATA_BLOCK) {
 			if (data.length < 7) {
 				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_SET_RESPONSE);
 			}
-			if (ByteBuffer.allocate(4).put(data,3,4).getInt(0) != connection.datablock.nextBlockNum) {
+			int blockNum = ByteBuffer.wrap(data, 3, 4).getInt();
+			boolean lastBlockAcked = connection.datablock.isSending() && connection.datablock.isLast()
+					&& blockNum == connection.datablock.nextBlockNum;
+			connection.datablock.reset();
+			verifyDataAccessResult(data[2], data[2]);
+			if (!lastBlockAcked) {
 				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_SET_RESPONSE);
 			}
-			connection.datablock.ackBlock(ByteBuffer.allocate(4).put(data,3,4).getInt(0));
-			verifyDataAccessResult(data[2], data[3]);
 			return true;
 		}
 		throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_SET_RESPONSE);
@@ -331,15 +396,166 @@ public class Cosem {
 	 * @throws DlmsException
 	 */
 	public boolean parseActionResponse(LnDescriptor att, byte[] data) throws DlmsException {
+		data = receive(data);
+		if (data == null) {
+			return false;
+		}
 		data = unpackFrame(Constants.xDlmsApdu.NoCiphering.ACTION_RESPONSE,
                            Constants.xDlmsApdu.GlobalCiphering.ACTION_RESPONSE, data);
 		
-		verifyActionAccessResult(data[2]);
-		if (data.length > 6) {
-			att.setResponseData(Arrays.copyOfRange(data, 5, data.length));
+		if (data.length < 3) {
+			throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_ACTION_RESPONSE);
 		}
 		
-		return true;
+		if (data[0] == Constants.ActionResponse.NEXT_PBLOCK) {
+			if (data.length < 6 || !connection.datablock.isSending()) {
+				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_ACTION_RESPONSE);
+			}
+			ackDataBlock(ByteBuffer.wrap(data, 2, 4).getInt(), DlmsExceptionReason.RECEIVED_INVALID_ACTION_RESPONSE);
+			return false;
+		} else if (data[0] == Constants.ActionResponse.WITH_PBLOCK) {
+			if (data.length < 8) {
+				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_ACTION_RESPONSE);
+			}
+			//the last block of the request is implicitly acknowledged by the first block of the response
+			connection.datablock.setData(new byte[0], 0);
+			connection.datablock.lastBlock = data[2] != 0;
+			connection.datablock.blockNum = ByteBuffer.wrap(data, 3, 4).getInt();
+			byte[] rawData = getPayload(data, 7);
+			connection.datablock.data.write(rawData, 0, rawData.length);
+			if (!connection.datablock.lastBlock) {
+				return false;
+			}
+			byte[] response = connection.datablock.data.toByteArray();
+			connection.datablock.reset();
+			//Action-Response-With-Optional-Data: result, optional get-data-result
+			verifyActionAccessResult(response.length > 0 ? response[0] : 0);
+			if (response.length > 3) {
+				att.setResponseData(Arrays.copyOfRange(response, 3, response.length));
+			}
+			return true;
+		} else if (data[0] == Constants.ActionResponse.NORMAL) {
+			connection.datablock.reset();
+			verifyActionAccessResult(data[2]);
+			if (data.length > 6) {
+				att.setResponseData(Arrays.copyOfRange(data, 5, data.length));
+			}
+			return true;
+		}
+		throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_ACTION_RESPONSE);
+	}
+	
+	/**
+	 * Checks if the server is streaming a window of general blocks, in which case the next APDU
+	 * must be read without sending a new request
+	 * @return true if more blocks are expected before a new request
+	 */
+	public boolean isReceivingStream() {
+		return connection.gbt.isStreaming();
+	}
+	
+	/**
+	 * Retrieves the next general block of the window being transmitted, it must be sent right after
+	 * the APDU generated by the last request
+	 * @return the next block to be sent or null if the window is complete
+	 */
+	public byte[] nextStreamedBlock() {
+		return connection.gbt.nextQueued();
+	}
+
+	/**
+	 * Generates the request to be sent when a general block didn't arrive in time: the blocks received in
+	 * sequence are acknowledged so the server retransmits the remaining ones
+	 * @return the APDU to be sent, followed by nextStreamedBlock, or null if no general block transfer is in progress
+	 */
+	public byte[] recoverBlockTransfer() {
+		return connection.gbt.recoverRequest(params.gbtWindowSize);
+	}
+
+	/**
+	 * Limits the window of the general block transfer, whatever the window set in the parameters
+	 * @param windowSize the largest window the link layer can carry, between 1 and 63
+	 */
+	public void limitGeneralBlockTransferWindow(int windowSize) {
+		if (windowSize < 1 || windowSize > 63) {
+			throw new IllegalArgumentException("Window size must be between 1 and 63");
+		}
+		connection.gbt.setMaxWindowSize(windowSize);
+	}
+	
+	/**
+	 * Retrieves the data received so far by a GET response transferred in data blocks, and releases it.
+	 * The data received after the last call is set as response data once the last block is parsed
+	 * @return the data received since the last call, empty if none
+	 */
+	public byte[] takeReceivedData() {
+		byte[] data = connection.datablock.data.toByteArray();
+		connection.datablock.data.reset();
+		return data;
+	}
+
+	/**
+	 * Discards the state of a block transfer left unfinished, the next request starts a new transfer
+	 */
+	public void abortTransfer() {
+		connection.datablock.reset();
+		connection.gbt.reset();
+	}
+
+	private void invalidateAssociation() {
+		if (association != null) {
+			association.invalidate();
+			association = null;
+		}
+		state = ConnectionState.DISCONNECTED;
+	}
+	
+	private boolean useGeneralBlockTransfer() {
+		return params.generalBlockTransfer && connection.isSupported(Constants.ConformanceBlock.GENERAL_BLOCK_TRANSFER);
+	}
+	
+	private byte[] transmit(int cmdGlobalCipher, byte[] payload) throws DlmsException {
+		byte[] apdu = packFrame(cmdGlobalCipher, payload);
+		if (useGeneralBlockTransfer() && apdu.length > connection.maxPduSize) {
+			return connection.gbt.send(apdu, connection.maxPduSize - GeneralBlockTransfer.HEADER_SIZE, params.gbtWindowSize);
+		}
+		return apdu;
+	}
+	
+	private byte[] receive(byte[] data) throws DlmsException {
+		if (data.length > 0 && (data[0] & 0xFF) == Constants.xDlmsApdu.General.GENERAL_BLOCK_TRANSFER) {
+			return connection.gbt.receive(data);
+		}
+		return data;
+	}
+	
+	private boolean useDataBlocks(int conformanceBit, int apduSize) {
+		return !useGeneralBlockTransfer() && connection.isSupported(conformanceBit)
+				&& (apduSize + Security.cipheringOverhead(params)) > connection.maxPduSize;
+	}
+	
+	private int getBlockSize(int headerOverhead) throws DlmsException {
+		int size = connection.maxPduSize - headerOverhead - Security.cipheringOverhead(params);
+		if (size <= 0) {
+			throw new DlmsException(DlmsExceptionReason.INTERNAL_ERROR);
+		}
+		return size;
+	}
+	
+	private void writeNextDataBlock(CosemSerializer stream) {
+		byte[] block = connection.datablock.getNextBlock();
+		stream.rawByte(connection.datablock.isLast() ? 0xFF : 0);
+		stream.rawInt(connection.datablock.nextBlockNum);
+		stream.serializeSize(block.length);
+		stream.rawBuffer(block);
+	}
+	
+	private void ackDataBlock(int blockNum, DlmsExceptionReason reason) throws DlmsException {
+		if (blockNum != connection.datablock.nextBlockNum || connection.datablock.isLast()) {
+			connection.datablock.reset();
+			throw new DlmsException(reason);
+		}
+		connection.datablock.ackBlock(blockNum);
 	}
 	
 	private void verifyDataAccessResult(byte result, byte error) throws DlmsException {
@@ -374,9 +590,36 @@ public class Cosem {
 				System.out.println("Before Encryption");
 				printBytes(payload);
 				
-				byte[] data = Security.authenticatedEncryption(params, payload);
+				int cmd = cmdGlobalCipher;
+				byte[] key = params.ek;
+				switch (getCipheringType()) {
+				case DEDICATED:
+					if (getDedicatedCommand(cmdGlobalCipher) != 0) {
+						cmd = getDedicatedCommand(cmdGlobalCipher);
+						key = connection.dedicatedKey;
+					}
+					break;
+				case GENERAL_GLOBAL:
+					cmd = Constants.xDlmsApdu.General.GENERAL_GLO_CIPHERING;
+					break;
+				case GENERAL_DEDICATED:
+					cmd = Constants.xDlmsApdu.General.GENERAL_DED_CIPHERING;
+					key = connection.dedicatedKey;
+					break;
+				default:
+					break;
+				}
+				if (key.length == 0) {
+					throw new DlmsException(DlmsExceptionReason.INVALID_SETTING);
+				}
+				
+				byte[] data = Security.authenticatedEncryption(params, key, payload);
 				stream.reset();
-				stream.write(cmdGlobalCipher);
+				stream.write(cmd);
+				if (cmd == Constants.xDlmsApdu.General.GENERAL_GLO_CIPHERING || cmd == Constants.xDlmsApdu.General.GENERAL_DED_CIPHERING) {
+					stream.write(params.systemTitle.length);
+					stream.write(params.systemTitle);
+				}
 				stream.write(getSizeBytes(data.length));
 				stream.write(data);
 				return stream.toByteArray();
@@ -387,6 +630,33 @@ public class Cosem {
 		}
 	}
 	
+	/**
+	 * Retrieves the ciphering in use, general ciphering falls back to the global/dedicated APDUs
+	 * if general protection was not granted by the server
+	 */
+	private CosemParameters.CipheringType getCipheringType() {
+		switch (params.cipheringType) {
+		case GENERAL_GLOBAL:
+			return connection.isSupported(Constants.ConformanceBlock.GENERAL_PROTECTION) ? params.cipheringType : CosemParameters.CipheringType.GLOBAL;
+		case GENERAL_DEDICATED:
+			return connection.isSupported(Constants.ConformanceBlock.GENERAL_PROTECTION) ? params.cipheringType : CosemParameters.CipheringType.DEDICATED;
+		default:
+			return params.cipheringType;
+		}
+	}
+	
+	/**
+	 * Maps a global ciphering command to its dedicated ciphering command
+	 * @return the dedicated command or 0 if the service has no dedicated ciphering APDU (short name services)
+	 */
+	private static int getDedicatedCommand(int cmdGlobalCipher) {
+		if (cmdGlobalCipher >= Constants.xDlmsApdu.GlobalCiphering.GET_REQUEST
+				&& cmdGlobalCipher <= Constants.xDlmsApdu.GlobalCiphering.ACTION_RESPONSE) {
+			return cmdGlobalCipher - Constants.xDlmsApdu.GlobalCiphering.GET_REQUEST + Constants.xDlmsApdu.DedicatedCiphering.GET_REQUEST;
+		}
+		return 0;
+	}
+	
 	public void printBytes(byte[] data) {
 		StringBuilder sb = new StringBuilder();
 		for (byte b : data) {
@@ -402,6 +672,11 @@ public class Cosem {
 			int errorType = data[1] & 0xFF;
 			int errorCode = data[2] & 0xFF;
 			
+			if (errorType == 0 || (errorType == 1 && (errorCode == 5 || errorCode == 6))) {
+				//state errors and ciphering failures mean the association is no longer valid on the server side
+				invalidateAssociation();
+			}
+			
 			if (errorType == 0) {
 				switch (errorCode) {
 				case 1: throw new DlmsException(DlmsExceptionReason.STATE_ERROR_SERVICE_NOT_ALLOWED);
@@ -424,11 +699,29 @@ public class Cosem {
 			throw new DlmsException(DlmsExceptionReason.SERVICE_ERROR_UNKNOWN);
 		}
 		if (params.securityType != SecurityType.NONE) {
-			if ( (data[0] & 0xff) != cmdGlobalCipher) {
+			int cmd = data[0] & 0xff;
+			byte[] key = params.ek;
+			if (cmd == Constants.xDlmsApdu.General.GENERAL_GLO_CIPHERING || cmd == Constants.xDlmsApdu.General.GENERAL_DED_CIPHERING) {
+				int sysTitleLen = data[1] & 0xff;
+				if (sysTitleLen != 0) {
+					connection.serverSysTitle = Arrays.copyOfRange(data, 2, 2 + sysTitleLen);
+				}
+				data = getPayload(data, 2 + sysTitleLen);
+				if (cmd == Constants.xDlmsApdu.General.GENERAL_DED_CIPHERING) {
+					key = connection.dedicatedKey;
+				}
+			} else if (cmd == cmdGlobalCipher) {
+				data = getPayload(data, 1);
+			} else if (cmd == getDedicatedCommand(cmdGlobalCipher)) {
+				data = getPayload(data, 1);
+				key = connection.dedicatedKey;
+			} else {
 				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_COMMAND_ID);
 			}
-			data = getPayload(data, 1);
-			data = Security.reverseAuthenticatedEncryption(params, connection, data);
+			if (key.length == 0) {
+				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_COMMAND_ID);
+			}
+			data = Security.reverseAuthenticatedEncryption(params, connection, key, data);
 		}
 		if ( (data[0] & 0xFF) != cmdNoCipher) {
 			throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_COMMAND_ID);
@@ -450,98 +743,221 @@ public class Cosem {
 	}
 	
 	private static byte[] getPayload(byte[] data, int offset) throws DlmsException {
-		int nBytes = (data[offset] & 0xff) - 0x80;
-		int size = data[offset] & 0xff;
-		int skip = 0;
-		if ( nBytes > 0) {
-			size = 0;
-			skip = 1;
-		}
-		
-		if (nBytes > (data.length - offset)) {
+		int lengthSize = DlmsType.lengthSize(data[offset]);
+		if (lengthSize > data.length - offset) {
 			throw new IllegalArgumentException();
 		}
-		
-		for (int i = 0; i < nBytes; ++i) {
-			size <<= 8;
-			size |= (data[offset + i + 1] & 0xff);
-		}
-		
-		if (nBytes < 0) {
-			nBytes = 1;
-		}
-		
-		if (size != data.length-nBytes-offset-skip) {
+		if (DlmsType.readLength(data, offset) != data.length - offset - lengthSize) {
 			throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_COMMAND_ID);
 		}
-		
-		return Arrays.copyOfRange(data, offset+nBytes+skip, data.length);
+		return Arrays.copyOfRange(data, offset + lengthSize, data.length);
 	}
 
-	public byte[] readRequest(SnDescriptor desc) throws DlmsException {
-		ByteArrayOutputStream stream = new ByteArrayOutputStream();
-		stream.write(Constants.xDlmsApdu.NoCiphering.READ_REQUEST);
-		stream.write(0x01);
-		stream.write(0x02);
-		stream.write((desc.getShortName() >>> 8) & 0xFF);
-		stream.write(desc.getShortName() & 0xFF);
-		return packFrame(Constants.xDlmsApdu.GlobalCiphering.READ_REQUEST, stream.toByteArray());
+	/**
+	 * Generates the APDU for a READ request, all the variables are requested in a single APDU.
+	 * A non empty request data of a descriptor is sent as parameterized access (selector + parameters)
+	 * @param descs SnDescriptors of the variables to be read
+	 * @return byte array representation of the APDU
+	 * @throws DlmsException
+	 */
+	public byte[] readRequest(SnDescriptor... descs) throws DlmsException {
+		if (connection.gbt.isActive()) {
+			return connection.gbt.nextRequest(params.gbtWindowSize);
+		}
+		CosemSerializer stream = CosemSerializer.acquire();
+		stream.rawByte(Constants.xDlmsApdu.NoCiphering.READ_REQUEST);
+		if (connection.datablock.blockNum != 0) {
+			stream.rawByte(1);
+			stream.rawByte(Constants.VariableAccess.BLOCK_NUMBER_ACCESS);
+			stream.rawShort(connection.datablock.blockNum);
+		} else {
+			stream.serializeSize(descs.length);
+			for (SnDescriptor desc : descs) {
+				byte[] access = desc.getRequestData();
+				stream.rawByte(access.length == 0 ? Constants.VariableAccess.VARIABLE_NAME : Constants.VariableAccess.PARAMETERIZED_ACCESS);
+				stream.rawShort(desc.getShortName());
+				stream.rawBuffer(access);
+			}
+		}
+		return transmit(Constants.xDlmsApdu.GlobalCiphering.READ_REQUEST, stream.serializeAndRelease());
+	}
+
+	/**
+	 * Parses the APDU of a READ response
+	 * @param att SnDescriptor describing the variable read
+	 * @return true if the parse if finished, false if more apdu's are necessary (data block transfer)
+	 * @throws DlmsException
+	 */
+	public boolean parseReadResponse(SnDescriptor att, byte[] data) throws DlmsException {
+		return parseReadResponse(new SnDescriptor[] {att}, data);
 	}
 
-	public void parseReadResponse(SnDescriptor att, byte[] data) throws DlmsException {
+	/**
+	 * Parses the APDU of a READ response, the data of each variable is stored in its descriptor.
+	 * If any variable could not be read, the remaining ones are still parsed and the first failure is thrown
+	 * @param descs SnDescriptors of the variables read, in the same order of the request
+	 * @return true if the parse if finished, false if more apdu's are necessary (data block transfer)
+	 * @throws DlmsException
+	 */
+	public boolean parseReadResponse(SnDescriptor[] descs, byte[] data) throws DlmsException {
+		data = receive(data);
+		if (data == null) {
+			return false;
+		}
 		data = unpackFrame(Constants.xDlmsApdu.NoCiphering.READ_RESPONSE,
                 Constants.xDlmsApdu.GlobalCiphering.READ_RESPONSE, data);
 
-		if (data.length < 2) {
-			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
-		}
-		
-		if (data[0] != 1) {
-			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
-		}
-		
-		if (data[1] == 0x00) {
-			att.setResponseData(Arrays.copyOfRange(data, 1, data.length));
-		}
-		
-		if (data.length < 3) {
-			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			int count = DlmsType.readLength(buffer);
+			if (count == 1 && buffer.get(buffer.position()) == Constants.ReadResponse.DATA_BLOCK_RESULT) {
+				buffer.get();
+				boolean lastBlock = buffer.get() != 0;
+				int blockNum = buffer.getShort() & 0xFFFF;
+				if (blockNum != connection.datablock.blockNum + 1) {
+					connection.datablock.reset();
+					throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_READ_RESPONSE);
+				}
+				int size = DlmsType.readLength(buffer);
+				connection.datablock.blockNum = blockNum;
+				connection.datablock.data.write(data, buffer.position(), size);
+				if (!lastBlock) {
+					return false;
+				}
+				//the raw data of all blocks is the complete list of results
+				buffer = ByteBuffer.wrap(connection.datablock.data.toByteArray());
+				connection.datablock.reset();
+				count = DlmsType.readLength(buffer);
+			}
+			
+			if (count != descs.length) {
+				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_READ_RESPONSE);
+			}
+			byte error = 0;
+			for (SnDescriptor desc : descs) {
+				int choice = buffer.get();
+				if (choice == Constants.ReadResponse.DATA) {
+					int start = buffer.position();
+					DlmsType.skip(buffer);
+					desc.setResponseData(Arrays.copyOfRange(buffer.array(), start, buffer.position()));
+				} else if (choice == Constants.ReadResponse.DATA_ACCESS_ERROR) {
+					desc.setResponseData(null);
+					byte result = buffer.get();
+					error = error == 0 ? result : error;
+				} else {
+					throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_READ_RESPONSE);
+				}
+			}
+			verifyDataAccessResult(error, error);
+			return true;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			connection.datablock.reset();
+			throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_READ_RESPONSE);
 		}
-		
-		verifyDataAccessResult(data[2], data[3]);
 	}
 
-	public byte[] writeRequest(SnDescriptor desc) throws DlmsException {
-		ByteArrayOutputStream stream = new ByteArrayOutputStream();
-		stream.write(Constants.xDlmsApdu.NoCiphering.WRITE_REQUEST);
-		stream.write(0x01);
-		stream.write(0x02);
-		stream.write((desc.getShortName() >>> 8) & 0xFF);
-		stream.write(desc.getShortName() & 0xFF);
-		return packFrame(Constants.xDlmsApdu.GlobalCiphering.WRITE_REQUEST, stream.toByteArray());
+	/**
+	 * Generates the APDU for a WRITE request, the request data of each descriptor is the value to be written.
+	 * When the request doesn't fit the negotiated PDU it's transmitted in blocks
+	 * @param descs SnDescriptors of the variables to be written
+	 * @return byte array representation of the APDU
+	 * @throws DlmsException
+	 */
+	public byte[] writeRequest(SnDescriptor... descs) throws DlmsException {
+		if (connection.gbt.isActive()) {
+			return connection.gbt.nextRequest(params.gbtWindowSize);
+		}
+		CosemSerializer stream = CosemSerializer.acquire();
+		if (!connection.datablock.isSending()) {
+			stream.serializeSize(descs.length);
+			for (SnDescriptor desc : descs) {
+				stream.rawByte(Constants.VariableAccess.VARIABLE_NAME);
+				stream.rawShort(desc.getShortName());
+			}
+			stream.serializeSize(descs.length);
+			for (SnDescriptor desc : descs) {
+				stream.rawBuffer(desc.getRequestData());
+			}
+			byte[] data = stream.serialize();
+			stream.reset();
+			stream.rawByte(Constants.xDlmsApdu.NoCiphering.WRITE_REQUEST);
+			if (!useDataBlocks(Constants.ConformanceBlock.BLOCK_TRANSFER_WITH_SET_OR_WRITE, data.length + 1)) {
+				stream.rawBuffer(data);
+				return transmit(Constants.xDlmsApdu.GlobalCiphering.WRITE_REQUEST, stream.serializeAndRelease());
+			}
+			connection.datablock.setData(data, getBlockSize(WRITE_DATABLOCK_OVERHEAD));
+		} else {
+			stream.rawByte(Constants.xDlmsApdu.NoCiphering.WRITE_REQUEST);
+		}
+		byte[] block = connection.datablock.getNextBlock();
+		stream.rawByte(1);
+		stream.rawByte(Constants.VariableAccess.WRITE_DATA_BLOCK_ACCESS);
+		stream.rawByte(connection.datablock.isLast() ? 0xFF : 0);
+		stream.rawShort(connection.datablock.nextBlockNum);
+		stream.rawByte(1);
+		stream.rawByte(DlmsType.OCTET_STRING.tag);
+		stream.serializeSize(block.length);
+		stream.rawBuffer(block);
+		return transmit(Constants.xDlmsApdu.GlobalCiphering.WRITE_REQUEST, stream.serializeAndRelease());
+	}
+
+	/**
+	 * Parses the APDU of a WRITE response
+	 * @param att SnDescriptor describing the variable written
+	 * @return true if the parse if finished, false if more apdu's are necessary (data block transfer)
+	 * @throws DlmsException
+	 */
+	public boolean parseWriteResponse(SnDescriptor att, byte[] data) throws DlmsException {
+		return parseWriteResponse(new SnDescriptor[] {att}, data);
 	}
 
-	public void parseWriteResponse(SnDescriptor att, byte[] data) throws DlmsException {
+	/**
+	 * Parses the APDU of a WRITE response.
+	 * If any variable could not be written the first failure is thrown
+	 * @param descs SnDescriptors of the variables written, in the same order of the request
+	 * @return true if the parse if finished, false if more apdu's are necessary (data block transfer)
+	 * @throws DlmsException
+	 */
+	public boolean parseWriteResponse(SnDescriptor[] descs, byte[] data) throws DlmsException {
+		data = receive(data);
+		if (data == null) {
+			return false;
+		}
 		data = unpackFrame(Constants.xDlmsApdu.NoCiphering.WRITE_RESPONSE,
                 Constants.xDlmsApdu.GlobalCiphering.WRITE_RESPONSE, data);
 
-		if (data.length < 2) {
-			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
-		}
-		
-		if (data[0] != 1) {
-			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
-		}
-		
-		if (data[1] == 0x00) {
-			att.setResponseData(Arrays.copyOfRange(data, 1, data.length));
-		}
-		
-		if (data.length < 3) {
-			throw new DlmsException(DlmsExceptionReason.INVALID_DATA);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			int count = DlmsType.readLength(buffer);
+			if (count == 1 && buffer.get(buffer.position()) == Constants.WriteResponse.BLOCK_NUMBER) {
+				buffer.get();
+				if (!connection.datablock.isSending()) {
+					throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_WRITE_RESPONSE);
+				}
+				ackDataBlock(buffer.getShort() & 0xFFFF, DlmsExceptionReason.RECEIVED_INVALID_WRITE_RESPONSE);
+				return false;
+			}
+			
+			connection.datablock.reset();
+			if (count != descs.length) {
+				throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_WRITE_RESPONSE);
+			}
+			byte error = 0;
+			for (int i = 0; i < count; ++i) {
+				int choice = buffer.get();
+				if (choice == Constants.WriteResponse.DATA_ACCESS_ERROR) {
+					byte result = buffer.get();
+					error = error == 0 ? result : error;
+				} else if (choice != Constants.WriteResponse.SUCCESS) {
+					throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_WRITE_RESPONSE);
+				}
+			}
+			verifyDataAccessResult(error, error);
+			return true;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			connection.datablock.reset();
+			throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_WRITE_RESPONSE);
 		}
-		
-		verifyDataAccessResult(data[2], data[3]);
 	}
 	
 }
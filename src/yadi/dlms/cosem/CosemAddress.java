@@ -0,0 +1,85 @@
+package yadi.dlms.cosem;
+
+import java.util.Arrays;
+
+import yadi.dlms.Obis;
+
+/**
+ * Immutable address of an attribute or method of a COSEM object, accessed by logical name.
+ * The descriptor is encoded once (class id, instance id and attribute/method id) so a request is built with
+ * a single copy. It holds no request or response data, so one instance can be shared by any number of sessions.
+ */
+public final class CosemAddress {
+
+	public static final int ENCODED_SIZE = 9;
+
+	private final int classId;
+	private final Obis obis;
+	private final int index;
+	private final byte[] encoded;
+
+	/**
+	 * Creates the address of an attribute or method
+	 * @param classId the object class_id
+	 * @param obis the obis of the object
+	 * @param index the index of the attribute/method
+	 */
+	public CosemAddress(int classId, Obis obis, int index) {
+		if (classId < 0 || classId > 0xFFFF || index < -128 || index > 0xFF) {
+			throw new IllegalArgumentException();
+		}
+		this.classId = classId;
+		this.obis = obis;
+		this.index = index;
+		this.encoded = new byte[ENCODED_SIZE];
+		encoded[0] = (byte)(classId >>> 8);
+		encoded[1] = (byte)classId;
+		obis.writeTo(encoded, 2);
+		encoded[8] = (byte)index;
+	}
+
+	public CosemAddress(int classId, String obis, int index) {
+		this(classId, Obis.valueOf(obis), index);
+	}
+
+	public int getClassId() {
+		return classId;
+	}
+
+	public Obis getObis() {
+		return obis;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Retrieves the encoded descriptor: class id, instance id and attribute/method id
+	 * @return a copy of the 9 bytes descriptor
+	 */
+	public byte[] getEncoded() {
+		return encoded.clone();
+	}
+
+	/**
+	 * Writes the encoded descriptor
+	 * @param serializer destination of the 9 bytes descriptor
+	 */
+	public void writeTo(CosemSerializer serializer) {
+		serializer.rawBuffer(encoded, 0, ENCODED_SIZE);
+	}
+
+	@Override public boolean equals(Object obj) {
+		return obj instanceof CosemAddress && Arrays.equals(((CosemAddress)obj).encoded, encoded);
+	}
+
+	@Override public int hashCode() {
+		return Arrays.hashCode(encoded);
+	}
+
+	@Override public String toString() {
+		return classId+"/"+obis+"/"+index;
+	}
+
+}
@@ -1,7 +1,6 @@
 package yadi.dlms.cosem;
 
 import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -22,6 +21,7 @@ public class CosemConnection {
 		}
 		
 		void reset() {
+			lastBlock = false;
 			blockNum = 0;
 			blocks = new byte[0];
 			blockSize = 0;
@@ -32,18 +32,15 @@ public class CosemConnection {
 		public void setData(byte[] data, int len) {
 			blocks = data;
 			blockSize = len;
+			nextBlockNum = 1;
 		}
 
 		public byte[] getBlock(int blockNum) {
-			int offset = (blockNum-1)*blockSize;
-			if (offset > blocks.length) {
+			if (blockSize == 0 || blockNum < 1 || blockNum > getBlockCount()) {
 				return null;
 			}
-			int to = offset + blockSize;
-			if (to > blocks.length) {
-				to = blocks.length;
-			}
-			return Arrays.copyOfRange(blocks, offset, to);
+			int offset = (blockNum-1)*blockSize;
+			return Arrays.copyOfRange(blocks, offset, Math.min(offset + blockSize, blocks.length));
 		}
 		
 		public void ackBlock(int blockNum) {
@@ -56,35 +53,33 @@ public class CosemConnection {
 			return getBlock(nextBlockNum);
 		}
 
-		public byte[] getNextBlockNum() {
-			byte[] data = ByteBuffer.allocate(4).putInt(nextBlockNum).array();
-			System.out.println("block num = "+nextBlockNum);
-			StringBuilder sb = new StringBuilder();
-			for (byte b : data) {
-				sb.append(String.format("%02X ", b));
-			}
-			System.out.println(sb);
-			return data;
+		public int getBlockCount() {
+			return blockSize == 0 ? 0 : (blocks.length + blockSize - 1) / blockSize;
 		}
-		
-		public boolean thisIsLast() {
-			return getBlock(nextBlockNum) == null;
-		}
-		public boolean nextIsNull() {
-			return getBlock(nextBlockNum+1) == null;
+
+		/**
+		 * @return true if a request is being transmitted in blocks
+		 */
+		public boolean isSending() {
+			return blockSize != 0;
 		}
 
-		public boolean nextIsLast() {
-			return getBlock(nextBlockNum+1) == null;
+		/**
+		 * @return true if the next block to be sent is the last one
+		 */
+		public boolean isLast() {
+			return nextBlockNum >= getBlockCount();
 		}
 	}
 	
 	DataBlock datablock = new DataBlock();
+	final GeneralBlockTransfer gbt = new GeneralBlockTransfer();
 	byte[] challengeServerToClient = new byte[0];
 	byte[] challengeClientToServer = new byte[0];
 	byte[] proposedContextName = new byte[0];
 	byte[] conformanceBlock = new byte[0];
 	public byte[] serverSysTitle = new byte[0];
+	byte[] dedicatedKey = new byte[0];
 	int maxPduSize = 255;
 	int serverInvocationCounter = 0;
 	
@@ -94,8 +89,23 @@ public class CosemConnection {
 		proposedContextName = new byte[0];
 		conformanceBlock = new byte[0];
 		serverSysTitle = new byte[0];
+		dedicatedKey = new byte[0];
 		maxPduSize = 255;
 		serverInvocationCounter = 0;
 		datablock.reset();
+		gbt.reset();
+	}
+	
+	/**
+	 * Checks if a conformance bit was granted by the server in the AARE
+	 * @param conformanceBit one of the Constants.ConformanceBlock values
+	 * @return true if the service is supported by the server
+	 */
+	boolean isSupported(int conformanceBit) {
+		if (conformanceBlock.length != 3) {
+			return false;
+		}
+		int value = ((conformanceBlock[0] & 0xFF) << 16) | ((conformanceBlock[1] & 0xFF) << 8) | (conformanceBlock[2] & 0xFF);
+		return (value & conformanceBit) != 0;
 	}
 }
@@ -76,6 +76,15 @@ public class CosemParameters {
 		NONE, AUTHENTICATION, ENCRYPTION, AUTHENTICATION_ENCRYPTION;
 	}
 	
+	/**
+	 * Possible types of ciphering, used when the security type is not NONE.
+	 * Dedicated keys are generated for each association and sent ciphered in the AARQ,
+	 * general ciphering is used only if the server grants general protection
+	 */
+	public enum CipheringType {
+		GLOBAL, DEDICATED, GENERAL_GLOBAL, GENERAL_DEDICATED;
+	}
+	
 	/**
 	 * Authentication types
 	 */
@@ -104,6 +113,7 @@ public class CosemParameters {
 	///Connection connection = new Connection();
 	AuthenticationType authenticationType = AuthenticationType.PUBLIC;
 	SecurityType securityType = SecurityType.NONE;
+	CipheringType cipheringType = CipheringType.GLOBAL;
 	ReferenceType referenceType = ReferenceType.LOGICAL_NAME;
 	
 	private static Object locker = new Object();
@@ -112,6 +122,8 @@ public class CosemParameters {
 	int priority = Constants.PRIORITY_HIGH;
 	int serviceClass = Constants.SERVICE_CLASS_CONFIRMED;
 	short maxPduSize = (short)0xFFFF;
+	boolean generalBlockTransfer = false;
+	int gbtWindowSize = 1;
 	
 	byte[] llsHlsSecret = new byte[8];
 	byte[] systemTitle = new byte[] {0x48, 0x45, 0x43, 0x00, 0x05, 0x00, 0x00, 0x01};
@@ -193,6 +205,14 @@ public class CosemParameters {
 		this.securityType = securityType;
 	}
 	
+	/**
+	 * Sets the ciphering type to be used
+	 * @param cipheringType
+	 */
+	public void setCipheringType(CipheringType cipheringType) {
+		this.cipheringType = cipheringType;
+	}
+	
 	/**
 	 * Sets the authentication value to be used
 	 * @param authenticationType
@@ -217,6 +237,26 @@ public class CosemParameters {
 		this.maxPduSize = (short)pduSize;
 	}
 	
+	/**
+	 * Enables the General Block Transfer, it's proposed in the conformance block and used if granted by the server
+	 * @param enabled - true to propose the general block transfer
+	 */
+	public void setGeneralBlockTransfer(boolean enabled) {
+		this.generalBlockTransfer = enabled;
+	}
+	
+	/**
+	 * Sets the number of blocks the server may stream before waiting for an acknowledgement.
+	 * Over HdlcLinkLayer the window is always 1: the HDLC layer exchanges one frame per poll, so blocks can't be streamed
+	 * @param windowSize - window size, between 1 and 63
+	 */
+	public void setGeneralBlockTransferWindow(int windowSize) {
+		if (windowSize < 1 || windowSize > 63) {
+			throw new IllegalArgumentException("Window size must be between 1 and 63");
+		}
+		this.gbtWindowSize = windowSize;
+	}
+	
 	/**
 	 * Sets the service priority
 	 * @param priority
@@ -274,5 +314,9 @@ public class CosemParameters {
 	public SecurityType getSecurityType() {
 		return securityType;
 	}
+
+	public CipheringType getCipheringType() {
+		return cipheringType;
+	}
 	
 }
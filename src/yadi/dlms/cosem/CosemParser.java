@@ -1,283 +1,278 @@
 package yadi.dlms.cosem;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import yadi.dlms.DlmsException;
 import yadi.dlms.DlmsType;
+import yadi.dlms.Obis;
 import yadi.dlms.classes.clock.ClockStatus;
 import yadi.dlms.classes.clock.CosemDate;
 import yadi.dlms.classes.clock.CosemDateTime;
 import yadi.dlms.classes.clock.CosemTime;
 
+/**
+ * A-XDR parser reading directly from the buffer given, values are decoded in place without intermediate copies
+ */
 public class CosemParser {
 
-	private final ByteArrayInputStream is;
+	/**
+	 * Path index matching every element of an array or structure
+	 */
+	public static final int ANY = -1;
+	
+	private final ByteBuffer buffer;
 	
 	static public CosemParser make(byte[] data) {
 		return new CosemParser(data);
 	}
 	
+	static public CosemParser make(ByteBuffer buffer) {
+		return new CosemParser(buffer);
+	}
+	
 	public CosemParser(byte[] data) {
-		is = new ByteArrayInputStream(data);
+		this(data, 0, data.length);
+	}
+	
+	/**
+	 * Creates a parser over a region of an array, the array is not copied
+	 * @param data array with the A-XDR encoded data
+	 * @param offset index of the first byte to be parsed
+	 * @param length number of bytes to be parsed
+	 */
+	public CosemParser(byte[] data, int offset, int length) {
+		this(ByteBuffer.wrap(data, offset, length));
+	}
+	
+	/**
+	 * Creates a parser over the remaining bytes of a buffer, the buffer position is not changed
+	 * @param buffer buffer with the A-XDR encoded data
+	 */
+	public CosemParser(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
 	}
 	
 	public int parseSize() {
-		int size = is.read();
-		
-		if (size <= 0x80) {
-			return size;
-		}
-		
-		switch (size) {
-		case 0x81:
-			return is.read();
-		case 0x82:
-			return readU16();
-		case 0x83:
-			return (readU16() << 8) | is.read();
-		case 0x84:
-			return readU32();
-		default:
-			throw new IllegalArgumentException("invalid size = "+size);
+		try {
+			return DlmsType.readLength(buffer);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException();
 		}
 	}
 	
 	public int parseStructureSize() {
-		if (is.read() != DlmsType.STRUCTURE.tag) {
-			throw new IllegalArgumentException();
-		}
+		verifyTag(DlmsType.STRUCTURE);
 		return parseSize();
 	}
 	
 	public void verifyStructureSize(int size) {
-		if (is.read() != DlmsType.STRUCTURE.tag) {
-			throw new IllegalArgumentException();
-		}
-		if (size != parseSize()) {
+		if (size != parseStructureSize()) {
 			throw new IllegalArgumentException();
 		}
 	}
 	
 	public int parseArraySize() {
-		if (is.read() != DlmsType.ARRAY.tag) {
-			throw new IllegalArgumentException();
-		}
+		verifyTag(DlmsType.ARRAY);
 		return parseSize();
 	}
 	
 	public void verifyArraySize(int size) {
-		if (is.read() != DlmsType.ARRAY.tag) {
-			throw new IllegalArgumentException();
-		}
-		if (size != parseSize()) {
+		if (size != parseArraySize()) {
 			throw new IllegalArgumentException();
 		}
 	}
 	
 	public String string() {
-		if (is.read() != DlmsType.STRING.tag) {
-			throw new IllegalArgumentException();
-		}
-		int size = parseSize();
-		byte[] rawbytes = new byte[size];
-		is.read(rawbytes, 0, size);
-		return new String(rawbytes);
+		verifyTag(DlmsType.STRING);
+		return new String(readBytes(parseSize()));
 	}
+	
 	public byte[] rawString() {
-		if (is.read() != DlmsType.STRING.tag) {
-			throw new IllegalArgumentException();
-		}
-		int size = parseSize();
-		byte[] rawbytes = new byte[size];
-		is.read(rawbytes, 0, size);
-		return rawbytes;
+		verifyTag(DlmsType.STRING);
+		return readBytes(parseSize());
 	}
 
 	public byte[] octetString() {
-		int tag = is.read();
-		if (tag != DlmsType.OCTET_STRING.tag) {
-			throw new IllegalArgumentException("received tag = "+tag);
-		}
+		verifyTag(DlmsType.OCTET_STRING);
+		return readBytes(parseSize());
+	}
+	
+	/**
+	 * Retrieves an octet-string as a read-only view of the parsed buffer, no bytes are copied
+	 * @return a buffer with the contents of the octet-string
+	 */
+	public ByteBuffer octetStringView() {
+		verifyTag(DlmsType.OCTET_STRING);
+		return view(parseSize());
+	}
+	
+	/**
+	 * Reads an octet-string into a buffer provided by the caller
+	 * @param dst destination array
+	 * @param offset index of dst where the first byte is written
+	 * @return the number of bytes of the octet-string
+	 */
+	public int octetString(byte[] dst, int offset) {
+		verifyTag(DlmsType.OCTET_STRING);
 		int size = parseSize();
-		byte[] rawbytes = new byte[size];
-		is.read(rawbytes, 0, size);
-		return rawbytes;
+		require(size);
+		buffer.get(dst, offset, size);
+		return size;
 	}
 
-	public byte[] octetStringNoDlms(int size) {
+	/**
+	 * Parses a logical name, a 6 bytes octet-string, without intermediate copies
+	 * @return the interned Obis
+	 */
+	public Obis obis() {
+		verifyTag(DlmsType.OCTET_STRING);
+		if (parseSize() != 6) {
+			throw new IllegalArgumentException("OBIS must have 6 bytes");
+		}
+		require(6);
+		long value = ((long)readU16() << 32) | (readU32() & 0xFFFFFFFFL);
+		return Obis.valueOf(value);
+	}
 
-		byte[] rawbytes = new byte[size];
-		is.read(rawbytes, 0, size);
-		return rawbytes;
+	public byte[] octetStringNoDlms(int size) {
+		return readBytes(size);
 	}
 
 	public byte[] bcd() {
-		int tag = is.read();
-		if (tag != DlmsType.BCD.tag) {
-			throw new IllegalArgumentException("received tag = "+tag);
-		}
-		int size = parseSize();
-		byte[] rawbytes = new byte[size];
-		is.read(rawbytes, 0, size);
-		return rawbytes;
+		verifyTag(DlmsType.BCD);
+		return readBytes(parseSize());
 	}
 	
 	public boolean[] bitstring() {
-		int tag = is.read();
-		if (tag != DlmsType.BITSTRING.tag) {
-			throw new IllegalArgumentException("invalid bitstring tag = "+tag);
-		}
+		verifyTag(DlmsType.BITSTRING);
 		
-		int size= parseSize();
+		int size = parseSize();
+		require((size + 7) / 8);
 		boolean[] result = new boolean[size];
 		
-		int bit = 0x80;
-		int value = is.read();
-		
+		int value = 0;
 		for (int i = 0; i < size; ++i) {
-			if (bit == 0) {
-				value = is.read();
-				bit = 0x80;
+			if ((i & 0x07) == 0) {
+				value = readU8();
 			}
-			result[i] = (value & bit) == bit;
-			bit >>>= 1;
+			result[i] = (value & (0x80 >>> (i & 0x07))) != 0;
 		}
 		
 		return result;
 	}
 	
 	public boolean bool() {
-		if (is.read() != DlmsType.BOOLEAN.tag) {
-			throw new IllegalArgumentException();
-		}
-		if (is.read() == 0) {
-			return false;
-		}
-		return true;
+		verifyTag(DlmsType.BOOLEAN, 1);
+		return buffer.get() != 0;
+	}
+	
+	/**
+	 * Checks if the next element is a null-data, e.g. a value left out of a compressed profile entry
+	 */
+	public boolean isNullData() {
+		return buffer.hasRemaining() && buffer.get(buffer.position()) == DlmsType.NULL_DATA.tag;
+	}
+	
+	public void nullData() {
+		verifyTag(DlmsType.NULL_DATA);
 	}
 	
 	public CosemDate date() {
-		if (is.read() != DlmsType.OCTET_STRING.tag || is.available() < 7) {
-			throw new IllegalArgumentException();
-		}
-		if (is.read() != 5) {
+		verifyTag(DlmsType.OCTET_STRING, 6);
+		if (readU8() != 5) {
 			throw new IllegalArgumentException();
 		}
-		return new CosemDate(readU16(), is.read(), is.read(), is.read());
+		return new CosemDate(readU16(), readU8(), readU8(), readU8());
 	}
 	
 	public CosemTime time() {
-		if (is.read() != DlmsType.OCTET_STRING.tag || is.available() < 5) {
-			throw new IllegalArgumentException();
-		}
-		if (is.read() != 4) {
+		verifyTag(DlmsType.OCTET_STRING, 5);
+		if (readU8() != 4) {
 			throw new IllegalArgumentException();
 		}
-		return new CosemTime(is.read(), is.read(), is.read(), is.read());
+		return new CosemTime(readU8(), readU8(), readU8(), readU8());
 	}
 	
 	public CosemDateTime datetime() {
-		if (is.read() != DlmsType.OCTET_STRING.tag || is.available() < 13) {
-			throw new IllegalArgumentException();
-		}
+		verifyTag(DlmsType.OCTET_STRING, 13);
 		if (readU8() != 12) {
 			throw new IllegalArgumentException();
 		}
-		CosemDate date = new CosemDate(readU16(), is.read(), is.read(), is.read());
-		CosemTime time = new CosemTime(is.read(), is.read(), is.read(), is.read());
+		CosemDate date = new CosemDate(readU16(), readU8(), readU8(), readU8());
+		CosemTime time = new CosemTime(readU8(), readU8(), readU8(), readU8());
 		int deviation = readU16();
-		ClockStatus status = new ClockStatus(is.read());
+		ClockStatus status = new ClockStatus(readU8());
 		return new CosemDateTime(date, time, deviation, status);
 	}
 	
 	public float float32() {
-		if (is.read() != DlmsType.FLOAT32.tag || is.available() < 4) {
-			throw new IllegalArgumentException();
-		}
-		return Float.intBitsToFloat(Integer.reverseBytes(readU32()));
+		verifyTag(DlmsType.FLOAT32, 4);
+		return Float.intBitsToFloat(Integer.reverseBytes(buffer.getInt()));
 	}
 	
 	public double float64() {
-		if (is.read() != DlmsType.FLOAT64.tag || is.available() < 8) {
-			throw new IllegalArgumentException();
-		}
-		return Double.longBitsToDouble(Long.reverseBytes(readU64()));
+		verifyTag(DlmsType.FLOAT64, 8);
+		return Double.longBitsToDouble(Long.reverseBytes(buffer.getLong()));
 	}
 	
 	public int enumeration() {
-		if (is.read() != DlmsType.ENUM.tag || is.available() < 1) {
-			throw new IllegalArgumentException();
-		}
-		return is.read();
+		verifyTag(DlmsType.ENUM, 1);
+		return readU8();
 	}
 
 	public int int8() {
-		if (is.read() != DlmsType.INT8.tag || is.available() < 1) {
-			throw new IllegalArgumentException();
-		}
-		byte val = (byte)is.read();
-		return (int)val;
+		verifyTag(DlmsType.INT8, 1);
+		return buffer.get();
 	}
 	
 	public int uint8() {
-		if (is.read() != DlmsType.UINT8.tag || is.available() < 1) {
-			throw new IllegalArgumentException();
-		}
-		return is.read() & 0xFF;
+		verifyTag(DlmsType.UINT8, 1);
+		return readU8();
 	}
 	
 	public int int16() {
-		if (is.read() != DlmsType.INT16.tag || is.available() < 2) {
-			throw new IllegalArgumentException();
-		}
-		return readI16();
+		verifyTag(DlmsType.INT16, 2);
+		return buffer.getShort();
 	}
 	
 	public int uint16() {
-		if (is.read() != DlmsType.UINT16.tag || is.available() < 2) {
-			throw new IllegalArgumentException();
-		}
+		verifyTag(DlmsType.UINT16, 2);
 		return readU16();
 	}
 	
 	public int int32() {
-		if (is.read() != DlmsType.INT32.tag || is.available() < 4) {
-			throw new IllegalArgumentException();
-		}
-		return readI32();
+		verifyTag(DlmsType.INT32, 4);
+		return buffer.getInt();
 	}
 	
 	public int uint32() {
-		if (is.read() != DlmsType.UINT32.tag || is.available() < 4) {
-			throw new IllegalArgumentException();
-		}
+		verifyTag(DlmsType.UINT32, 4);
 		return readU32();
 	}
 	
 	public long int64() {
-		if (is.read() != DlmsType.INT64.tag || is.available() < 8) {
-			throw new IllegalArgumentException();
-		}
-		return readI64();
+		verifyTag(DlmsType.INT64, 8);
+		return buffer.getLong();
 	}
 	
 	public long uint64() {
-		if (is.read() != DlmsType.UINT64.tag || is.available() < 8) {
-			throw new IllegalArgumentException();
-		}
-		return readU64();
+		verifyTag(DlmsType.UINT64, 8);
+		return buffer.getLong();
 	}
 	
 	public int integer() {
-		int tag = is.read();
+		int tag = readTag();
 		
 		if (tag == DlmsType.UINT8.tag) {
 			return readU8();
 		}
 		
 		if (tag == DlmsType.INT8.tag) {
-			return readI8();
+			return buffer.get();
 		}
 		
 		if (tag == DlmsType.UINT16.tag) {
@@ -285,7 +280,7 @@ public class CosemParser {
 		}
 		
 		if (tag == DlmsType.INT16.tag) {
-			return readI16();
+			return buffer.getShort();
 		}
 		
 		if (tag == DlmsType.UINT32.tag) {
@@ -293,7 +288,7 @@ public class CosemParser {
 		}
 		
 		if (tag == DlmsType.INT32.tag) {
-			return readI32();
+			return buffer.getInt();
 		}
 		
 		if (tag == DlmsType.ENUM.tag) {
@@ -312,119 +307,211 @@ public class CosemParser {
 			return val;
 		}
 		
-		System.out.println("tag == "+tag);
-		
-		throw new IllegalArgumentException();
+		throw new IllegalArgumentException("received tag = "+tag);
 	}
 	
-	private int readI8() {
-		return is.read();
+	private int readTag() {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
 	}
 	
-	private int readU8() {
-		return is.read() & 0xFF;
+	private void verifyTag(DlmsType type) {
+		int tag = readTag();
+		if (tag != (type.tag & 0xFF)) {
+			throw new IllegalArgumentException("received tag = "+tag);
+		}
 	}
 	
-	private int readI16() {
-		return ((is.read() << 8) | is.read());
+	private void verifyTag(DlmsType type, int payloadSize) {
+		verifyTag(type);
+		require(payloadSize);
 	}
 	
-	private int readU16() {
-		return readI16() & 0xFFFF;
+	private void require(int size) {
+		if (buffer.remaining() < size) {
+			throw new IllegalArgumentException();
+		}
 	}
 	
-	private int readI32() {
-		return ((readI16() << 16) | readI16());
+	private byte[] readBytes(int size) {
+		require(size);
+		byte[] rawbytes = new byte[size];
+		buffer.get(rawbytes);
+		return rawbytes;
 	}
 	
-	private int readU32() {
-		return readI32() & 0xFFFFFFFF;
+	private ByteBuffer view(int size) {
+		require(size);
+		ByteBuffer view = buffer.slice();
+		view.limit(size);
+		buffer.position(buffer.position() + size);
+		return view.asReadOnlyBuffer();
+	}
+	
+	private int readU8() {
+		try {
+			return buffer.get() & 0xFF;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException();
+		}
 	}
 	
-	private long readI64() {
-		return ((readI32() << 32) | readI32());
+	private int readU16() {
+		try {
+			return buffer.getShort() & 0xFFFF;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException();
+		}
 	}
 	
-	private long readU64() {
-		return readI64() & 0xFFFFFFFFFFFFFFFFL;
+	private int readU32() {
+		try {
+			return buffer.getInt();
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException();
+		}
 	}
 	
 	public DlmsType getNextType() throws DlmsException {
-		is.mark(10);
-		DlmsType tag = DlmsType.fromTag(is.read());
+		int position = buffer.position();
+		DlmsType tag = DlmsType.fromTag(readTag());
 		
 		if (tag == DlmsType.OCTET_STRING) {
-			if (this.parseSize() == 12) {
-				is.reset();
-				return DlmsType.OCTET_STRING_12;
-			}
+			tag = DlmsType.fromOctetString(this.parseSize());
 		}
 		
-		is.reset();
+		buffer.position(position);
 		return tag;
 	}
 
 	public byte[] getNextItemRawData() {
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		return rawElement();
+	}
+	
+	/**
+	 * Skips the next element, including all the elements inside it when it's an array or a structure
+	 */
+	public void skip() {
 		try {
-			DlmsType type = DlmsType.fromTag(is.read());
-			os.write(type.tag);
-			switch (type) {
-			case ARRAY:
-				break;
-			case BCD:
-				break;
-			case BITSTRING:
-				break;
-			case BOOLEAN:
-				break;
-			case DATE:
-				break;
-			case DATE_TIME:
-				break;
-			case ENUM:
-				break;
-			case FLOAT32:
-				break;
-			case FLOAT64:
-				break;
-			case INT16:
-				break;
-			case INT32:
-				break;
-			case INT64:
-				break;
-			case INT8:
-				break;
-			case OCTET_STRING:
-				break;
-			case OCTET_STRING_AS_DATETIME:
-				break;
-			case STRING:
-				break;
-			case STRUCTURE:
-				break;
-			case TIME:
-				break;
-			case UINT16:
-				break;
-			case UINT32:
-				break;
-			case UINT64:
-				break;
-			case UINT8:
-				break;
-			case UTF8_STRING:
-				break;
+			DlmsType.skip(buffer);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException();
+		}
+	}
+	
+	/**
+	 * Retrieves the next element as it was encoded, tag and length included
+	 * @return a copy of the encoded element
+	 */
+	public byte[] rawElement() {
+		ByteBuffer view = rawElementView();
+		byte[] data = new byte[view.remaining()];
+		view.get(data);
+		return data;
+	}
+	
+	/**
+	 * Retrieves the next element as it was encoded as a read-only view of the parsed buffer, no bytes are copied
+	 * @return a buffer with the encoded element
+	 */
+	public ByteBuffer rawElementView() {
+		int position = buffer.position();
+		skip();
+		int end = buffer.position();
+		buffer.position(position);
+		return view(end - position);
+	}
+	
+	/**
+	 * Positions the parser at an element nested in the next element, so it can be parsed with the typed methods.
+	 * The path is a sequence of zero based indexes such as "[2][0]", wildcards are not allowed.
+	 * @param path indexes of the element in each level of arrays and structures
+	 */
+	public void seek(String path) {
+		seek(compilePath(path));
+	}
+	
+	public void seek(int... path) {
+		for (int index : path) {
+			if (index < 0 || index >= parseContainerSize()) {
+				throw new IllegalArgumentException("no such element: "+index);
+			}
+			for (int i = 0; i < index; ++i) {
+				skip();
 			}
-		} catch (Exception e) {
-			//
 		}
-		return os.toByteArray();
 	}
-
+	
+	/**
+	 * Retrieves the encoded elements of the next element that match a path, e.g. "[*][3]" selects the fourth
+	 * element of every entry of an array. Elements that don't match are skipped without being decoded.
+	 * The parser is left after the whole element.
+	 * @param path zero based indexes, or * for every element, of each level of arrays and structures
+	 * @return read-only views of the matching elements
+	 */
+	public List<ByteBuffer> select(String path) {
+		return select(compilePath(path));
+	}
+	
+	public List<ByteBuffer> select(int... path) {
+		List<ByteBuffer> retval = new ArrayList<ByteBuffer>();
+		select(path, 0, retval);
+		return retval;
+	}
+	
+	private void select(int[] path, int level, List<ByteBuffer> result) {
+		if (level == path.length) {
+			result.add(rawElementView());
+			return;
+		}
+		int size = parseContainerSize();
+		for (int i = 0; i < size; ++i) {
+			if (path[level] == ANY || path[level] == i) {
+				select(path, level + 1, result);
+			} else {
+				skip();
+			}
+		}
+	}
+	
+	private int parseContainerSize() {
+		int tag = readTag();
+		if (tag != DlmsType.ARRAY.tag && tag != DlmsType.STRUCTURE.tag) {
+			throw new IllegalArgumentException("received tag = "+tag);
+		}
+		return parseSize();
+	}
+	
+	private static int[] compilePath(String path) {
+		int[] indexes = new int[path.length() / 3];
+		int count = 0;
+		int i = 0;
+		while (i < path.length()) {
+			if (path.charAt(i++) != '[' || i >= path.length()) {
+				throw new IllegalArgumentException("invalid path: "+path);
+			}
+			int index = 0;
+			if (path.charAt(i) == '*') {
+				index = ANY;
+				++i;
+			} else {
+				int start = i;
+				while (i < path.length() && path.charAt(i) >= '0' && path.charAt(i) <= '9') {
+					index = index * 10 + (path.charAt(i++) - '0');
+				}
+				if (i == start) {
+					throw new IllegalArgumentException("invalid path: "+path);
+				}
+			}
+			if (i >= path.length() || path.charAt(i++) != ']') {
+				throw new IllegalArgumentException("invalid path: "+path);
+			}
+			indexes[count++] = index;
+		}
+		return Arrays.copyOf(indexes, count);
+	}
+	
 	public boolean hasRemaining() {
-		return is.available() > 0;
+		return buffer.hasRemaining();
 	}
 	
 }
@@ -0,0 +1,391 @@
+package yadi.dlms.cosem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+
+import yadi.dlms.Obis;
+import yadi.dlms.classes.clock.CosemDate;
+import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.classes.clock.CosemTime;
+
+/**
+ * Declarative description of an A-XDR structure, compiled once into an encoder/decoder pair.
+ * Each field is described by its type and by the getter used to encode it, decoded values are handed to a
+ * factory through a Values holder, so no reflection is involved when encoding or decoding.
+ *
+ * <pre>
+ * static final CosemSchema&lt;SpecialDayEntry&gt; SCHEMA = CosemSchema.&lt;SpecialDayEntry&gt;structure()
+ *     .uint16(SpecialDayEntry::getIndex)
+ *     .date(SpecialDayEntry::getDate)
+ *     .uint8(SpecialDayEntry::getDayId)
+ *     .build(v -&gt; new SpecialDayEntry(v.getInt(0), v.get(1), v.getInt(2)));
+ * </pre>
+ */
+public final class CosemSchema<T> {
+
+	public interface Factory<T> {
+		T make(Values values);
+	}
+
+	/**
+	 * Values of the fields of a structure being decoded, indexed by the position of the field
+	 */
+	public static final class Values {
+		private final long[] numbers;
+		private final Object[] objects;
+
+		private Values(int size) {
+			numbers = new long[size];
+			objects = new Object[size];
+		}
+
+		public int getInt(int field) {
+			return (int)numbers[field];
+		}
+
+		public long getLong(int field) {
+			return numbers[field];
+		}
+
+		public boolean getBoolean(int field) {
+			return numbers[field] != 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <V> V get(int field) {
+			return (V)objects[field];
+		}
+	}
+
+	private enum Kind {
+		INT8, UINT8, INT16, UINT16, INT32, UINT32, INT64, UINT64, ENUM, BOOLEAN,
+		OCTET_STRING, OCTET_STRING_AS_TEXT, STRING, OBIS, DATE, TIME, DATETIME, STRUCTURE, ARRAY
+	}
+
+	private static final class Field<T> {
+		final Kind kind;
+		final ToLongFunction<T> number;
+		final Function<T, ?> object;
+		final CosemSchema<Object> schema;
+		final IntFunction<Object[]> arrayFactory;
+
+		@SuppressWarnings("unchecked")
+		Field(Kind kind, ToLongFunction<T> number, Function<T, ?> object, CosemSchema<?> schema, IntFunction<?> arrayFactory) {
+			this.kind = kind;
+			this.number = number;
+			this.object = object;
+			this.schema = (CosemSchema<Object>)schema;
+			this.arrayFactory = (IntFunction<Object[]>)arrayFactory;
+		}
+	}
+
+	public static final class Builder<T> {
+		private final List<Field<T>> fields = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		public Builder<T> int8(ToLongFunction<T> getter) {
+			return number(Kind.INT8, getter);
+		}
+
+		public Builder<T> uint8(ToLongFunction<T> getter) {
+			return number(Kind.UINT8, getter);
+		}
+
+		public Builder<T> int16(ToLongFunction<T> getter) {
+			return number(Kind.INT16, getter);
+		}
+
+		public Builder<T> uint16(ToLongFunction<T> getter) {
+			return number(Kind.UINT16, getter);
+		}
+
+		public Builder<T> int32(ToLongFunction<T> getter) {
+			return number(Kind.INT32, getter);
+		}
+
+		public Builder<T> uint32(ToLongFunction<T> getter) {
+			return number(Kind.UINT32, getter);
+		}
+
+		public Builder<T> int64(ToLongFunction<T> getter) {
+			return number(Kind.INT64, getter);
+		}
+
+		public Builder<T> uint64(ToLongFunction<T> getter) {
+			return number(Kind.UINT64, getter);
+		}
+
+		public Builder<T> enumeration(ToLongFunction<T> getter) {
+			return number(Kind.ENUM, getter);
+		}
+
+		public Builder<T> bool(Function<T, Boolean> getter) {
+			return number(Kind.BOOLEAN, (value) -> getter.apply(value) ? 1 : 0);
+		}
+
+		public Builder<T> octetString(Function<T, byte[]> getter) {
+			return object(Kind.OCTET_STRING, getter);
+		}
+
+		/**
+		 * Octet-string holding text, decoded as a String
+		 */
+		public Builder<T> octetStringText(Function<T, String> getter) {
+			return object(Kind.OCTET_STRING_AS_TEXT, getter);
+		}
+
+		public Builder<T> string(Function<T, String> getter) {
+			return object(Kind.STRING, getter);
+		}
+
+		/**
+		 * Octet-string holding a logical name, decoded as an Obis
+		 */
+		public Builder<T> obis(Function<T, Obis> getter) {
+			return object(Kind.OBIS, getter);
+		}
+
+		public Builder<T> date(Function<T, CosemDate> getter) {
+			return object(Kind.DATE, getter);
+		}
+
+		public Builder<T> time(Function<T, CosemTime> getter) {
+			return object(Kind.TIME, getter);
+		}
+
+		public Builder<T> datetime(Function<T, CosemDateTime> getter) {
+			return object(Kind.DATETIME, getter);
+		}
+
+		public <E> Builder<T> structure(CosemSchema<E> schema, Function<T, E> getter) {
+			fields.add(new Field<T>(Kind.STRUCTURE, null, getter, schema, null));
+			return this;
+		}
+
+		public <E> Builder<T> array(CosemSchema<E> schema, IntFunction<E[]> arrayFactory, Function<T, E[]> getter) {
+			fields.add(new Field<T>(Kind.ARRAY, null, getter, schema, arrayFactory));
+			return this;
+		}
+
+		public CosemSchema<T> build(Factory<T> factory) {
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			Field<T>[] plan = fields.toArray(new Field[fields.size()]);
+			return new CosemSchema<T>(plan, factory);
+		}
+
+		private Builder<T> number(Kind kind, ToLongFunction<T> getter) {
+			fields.add(new Field<T>(kind, getter, null, null, null));
+			return this;
+		}
+
+		private Builder<T> object(Kind kind, Function<T, ?> getter) {
+			fields.add(new Field<T>(kind, null, getter, null, null));
+			return this;
+		}
+	}
+
+	private final Field<T>[] fields;
+	private final Factory<T> factory;
+
+	private CosemSchema(Field<T>[] fields, Factory<T> factory) {
+		this.fields = fields;
+		this.factory = factory;
+	}
+
+	public static <T> Builder<T> structure() {
+		return new Builder<T>();
+	}
+
+	/**
+	 * @return the number of elements of the structure
+	 */
+	public int size() {
+		return fields.length;
+	}
+
+	public T decode(byte[] data) {
+		return decode(new CosemParser(data));
+	}
+
+	public T decode(CosemParser parser) {
+		return decode(parser, new Values(fields.length));
+	}
+
+	public T[] decodeArray(byte[] data, IntFunction<T[]> arrayFactory) {
+		return decodeArray(new CosemParser(data), arrayFactory);
+	}
+
+	/**
+	 * Decodes an array of structures, the same Values holder is reused for every element
+	 * @param parser parser positioned at the array
+	 * @param arrayFactory creates the resulting array, e.g. SeasonProfile[]::new
+	 * @return the decoded elements
+	 */
+	public T[] decodeArray(CosemParser parser, IntFunction<T[]> arrayFactory) {
+		int size = parser.parseArraySize();
+		T[] retval = arrayFactory.apply(size);
+		Values values = new Values(fields.length);
+		for (int i = 0; i < size; ++i) {
+			retval[i] = decode(parser, values);
+		}
+		return retval;
+	}
+
+	public byte[] encode(T value) {
+		return encode(CosemSerializer.acquire(), value).serializeAndRelease();
+	}
+
+	public CosemSerializer encode(CosemSerializer serializer, T value) {
+		serializer.structure(fields.length);
+		for (Field<T> field : fields) {
+			encodeField(serializer, field, value);
+		}
+		return serializer;
+	}
+
+	public byte[] encodeArray(T[] values) {
+		return encodeArray(CosemSerializer.acquire(), values).serializeAndRelease();
+	}
+
+	public CosemSerializer encodeArray(CosemSerializer serializer, T[] values) {
+		serializer.array(values.length);
+		for (T value : values) {
+			encode(serializer, value);
+		}
+		return serializer;
+	}
+
+	private T decode(CosemParser parser, Values values) {
+		parser.verifyStructureSize(fields.length);
+		for (int i = 0; i < fields.length; ++i) {
+			switch (fields[i].kind) {
+			case INT8:
+				values.numbers[i] = parser.int8();
+				break;
+			case UINT8:
+				values.numbers[i] = parser.uint8();
+				break;
+			case INT16:
+				values.numbers[i] = parser.int16();
+				break;
+			case UINT16:
+				values.numbers[i] = parser.uint16();
+				break;
+			case INT32:
+				values.numbers[i] = parser.int32();
+				break;
+			case UINT32:
+				values.numbers[i] = parser.uint32() & 0xFFFFFFFFL;
+				break;
+			case INT64:
+				values.numbers[i] = parser.int64();
+				break;
+			case UINT64:
+				values.numbers[i] = parser.uint64();
+				break;
+			case ENUM:
+				values.numbers[i] = parser.enumeration();
+				break;
+			case BOOLEAN:
+				values.numbers[i] = parser.bool() ? 1 : 0;
+				break;
+			case OCTET_STRING:
+				values.objects[i] = parser.octetString();
+				break;
+			case OCTET_STRING_AS_TEXT:
+				values.objects[i] = new String(parser.octetString());
+				break;
+			case STRING:
+				values.objects[i] = parser.string();
+				break;
+			case OBIS:
+				values.objects[i] = parser.obis();
+				break;
+			case DATE:
+				values.objects[i] = parser.date();
+				break;
+			case TIME:
+				values.objects[i] = parser.time();
+				break;
+			case DATETIME:
+				values.objects[i] = parser.datetime();
+				break;
+			case STRUCTURE:
+				values.objects[i] = fields[i].schema.decode(parser);
+				break;
+			case ARRAY:
+				values.objects[i] = fields[i].schema.decodeArray(parser, fields[i].arrayFactory);
+				break;
+			}
+		}
+		return factory.make(values);
+	}
+
+	private static <T> void encodeField(CosemSerializer serializer, Field<T> field, T value) {
+		switch (field.kind) {
+		case INT8:
+			serializer.int8((int)field.number.applyAsLong(value));
+			break;
+		case UINT8:
+			serializer.uint8((int)field.number.applyAsLong(value));
+			break;
+		case INT16:
+			serializer.int16((int)field.number.applyAsLong(value));
+			break;
+		case UINT16:
+			serializer.uint16((int)field.number.applyAsLong(value));
+			break;
+		case INT32:
+			serializer.int32((int)field.number.applyAsLong(value));
+			break;
+		case UINT32:
+			serializer.uint32((int)field.number.applyAsLong(value));
+			break;
+		case INT64:
+			serializer.int64(field.number.applyAsLong(value));
+			break;
+		case UINT64:
+			serializer.uint64(field.number.applyAsLong(value));
+			break;
+		case ENUM:
+			serializer.enumeration((int)field.number.applyAsLong(value));
+			break;
+		case BOOLEAN:
+			serializer.bool(field.number.applyAsLong(value) != 0);
+			break;
+		case OCTET_STRING:
+			serializer.octetString((byte[])field.object.apply(value));
+			break;
+		case OCTET_STRING_AS_TEXT:
+			serializer.octetString(((String)field.object.apply(value)).getBytes());
+			break;
+		case STRING:
+			serializer.string((String)field.object.apply(value));
+			break;
+		case OBIS:
+			serializer.obis((Obis)field.object.apply(value));
+			break;
+		case DATE:
+			serializer.date((CosemDate)field.object.apply(value));
+			break;
+		case TIME:
+			serializer.time((CosemTime)field.object.apply(value));
+			break;
+		case DATETIME:
+			serializer.datetime((CosemDateTime)field.object.apply(value));
+			break;
+		case STRUCTURE:
+			field.schema.encode(serializer, field.object.apply(value));
+			break;
+		case ARRAY:
+			field.schema.encodeArray(serializer, (Object[])field.object.apply(value));
+			break;
+		}
+	}
+
+}
@@ -1,276 +1,391 @@
 package yadi.dlms.cosem;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
 import yadi.dlms.DlmsType;
 import yadi.dlms.Obis;
 import yadi.dlms.classes.clock.CosemDate;
 import yadi.dlms.classes.clock.CosemDateTime;
 import yadi.dlms.classes.clock.CosemTime;
 
+/**
+ * A-XDR serializer writing into a growable buffer.
+ * A serializer can be reused after reset(), or taken from a per thread pool with acquire()/release()
+ */
 public class CosemSerializer {
 	
-	private ByteArrayOutputStream os = new ByteArrayOutputStream();
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int POOL_SIZE = 8;
+	private static final int MAX_POOLED_CAPACITY = 4096;
+	private static final ThreadLocal<ArrayDeque<CosemSerializer>> pool = new ThreadLocal<ArrayDeque<CosemSerializer>>() {
+		@Override
+		protected ArrayDeque<CosemSerializer> initialValue() {
+			return new ArrayDeque<CosemSerializer>();
+		}
+	};
+	
+	private ByteBuffer buffer;
+	private int start;
+	
+	public CosemSerializer() {
+		this(ByteBuffer.allocate(INITIAL_CAPACITY));
+	}
+	
+	/**
+	 * Creates a serializer that writes into the given buffer starting at its current position, e.g. right after
+	 * the header of an APDU. If the buffer is too small the contents are moved to a larger one, see getBuffer()
+	 * @param buffer destination buffer
+	 */
+	public CosemSerializer(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.start = buffer.position();
+	}
 	
 	public static CosemSerializer make() {
 		return new CosemSerializer();
 	}
 	
+	/**
+	 * Takes an empty serializer from the pool of the current thread
+	 * @return a serializer that should be given back with release() when it's no longer used
+	 */
+	public static CosemSerializer acquire() {
+		CosemSerializer serializer = pool.get().poll();
+		return serializer == null ? new CosemSerializer() : serializer;
+	}
+	
+	/**
+	 * Gives back a serializer taken with acquire(), it must not be used afterwards
+	 * @param serializer the serializer to be reused
+	 */
+	public static void release(CosemSerializer serializer) {
+		ArrayDeque<CosemSerializer> serializers = pool.get();
+		if (serializers.size() < POOL_SIZE && serializer.getClass() == CosemSerializer.class
+				&& serializer.buffer.capacity() <= MAX_POOLED_CAPACITY) {
+			serializers.push(serializer.reset());
+		}
+	}
+	
+	/**
+	 * Discards the data serialized so far, keeping the allocated buffer
+	 * @return this serializer
+	 */
+	public CosemSerializer reset() {
+		buffer.position(start);
+		return this;
+	}
+	
+	/**
+	 * @return the number of bytes serialized
+	 */
+	public int size() {
+		return buffer.position() - start;
+	}
+	
 	public byte[] serialize() {
-		return os.toByteArray();
+		byte[] data = new byte[size()];
+		serialized().get(data);
+		return data;
+	}
+	
+	/**
+	 * Serializes and gives this serializer back to the pool, for serializers taken with acquire()
+	 * @return the data serialized
+	 */
+	public byte[] serializeAndRelease() {
+		byte[] data = serialize();
+		release(this);
+		return data;
+	}
+	
+	/**
+	 * Copies the data serialized into a buffer, without intermediate arrays
+	 * @param dst destination buffer
+	 */
+	public void writeTo(ByteBuffer dst) {
+		dst.put(serialized());
+	}
+	
+	/**
+	 * Retrieves the buffer being written, the serialized data ends at its position
+	 * @return the buffer given in the constructor, or a larger copy if it had to grow
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
 	}
 	
 	public CosemSerializer serializeSize(int size) {
-	    if (size < 0x80) {
-	        os.write(size);
-	    } else if (size <= 0xFF) {
-	    	os.write(0x81);
-	    	os.write(size);
-	    } else if (size <= 0xFFFF) {
-	    	os.write(0x82);
-	    	os.write(size >>> 8);
-	    	os.write(size);
-	    } else if (size < 0xFFFFFF) {
-	    	os.write(0x83);
-	    	os.write(size >>> 16);
-	    	os.write(size >>> 8);
-	    	os.write(size);
-	    } else {
-	    	os.write(0x83);
-	    	os.write(size >>> 24);
-	    	os.write(size >>> 16);
-	    	os.write(size >>> 8);
-	    	os.write(size);
-	    }
-	    return this;
+		ensure(5);
+		if (size < 0x80) {
+			buffer.put((byte)size);
+		} else if (size <= 0xFF) {
+			buffer.put((byte)0x81);
+			buffer.put((byte)size);
+		} else if (size <= 0xFFFF) {
+			buffer.put((byte)0x82);
+			buffer.putShort((short)size);
+		} else if (size <= 0xFFFFFF) {
+			buffer.put((byte)0x83);
+			buffer.put((byte)(size >>> 16));
+			buffer.putShort((short)size);
+		} else {
+			buffer.put((byte)0x84);
+			buffer.putInt(size);
+		}
+		return this;
 	}
 
 	public CosemSerializer structure(int size) {
-		os.write(DlmsType.STRUCTURE.tag);
+		tag(DlmsType.STRUCTURE);
 		return serializeSize(size);
 	}
 	
 	public CosemSerializer array(int size) {
-		os.write(DlmsType.ARRAY.tag);
+		tag(DlmsType.ARRAY);
 		return serializeSize(size);
 	}
 
 	public CosemSerializer string(String str) {
-		os.write(DlmsType.STRING.tag);
-		serializeSize(str.length());
-		serializeBytes(str.getBytes());
+		tag(DlmsType.STRING);
+		byte[] bytes = str.getBytes();
+		serializeSize(bytes.length);
+		serializeBytes(bytes, 0, bytes.length);
 		return this;
 	}
 
 	public CosemSerializer octetString(byte[] octets) {
-		os.write(DlmsType.OCTET_STRING.tag);
+		tag(DlmsType.OCTET_STRING);
 		serializeSize(octets.length);
-		serializeBytes(octets);
+		serializeBytes(octets, 0, octets.length);
 		return this;
 	}
 	
 	public CosemSerializer bcd(byte[] octets) {
-		os.write(DlmsType.BCD.tag);
+		tag(DlmsType.BCD);
 		serializeSize(octets.length);
-		serializeBytes(octets);
+		serializeBytes(octets, 0, octets.length);
 		return this;
 	}
 	
 	public CosemSerializer bitstring(boolean[] value) {
-		os.write(DlmsType.BITSTRING.tag);
+		tag(DlmsType.BITSTRING);
 		serializeSize(value.length);
-		int byteSize = (int) Math.ceil((double)value.length / 8);
-		byte[] byteValue = new byte[byteSize];
-		int nextByte = 0;
-		int nextBit = 0x80;
+		int byteSize = (value.length + 7) / 8;
+		ensure(byteSize);
+		int current = 0;
 		for (int i = 0; i < value.length; ++i) {
-			byteValue[nextByte] |= value[i] ? nextBit : 0;
-			nextBit >>>= 1;
-			if (nextBit == 0) {
-				nextBit = 0x80;
-				++nextByte;
+			if (value[i]) {
+				current |= 0x80 >>> (i & 0x07);
 			}
+			if ((i & 0x07) == 0x07) {
+				buffer.put((byte)current);
+				current = 0;
+			}
+		}
+		if ((value.length & 0x07) != 0) {
+			buffer.put((byte)current);
 		}
-		serializeBytes(byteValue);
 		return this;
 	}
 	
 	public CosemSerializer bool(boolean value) {
-		os.write(DlmsType.BOOLEAN.tag);
-		if (value) {
-			os.write(0x01);
-		} else {
-			os.write(0x00);
-		}
+		tag(DlmsType.BOOLEAN, 1);
+		buffer.put(value ? (byte)0x01 : (byte)0x00);
 		return this;
 	}
 	
 	public CosemSerializer date(CosemDate date) {
-		os.write(DlmsType.OCTET_STRING.tag);
-		serializeSize(5);
-		os.write(date.getYear() >>> 8);
-		os.write(date.getYear());
-		os.write(date.getMonth());
-		os.write(date.getMonthDay());
-		os.write(date.getWeekDay());
+		tag(DlmsType.OCTET_STRING, 6);
+		buffer.put((byte)5);
+		buffer.putShort((short)date.getYear());
+		buffer.put((byte)date.getMonth());
+		buffer.put((byte)date.getMonthDay());
+		buffer.put((byte)date.getWeekDay());
 		return this;
 	}
 	
 	public CosemSerializer time(CosemTime time) {
-		os.write(DlmsType.OCTET_STRING.tag);
-		serializeSize(4);
-		os.write(time.getHour());
-		os.write(time.getMinute());
-		os.write(time.getSeconds());
-		os.write(0);
+		tag(DlmsType.OCTET_STRING, 5);
+		buffer.put((byte)4);
+		buffer.put((byte)time.getHour());
+		buffer.put((byte)time.getMinute());
+		buffer.put((byte)time.getSeconds());
+		buffer.put((byte)0);
 		return this;
 	}
 	
 	public CosemSerializer datetime(CosemDateTime dt) {
-		os.write(DlmsType.OCTET_STRING.tag);
-		serializeSize(12);
-		os.write(dt.getDate().getYear() >>> 8);
-		os.write(dt.getDate().getYear());
-		os.write(dt.getDate().getMonth());
-		os.write(dt.getDate().getMonthDay());
-		os.write(dt.getDate().getWeekDay());
-		os.write(dt.getTime().getHour());
-		os.write(dt.getTime().getMinute());
-		os.write(dt.getTime().getSeconds());
-		os.write(0);
-		os.write(0x80);
-		os.write(0x00);
-		os.write(0xFF);
+		tag(DlmsType.OCTET_STRING, 13);
+		buffer.put((byte)12);
+		buffer.putShort((short)dt.getDate().getYear());
+		buffer.put((byte)dt.getDate().getMonth());
+		buffer.put((byte)dt.getDate().getMonthDay());
+		buffer.put((byte)dt.getDate().getWeekDay());
+		buffer.put((byte)dt.getTime().getHour());
+		buffer.put((byte)dt.getTime().getMinute());
+		buffer.put((byte)dt.getTime().getSeconds());
+		buffer.put((byte)0);
+		buffer.put((byte)0x80);
+		buffer.put((byte)0x00);
+		buffer.put((byte)0xFF);
 		return this;
 	}
 	
 	public CosemSerializer float32(float value) {
-		int rawvalue = Float.floatToRawIntBits(value);
-		os.write(DlmsType.FLOAT32.tag);
-		os.write(rawvalue >>> 24);
-    	os.write(rawvalue >>> 16);
-    	os.write(rawvalue >>> 8);
-    	os.write(rawvalue);
+		tag(DlmsType.FLOAT32, 4);
+		buffer.putInt(Float.floatToRawIntBits(value));
 		return this;
 	}
 	
 	public CosemSerializer float64(double value) {
-		long rawvalue = Double.doubleToRawLongBits(value);
-		os.write(DlmsType.FLOAT64.tag);
-		os.write((int) (rawvalue >>> 56));
-    	os.write((int) (rawvalue >>> 48));
-    	os.write((int) (rawvalue >>> 40));
-    	os.write((int) (rawvalue >>> 32));
-		os.write((int) (rawvalue >>> 24));
-    	os.write((int) (rawvalue >>> 16));
-    	os.write((int) (rawvalue >>> 8));
-    	os.write((int) rawvalue);
+		tag(DlmsType.FLOAT64, 8);
+		buffer.putLong(Double.doubleToRawLongBits(value));
 		return this;
 	}
 	
 	public CosemSerializer enumeration(int value) {
-		os.write(DlmsType.ENUM.tag);
-		os.write(value);
+		tag(DlmsType.ENUM, 1);
+		buffer.put((byte)value);
 		return this;
 	}
 
 	public CosemSerializer int8(int value) {
-		os.write(DlmsType.INT8.tag);
-		os.write(value);
+		tag(DlmsType.INT8, 1);
+		buffer.put((byte)value);
 		return this;
 	}
 	
 	public CosemSerializer uint8(int value) {
-		os.write(DlmsType.UINT8.tag);
-		os.write(value);
+		tag(DlmsType.UINT8, 1);
+		buffer.put((byte)value);
 		return this;
 	}
 	
 	public CosemSerializer int16(int value) {
-		os.write(DlmsType.INT16.tag);
-    	os.write(value >>> 8);
-    	os.write(value);
-    	return this;
+		tag(DlmsType.INT16, 2);
+		buffer.putShort((short)value);
+		return this;
 	}
 	
 	public CosemSerializer uint16(int value) {
-		os.write(DlmsType.UINT16.tag);
-    	os.write(value >>> 8);
-    	os.write(value);
-    	return this;
+		tag(DlmsType.UINT16, 2);
+		buffer.putShort((short)value);
+		return this;
 	}
 	
 	public CosemSerializer int32(int value) {
-		os.write(DlmsType.INT32.tag);
-		os.write(value >>> 24);
-    	os.write(value >>> 16);
-    	os.write(value >>> 8);
-    	os.write(value);
-    	return this;
+		tag(DlmsType.INT32, 4);
+		buffer.putInt(value);
+		return this;
 	}
 	
 	public CosemSerializer uint32(int value) {
-		os.write(DlmsType.UINT32.tag);
-		os.write(value >>> 24);
-    	os.write(value >>> 16);
-    	os.write(value >>> 8);
-    	os.write(value);
-    	return this;
+		tag(DlmsType.UINT32, 4);
+		buffer.putInt(value);
+		return this;
 	}
 	
 	public CosemSerializer int64(long value) {
-		os.write(DlmsType.INT64.tag);
-		os.write((int) (value >>> 56));
-    	os.write((int) (value >>> 48));
-    	os.write((int) (value >>> 40));
-    	os.write((int) (value >>> 32));
-		os.write((int) (value >>> 24));
-    	os.write((int) (value >>> 16));
-    	os.write((int) (value >>> 8));
-    	os.write((int) value);
-    	return this;
+		tag(DlmsType.INT64, 8);
+		buffer.putLong(value);
+		return this;
 	}
 	
 	public CosemSerializer uint64(long value) {
-		os.write(DlmsType.UINT64.tag);
-		os.write((int) (value >>> 56));
-    	os.write((int) (value >>> 48));
-    	os.write((int) (value >>> 40));
-    	os.write((int) (value >>> 32));
-		os.write((int) (value >>> 24));
-    	os.write((int) (value >>> 16));
-    	os.write((int) (value >>> 8));
-    	os.write((int) value);
-    	return this;
+		tag(DlmsType.UINT64, 8);
+		buffer.putLong(value);
+		return this;
 	}
 
 	public CosemSerializer rawByte(int value) {
-		os.write(value);
+		ensure(1);
+		buffer.put((byte)value);
+		return this;
+	}
+	
+	/**
+	 * Serializes a 16 bits value without tag
+	 */
+	public CosemSerializer rawShort(int value) {
+		ensure(2);
+		buffer.putShort((short)value);
+		return this;
+	}
+	
+	/**
+	 * Serializes a 32 bits value without tag
+	 */
+	public CosemSerializer rawInt(int value) {
+		ensure(4);
+		buffer.putInt(value);
 		return this;
 	}
 	
 
 	public CosemSerializer rawBuffer(byte[] content) {
-		try {
-			os.write(content);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		return rawBuffer(content, 0, content.length);
+	}
+	
+	public CosemSerializer rawBuffer(byte[] content, int offset, int length) {
+		serializeBytes(content, offset, length);
+		return this;
+	}
+
+	/**
+	 * Serializes a logical name as a 6 bytes octet-string
+	 * @param obis the logical name
+	 * @return this serializer
+	 */
+	public CosemSerializer obis(Obis obis) {
+		tag(DlmsType.OCTET_STRING, 7);
+		buffer.put((byte)6);
+		buffer.putShort((short)(obis.toLong() >>> 32));
+		buffer.putInt((int)obis.toLong());
 		return this;
 	}
 
 	public CosemSerializer captureObject(int classId, String obis, int index) {
-		return uint16(classId)
-		.octetString(new Obis(obis).getValue())
-		.int8(index)
-		.uint16(0);
+		return captureObject(classId, Obis.valueOf(obis), index);
+	}
+	
+	public CosemSerializer captureObject(int classId, Obis obis, int index) {
+		uint16(classId);
+		obis(obis);
+		int8(index);
+		return uint16(0);
+	}
+	
+	private void tag(DlmsType type) {
+		ensure(1);
+		buffer.put((byte)type.tag);
+	}
+	
+	private void tag(DlmsType type, int payloadSize) {
+		ensure(1 + payloadSize);
+		buffer.put((byte)type.tag);
+	}
+	
+	private void serializeBytes(byte[] bytes, int offset, int length) {
+		ensure(length);
+		buffer.put(bytes, offset, length);
+	}
+	
+	private ByteBuffer serialized() {
+		ByteBuffer data = buffer.duplicate();
+		data.flip();
+		data.position(start);
+		return data;
 	}
 	
-	private void serializeBytes(byte[] bytes) {
-		try {
-			os.write(bytes);
-		} catch (IOException e) {
-			e.printStackTrace();
+	private void ensure(int size) {
+		if (buffer.remaining() >= size) {
+			return;
 		}
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + size);
+		ByteBuffer larger = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
 	}
 }
@@ -0,0 +1,211 @@
+package yadi.dlms.cosem;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import yadi.dlms.DlmsException;
+import yadi.dlms.DlmsException.DlmsExceptionReason;
+import yadi.dlms.DlmsType;
+
+/**
+ * State of a General Block Transfer (GBT) procedure.
+ * A complete APDU is split into blocks that are streamed in windows, each window is acknowledged
+ * by the receiving side with the number of the last block received in sequence.
+ */
+class GeneralBlockTransfer {
+
+	static final int HEADER_SIZE = 9; //tag + control + block number + block number ack + 3 bytes of length
+	private static final int LAST_BLOCK = 0x80;
+	private static final int STREAMING = 0x40;
+	private static final int WINDOW_MASK = 0x3F;
+
+	private final ArrayDeque<byte[]> txQueue = new ArrayDeque<byte[]>();
+	private final ByteArrayOutputStream rxData = new ByteArrayOutputStream();
+	private byte[] txData = new byte[0];
+	private int txBlockSize;
+	private int txBlockCount;
+	private int txAcked;
+	private int blockNumber;
+	private int rxLastBlock;
+	private int serverWindowSize = 1;
+	private int maxWindowSize = WINDOW_MASK;
+	private boolean streaming;
+	private boolean active;
+
+	void reset() {
+		txQueue.clear();
+		rxData.reset();
+		txData = new byte[0];
+		txBlockSize = 0;
+		txBlockCount = 0;
+		txAcked = 0;
+		blockNumber = 0;
+		rxLastBlock = 0;
+		serverWindowSize = 1;
+		streaming = false;
+		active = false;
+	}
+
+	/**
+	 * Limits the windows in both directions, for link layers that can't carry more than one block per request.
+	 * The limit is kept by reset
+	 * @param windowSize the largest window, between 1 and 63
+	 */
+	void setMaxWindowSize(int windowSize) {
+		maxWindowSize = windowSize;
+	}
+
+	/**
+	 * @return true if a transfer was started and not finished yet
+	 */
+	boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * @return true if the server is in the middle of a window, so more blocks will arrive without a new request
+	 */
+	boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Starts the transmission of an APDU split in blocks
+	 * @param apdu the complete APDU to be transmitted
+	 * @param blockSize maximum size of the data of each block
+	 * @param windowSize window size proposed by the client
+	 * @return the first block to be transmitted, the remaining blocks of the window are available through nextQueued
+	 */
+	byte[] send(byte[] apdu, int blockSize, int windowSize) {
+		reset();
+		active = true;
+		txData = apdu;
+		txBlockSize = blockSize;
+		txBlockCount = (apdu.length + blockSize - 1) / blockSize;
+		return nextRequest(windowSize);
+	}
+
+	/**
+	 * Retrieves the next block already scheduled for the current window
+	 * @return the next block to be sent or null if the window is complete
+	 */
+	byte[] nextQueued() {
+		return txQueue.poll();
+	}
+
+	/**
+	 * Generates what the client must send next: the next window of pending blocks or an acknowledgement
+	 * of the blocks received so far. A lost block is recovered by acknowledging the last block received in
+	 * sequence, so the server retransmits everything after it.
+	 * @param windowSize window size proposed by the client
+	 * @return the block to be sent
+	 */
+	byte[] nextRequest(int windowSize) {
+		txQueue.clear();
+		windowSize = Math.min(windowSize, maxWindowSize);
+		if (txAcked < txBlockCount) {
+			int last = Math.min(txBlockCount, txAcked + Math.min(serverWindowSize, maxWindowSize));
+			for (int num = txAcked + 1; num <= last; ++num) {
+				int control = windowSize & WINDOW_MASK;
+				if (num == txBlockCount) {
+					control |= LAST_BLOCK;
+				}
+				if (num != last) {
+					control |= STREAMING;
+				}
+				int offset = (num - 1) * txBlockSize;
+				int len = Math.min(txBlockSize, txData.length - offset);
+				blockNumber = Math.max(blockNumber, num);
+				txQueue.add(encode(control, num, rxLastBlock, txData, offset, len));
+			}
+			return txQueue.poll();
+		}
+		return encode(windowSize & WINDOW_MASK, ++blockNumber, rxLastBlock, txData, 0, 0);
+	}
+
+	/**
+	 * Generates the request that recovers from a block that never arrived: the window being received is
+	 * considered finished and the blocks received in sequence are acknowledged, so the server retransmits
+	 * the ones after them
+	 * @param windowSize window size proposed by the client
+	 * @return the block to be sent or null if no transfer is in progress
+	 */
+	byte[] recoverRequest(int windowSize) {
+		if (!active) {
+			return null;
+		}
+		streaming = false;
+		return nextRequest(windowSize);
+	}
+
+	/**
+	 * Parses a block received from the server
+	 * @param data the general-block-transfer APDU
+	 * @return the reassembled APDU when the last block was received, null if the transfer is not complete
+	 * @throws DlmsException
+	 */
+	byte[] receive(byte[] data) throws DlmsException {
+		if (data.length < 6) {
+			reset();
+			throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_BLOCK_TRANSFER);
+		}
+		active = true;
+		int control = data[1] & 0xFF;
+		int number = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+		int ack = ((data[4] & 0xFF) << 8) | (data[5] & 0xFF);
+		ByteBuffer contents = ByteBuffer.wrap(data, 6, data.length - 6);
+		int len;
+		try {
+			len = contents.hasRemaining() ? DlmsType.readLength(contents) : 0;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			len = -1;
+		}
+		int offset = contents.position();
+		if (len != contents.remaining()) {
+			reset();
+			throw new DlmsException(DlmsExceptionReason.RECEIVED_INVALID_BLOCK_TRANSFER);
+		}
+
+		serverWindowSize = Math.max(1, control & WINDOW_MASK);
+		if (ack > txAcked && ack <= txBlockCount) {
+			txAcked = ack;
+		}
+		if (number == rxLastBlock + 1) {
+			rxLastBlock = number;
+			rxData.write(data, offset, len);
+		}
+		streaming = (control & STREAMING) != 0 && (control & LAST_BLOCK) == 0;
+
+		if ((control & LAST_BLOCK) != 0 && number == rxLastBlock && txAcked >= txBlockCount) {
+			byte[] apdu = rxData.toByteArray();
+			reset();
+			return apdu;
+		}
+		return null;
+	}
+
+	private static byte[] encode(int control, int number, int ack, byte[] data, int offset, int len) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream(len + HEADER_SIZE);
+		stream.write(Constants.xDlmsApdu.General.GENERAL_BLOCK_TRANSFER);
+		stream.write(control);
+		stream.write(number >>> 8);
+		stream.write(number);
+		stream.write(ack >>> 8);
+		stream.write(ack);
+		if (len < 0x80) {
+			stream.write(len);
+		} else if (len <= 0xFF) {
+			stream.write(0x81);
+			stream.write(len);
+		} else {
+			stream.write(0x82);
+			stream.write(len >>> 8);
+			stream.write(len);
+		}
+		stream.write(data, offset, len);
+		return stream.toByteArray();
+	}
+
+}
@@ -17,15 +17,16 @@
  */
 package yadi.dlms.cosem;
 
-import java.nio.ByteBuffer;
-
 import yadi.dlms.Obis;
 
+/**
+ * Request and response data of a single operation over an attribute or method.
+ * The address of the object is an immutable CosemAddress, which may be shared, while a descriptor
+ * should be used by one operation at a time.
+ */
 public class LnDescriptor {
 
-	private final byte[] classId;
-	private final short index;
-	private final byte[] obis;
+	private final CosemAddress address;
 	private byte[] requestData = new byte[0];
 	private byte[] responseData = new byte[0];
 	
@@ -36,7 +37,7 @@ public class LnDescriptor {
 	 * @param obis the obis of the object
 	 */
 	public LnDescriptor(int classId, Obis obis, int index) {
-		this(classId, obis.getValue(), index, new byte[0]);
+		this(new CosemAddress(classId, obis, index));
 	}
 	
 	/**
@@ -47,7 +48,7 @@ public class LnDescriptor {
 	 * @param requestData the data to be used in the request
 	 */
 	public LnDescriptor(int classId, Obis obis, int index, byte[] requestData) {
-		this(classId, obis.getValue(), index, requestData);
+		this(new CosemAddress(classId, obis, index), requestData);
 	}
 
 	/**
@@ -58,21 +59,41 @@ public class LnDescriptor {
 	 * @param requestData the data to be used in the request
 	 */
 	public LnDescriptor(int classId, byte[] obis, int index, byte[] requestData) {
-		if (obis.length != 6) {
-			throw new IllegalArgumentException();
-		}
-		this.obis = obis;
-		this.classId = ByteBuffer.allocate(2).putShort((short)classId).array();
-		this.index = (short)index;
+		this(new CosemAddress(classId, new Obis(obis), index), requestData);
+	}
+	
+	/**
+	 * Creates a descriptor for an operation over the given address
+	 * @param address the attribute/method to be accessed
+	 */
+	public LnDescriptor(CosemAddress address) {
+		this(address, new byte[0]);
+	}
+	
+	/**
+	 * Creates a descriptor for an operation over the given address
+	 * @param address the attribute/method to be accessed
+	 * @param requestData the data to be used in the request
+	 */
+	public LnDescriptor(CosemAddress address, byte[] requestData) {
+		this.address = address;
 		setRequestData(requestData);
 	}
+	
+	/**
+	 * Retrieves the address of the attribute/method accessed
+	 * @return the immutable address
+	 */
+	public CosemAddress getAddress() {
+		return address;
+	}
 
 	/**
 	 * Retrieves the classId of the descriptor
 	 * @return byte array representing the classId
 	 */
 	public byte[] getClassId() {
-		return classId;
+		return new byte[] {(byte)(address.getClassId() >>> 8), (byte)address.getClassId()};
 	}
 
 	/**
@@ -80,7 +101,7 @@ public class LnDescriptor {
 	 * @return index value
 	 */
 	public int getIndex() {
-		return index;
+		return address.getIndex();
 	}
 
 	/**
@@ -88,7 +109,7 @@ public class LnDescriptor {
 	 * @return byte array representing the OBIS
 	 */
 	public byte[] getObis() {
-		return obis;
+		return address.getObis().getValue();
 	}
 
 	/**
@@ -58,7 +58,54 @@ public class Security {
 		}
 	}
 	
+	/**
+	 * Number of bytes added to an APDU by the global ciphering: tag, length, security control,
+	 * invocation counter and, when authenticated, the authentication tag
+	 * @param params CosemParameters with the security type in use
+	 * @return the ciphering overhead in bytes
+	 */
+	static int cipheringOverhead(CosemParameters params) {
+		switch (params.securityType) {
+		case NONE:
+			return 0;
+		case ENCRYPTION:
+			return 1 + 3 + 1 + 4 + systemTitleOverhead(params);
+		default:
+			return 1 + 3 + 1 + 4 + 12 + systemTitleOverhead(params);
+		}
+	}
+	
+	private static int systemTitleOverhead(CosemParameters params) {
+		switch (params.cipheringType) {
+		case GENERAL_GLOBAL:
+		case GENERAL_DEDICATED:
+			return 1 + params.systemTitle.length;
+		default:
+			return 0;
+		}
+	}
+	
+	static byte[] generateDedicatedKey() {
+		byte[] key = new byte[16];
+		synchronized(randomLocker) {
+			sr.nextBytes(key);
+		}
+		return key;
+	}
+	
 	static byte[] authenticatedEncryption(CosemParameters params, byte[] data) throws DlmsException {
+		return authenticatedEncryption(params, params.ek, data);
+	}
+	
+	/**
+	 * Ciphers an APDU with the given block cipher key, the global authentication key is always used
+	 * @param params CosemParameters with the security type, system title and authentication key
+	 * @param key the global or dedicated encryption key
+	 * @param data the APDU to be ciphered
+	 * @return security control, invocation counter and the ciphered data
+	 * @throws DlmsException
+	 */
+	static byte[] authenticatedEncryption(CosemParameters params, byte[] key, byte[] data) throws DlmsException {
 		if (params.securityType == SecurityType.NONE) {
 			return data;
 		}
@@ -71,7 +118,7 @@ public class Security {
 			authData[0] = SC_AUTHENTICATION;
 			System.arraycopy(params.ak, 0, authData, 1, params.ak.length);
 			System.arraycopy(data, 0, authData, params.ak.length+1, data.length);
-			byte[] mac = aesGcm(new byte[0], authData, params, ivCounter);
+			byte[] mac = aesGcm(new byte[0], authData, key, params.systemTitle, ivCounter);
 			byte[] data_ = new byte[data.length + mac.length];
 			System.arraycopy(data, 0, data_, 0, data.length);
 			System.arraycopy(mac, 0, data_, data.length, mac.length);
@@ -82,11 +129,11 @@ public class Security {
 			authData = new byte[params.ak.length + 1];
 			authData[0] = SC_AUTHENTICATION_ENCRYPTION;
 			System.arraycopy(params.ak, 0, authData, 1, params.ak.length);
-			data = aesGcm(data, authData, params, ivCounter);
+			data = aesGcm(data, authData, key, params.systemTitle, ivCounter);
 			break;
 		case ENCRYPTION:
 			sc = SC_ENCRYPTION;
-			data = aesGcm(data, new byte[0], params, ivCounter);
+			data = aesGcm(data, new byte[0], key, params.systemTitle, ivCounter);
 			break;
 		default:
 			throw new IllegalStateException();
@@ -104,21 +151,25 @@ public class Security {
 	}
 	
 	public static byte[] reverseAuthenticatedEncryption(CosemParameters params, CosemConnection connection, byte[] data) throws DlmsException {
+		return reverseAuthenticatedEncryption(params, connection, params.ek, data);
+	}
+	
+	static byte[] reverseAuthenticatedEncryption(CosemParameters params, CosemConnection connection, byte[] key, byte[] data) throws DlmsException {
 		switch (data[0] & 0xff) {
 		case SC_AUTHENTICATION:
 			connection.serverInvocationCounter = ByteBuffer.allocate(4).put(Arrays.copyOfRange(data, 1, 5)).getInt(0);
-			return aesGcmReverse(new byte[0], Arrays.copyOfRange(data, 5, data.length), params, connection);
+			return aesGcmReverse(new byte[0], Arrays.copyOfRange(data, 5, data.length), key, connection);
 			
 		case SC_AUTHENTICATION_ENCRYPTION:
 			byte[] authData = new byte[params.ak.length + 1];
 			authData[0] = SC_AUTHENTICATION_ENCRYPTION;
 			System.arraycopy(params.ak, 0, authData, 1, params.ak.length);
 			connection.serverInvocationCounter = ByteBuffer.allocate(4).put(Arrays.copyOfRange(data, 1, 5)).getInt(0);
-			return aesGcmReverse(Arrays.copyOfRange(data, 5, data.length), authData, params, connection);
+			return aesGcmReverse(Arrays.copyOfRange(data, 5, data.length), authData, key, connection);
 			
 		case SC_ENCRYPTION:
 			connection.serverInvocationCounter = ByteBuffer.allocate(4).put(Arrays.copyOfRange(data, 1, 5)).getInt(0);
-			return aesGcmReverse(Arrays.copyOfRange(data, 5, data.length), new byte[0], params, connection);
+			return aesGcmReverse(Arrays.copyOfRange(data, 5, data.length), new byte[0], key, connection);
 			
 		default:
 			return data;
@@ -126,10 +177,14 @@ public class Security {
 	}
 	
 	static byte[] aesGcm(byte[] data, byte[] authData, CosemParameters params, int ivCounter) throws DlmsException {
+		return aesGcm(data, authData, params.ek, params.systemTitle, ivCounter);
+	}
+	
+	static byte[] aesGcm(byte[] data, byte[] authData, byte[] key, byte[] sysTitle, int ivCounter) throws DlmsException {
 		try {
-			byte[] iv = getIv(params.systemTitle, ivCounter);
+			byte[] iv = getIv(sysTitle, ivCounter);
 			synchronized(cipherLocker) {
-				cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(params.ek, "AES"), new GCMParameterSpec(12 * Byte.SIZE, iv));
+				cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(12 * Byte.SIZE, iv));
 				cipher.updateAAD(authData);
 				return cipher.doFinal(data);
 			}
@@ -147,11 +202,11 @@ public class Security {
 		throw new DlmsException(DlmsExceptionReason.INTERNAL_ERROR);
 	}
 	
-	static byte[] aesGcmReverse(byte[] encrypted, byte[] authData, CosemParameters params, CosemConnection connection) throws DlmsException {
+	static byte[] aesGcmReverse(byte[] encrypted, byte[] authData, byte[] key, CosemConnection connection) throws DlmsException {
 		try {
 			byte[] iv = getIv(connection.serverSysTitle, connection.serverInvocationCounter);
 			synchronized(cipherLocker) {
-				cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(params.ek, "AES"), new GCMParameterSpec(12 * Byte.SIZE, iv));
+				cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(12 * Byte.SIZE, iv));
 				cipher.updateAAD(authData);
 				return cipher.doFinal(encrypted);
 			}
@@ -8,9 +8,7 @@ public class SnDescriptor {
 	
 	/**
 	 * Creates a descriptor for a DLMS object
-	 * @param classId the object class_id
-	 * @param index the index of the attribute/method to be accessed
-	 * @param obis the obis of the object
+	 * @param shortName the short name of the attribute/method to be accessed
 	 */
 	public SnDescriptor(int shortName) {
 		this.shortName = shortName;
@@ -41,7 +39,8 @@ public class SnDescriptor {
 	}
 	
 	/**
-	 * Sets the data to be used in next operations
+	 * Sets the data to be used in next operations.
+	 * On a READ it's the parameterized access (selector followed by the access parameters), on a WRITE the value to be written
 	 * @param data byte array of the data to be used
 	 */
 	public void setRequestData(byte[] data) {
@@ -6,21 +6,23 @@ import yadi.dlms.cosem.CosemSerializer;
 
 public class DateTimeSelector implements SelectiveAccess {
 	
+	private static final Obis CLOCK = Obis.valueOf("0.0.1.0.0.255");
+	
 	private byte[] data;
 	
 	public DateTimeSelector(CosemDateTime dtFrom, CosemDateTime dtTo) {
-		this.data = new CosemSerializer()
+		this.data = CosemSerializer.acquire()
 				  .rawByte(0x01)
 				  .structure(4)
 				  	.structure(4)
 				  		.uint16(8)
-				  		.octetString(new Obis("0.0.1.0.0.255").getValue())
+				  		.obis(CLOCK)
 				  		.int8(2)
 				  		.uint16(0)
 				  	.datetime(dtFrom)
 				  	.datetime(dtTo)
 				  	.array(0)
-				  	.serialize();
+				  	.serializeAndRelease();
 	}
 
 	@Override
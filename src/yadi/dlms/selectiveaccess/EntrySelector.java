@@ -45,14 +45,14 @@ public class EntrySelector implements SelectiveAccess {
 	}
 	
 	private EntrySelector(int fromEntry, int toEntry, int fromSelected, int toSelected) {
-		this.data = new CosemSerializer()
+		this.data = CosemSerializer.acquire()
 				  .rawByte(0x02)
 				  .structure(4)
 					  .uint32(fromEntry)
 					  .uint32(toEntry)
 					  .uint16(fromSelected)
 					  .uint16(toSelected)
-					  .serialize();
+					  .serializeAndRelease();
 	}
 
 	@Override
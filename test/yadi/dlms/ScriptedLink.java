@@ -0,0 +1,121 @@
+package yadi.dlms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+import yadi.dlms.cosem.AssociationCache;
+import yadi.dlms.cosem.CosemParameters;
+import yadi.dlms.linklayer.LinkLayer;
+import yadi.dlms.linklayer.LinkLayerException;
+import yadi.dlms.linklayer.LinkLayerException.LinkLayerExceptionReason;
+import yadi.dlms.phylayer.PhyLayer;
+import yadi.dlms.phylayer.PhyLayerException;
+import yadi.dlms.phylayer.PhyLayerException.PhyLayerExceptionReason;
+
+/**
+ * Link layer that records the APDUs sent and answers them with APDUs scripted in advance.
+ * When nothing is left in the script a responder can compute the response from the request, otherwise the
+ * read times out, as a silent meter would.
+ */
+public class ScriptedLink implements LinkLayer {
+
+	private static final Object FAILURE = new Object();
+	private static final Object TIMEOUT = new Object();
+
+	private final Deque<Object> responses = new ArrayDeque<>();
+	private final List<byte[]> requests = new ArrayList<>();
+	private Function<byte[], byte[]> responder;
+
+	/**
+	 * Creates a client already associated through this link, with the parameters of a pre-established association
+	 * @param conformanceBlock the 3 bytes of the conformance block granted by the meter
+	 * @param maxPduSize the max pdu size accepted by the meter
+	 */
+	public DlmsClient associate(CosemParameters params, byte[] conformanceBlock, int maxPduSize) throws Exception {
+		AssociationCache cache = new AssociationCache();
+		cache.put("meter", AssociationCache.preEstablished(conformanceBlock, maxPduSize, null));
+		DlmsClient dlms = new DlmsClient(this, params);
+		dlms.connect(null, cache, "meter");
+		return dlms;
+	}
+
+	/**
+	 * Adds the APDUs returned by the next reads
+	 */
+	public ScriptedLink respond(byte[]... apdus) {
+		for (byte[] apdu : apdus) {
+			responses.add(apdu);
+		}
+		return this;
+	}
+
+	/**
+	 * The next read fails with a link layer error (e.g. a corrupted frame)
+	 */
+	public ScriptedLink fail() {
+		responses.add(FAILURE);
+		return this;
+	}
+
+	/**
+	 * The next read times out (e.g. a lost frame)
+	 */
+	public ScriptedLink timeout() {
+		responses.add(TIMEOUT);
+		return this;
+	}
+
+	/**
+	 * Answers the requests not scripted, e.g. with a simulated meter
+	 * @param responder computes the response to the last request sent
+	 */
+	public ScriptedLink answer(Function<byte[], byte[]> responder) {
+		this.responder = responder;
+		return this;
+	}
+
+	/**
+	 * @return the APDUs sent, in order
+	 */
+	public List<byte[]> getRequests() {
+		return requests;
+	}
+
+	public byte[] getRequest(int index) {
+		return requests.get(index);
+	}
+
+	/**
+	 * @return the number of scripted responses not read yet
+	 */
+	public int getPendingResponses() {
+		return responses.size();
+	}
+
+	@Override public void connect(PhyLayer phy) {
+	}
+
+	@Override public void disconnect(PhyLayer phy) {
+	}
+
+	@Override public void send(PhyLayer phy, byte[] data) {
+		requests.add(data);
+	}
+
+	@Override public byte[] read(PhyLayer phy) throws PhyLayerException, LinkLayerException {
+		Object response = responses.poll();
+		if (response == null && responder != null && !requests.isEmpty()) {
+			return responder.apply(requests.get(requests.size() - 1));
+		}
+		if (response == null || response == TIMEOUT) {
+			throw new PhyLayerException(PhyLayerExceptionReason.TIMEOUT);
+		}
+		if (response == FAILURE) {
+			throw new LinkLayerException(LinkLayerExceptionReason.RECEIVED_INVALID_CHECK_SEQUENCE);
+		}
+		return (byte[])response;
+	}
+}
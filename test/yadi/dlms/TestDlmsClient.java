@@ -0,0 +1,177 @@
+package yadi.dlms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.cosem.CosemAddress;
+import yadi.dlms.cosem.CosemParameters;
+import yadi.dlms.cosem.CosemParameters.ReferenceType;
+import yadi.dlms.cosem.SnDescriptor;
+import yadi.dlms.linklayer.LinkLayerException;
+import yadi.dlms.phylayer.PhyLayerException;
+
+public class TestDlmsClient {
+
+	private static final CosemAddress REGISTER = new CosemAddress(3, Obis.valueOf("1.0.1.8.0.255"), 2);
+	private static final CosemAddress CALENDAR = new CosemAddress(20, Obis.valueOf("0.0.13.0.0.255"), 6);
+	private static final CosemAddress IMAGE_TRANSFER = new CosemAddress(18, Obis.valueOf("0.0.44.0.0.255"), 2);
+	private static final CosemAddress SCRIPT = new CosemAddress(9, Obis.valueOf("0.0.10.0.0.255"), 1);
+	private static final byte[] READ_WRITE_WITH_BLOCKS = {0x18, 0x18, 0x00};
+	private static final byte[] BLOCK_TRANSFER_WITH_SET_AND_ACTION = {0x00, 0x0C, 0x00};
+	private static final byte[] SET_BLOCK_ACK_1 = {(byte)0xC5, 0x02, (byte)0xC1, 0x00, 0x00, 0x00, 0x01};
+	private static final byte[] SET_BLOCK_ACK_2 = {(byte)0xC5, 0x02, (byte)0xC1, 0x00, 0x00, 0x00, 0x02};
+	private static final byte[] SET_NORMAL_OK = {(byte)0xC5, 0x01, (byte)0xC1, 0x00};
+	private static final byte[] ACTION_BLOCK_ACK_1 = {(byte)0xC7, 0x04, (byte)0xC1, 0x00, 0x00, 0x00, 0x01};
+	private static final byte[] ACTION_NORMAL_OK = {(byte)0xC7, 0x01, (byte)0xC1, 0x00};
+
+	private static byte[] makeData(int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; ++i) {
+			data[i] = (byte)i;
+		}
+		return data;
+	}
+
+	/**
+	 * @return the last flag, block number and raw data of a request with a data block
+	 */
+	private static byte[] dataBlock(byte[] request, int offset) {
+		return Arrays.copyOfRange(request, offset, request.length);
+	}
+
+	@Test
+	void testSetWithDatablocks() throws Exception {
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = link.associate(new CosemParameters(), BLOCK_TRANSFER_WITH_SET_AND_ACTION, 40);
+		byte[] data = makeData(50);
+		//3 blocks of up to 19 bytes, the last one acknowledged by Set-Response-Last-Datablock
+		link.respond(SET_BLOCK_ACK_1, SET_BLOCK_ACK_2, new byte[] {(byte)0xC5, 0x03, (byte)0xC1, 0x00, 0x00, 0x00, 0x00, 0x03});
+		dlms.set(null, CALENDAR, data);
+		assertEquals(3, link.getRequests().size());
+		assertEquals(2, link.getRequest(0)[1]);
+		byte[] first = dataBlock(link.getRequest(0), 13);
+		assertArrayEquals(Arrays.copyOfRange(data, 0, 19), Arrays.copyOfRange(first, 6, first.length));
+		assertArrayEquals(new byte[] {(byte)0xC1, 0x03, (byte)0xC1, 0x00, 0x00, 0x00, 0x00, 0x02, 0x13}, Arrays.copyOf(link.getRequest(1), 9));
+		assertArrayEquals(new byte[] {(byte)0xC1, 0x03, (byte)0xC1, (byte)0xFF, 0x00, 0x00, 0x00, 0x03, 0x0C}, Arrays.copyOf(link.getRequest(2), 9));
+		assertArrayEquals(Arrays.copyOfRange(data, 38, 50), dataBlock(link.getRequest(2), 9));
+
+		//the last block must be acknowledged with its own number
+		link.respond(SET_BLOCK_ACK_1, SET_BLOCK_ACK_2, new byte[] {(byte)0xC5, 0x03, (byte)0xC1, 0x00, 0x00, 0x00, 0x00, 0x02});
+		assertThrows(DlmsException.class, () -> dlms.set(null, CALENDAR, data));
+		link.respond(SET_NORMAL_OK);
+		dlms.set(null, SCRIPT, new byte[] {0x12, 0x00, 0x01});
+		assertEquals(1, link.getRequest(6)[1]);
+	}
+
+	@Test
+	void testSetRejectedMidTransfer() throws Exception {
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = link.associate(new CosemParameters(), BLOCK_TRANSFER_WITH_SET_AND_ACTION, 40);
+		//the server rejects the second block with Set-Response-Normal
+		link.respond(SET_BLOCK_ACK_1, new byte[] {(byte)0xC5, 0x01, (byte)0xC1, 0x03});
+		assertThrows(DlmsException.class, () -> dlms.set(null, CALENDAR, makeData(50)));
+		assertEquals(2, link.getRequests().size());
+
+		//a request on another object starts a new transfer
+		link.respond(SET_NORMAL_OK);
+		dlms.set(null, SCRIPT, new byte[] {0x12, 0x00, 0x01});
+		assertArrayEquals(new byte[] {(byte)0xC1, 0x01, (byte)0xC1, 0x00, 0x09, 0x00, 0x00, 0x0A, 0x00, 0x00, (byte)0xFF, 0x01, 0x00, 0x12, 0x00, 0x01},
+				link.getRequest(2));
+
+		//the link fails in the middle of a transfer
+		link.respond(SET_BLOCK_ACK_1).fail();
+		assertThrows(LinkLayerException.class, () -> dlms.set(null, CALENDAR, makeData(50)));
+		link.respond(SET_NORMAL_OK);
+		dlms.set(null, SCRIPT, new byte[] {0x12, 0x00, 0x01});
+		assertArrayEquals(link.getRequest(2), link.getRequest(5));
+	}
+
+	@Test
+	void testActionWithPblocks() throws Exception {
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = link.associate(new CosemParameters(), BLOCK_TRANSFER_WITH_SET_AND_ACTION, 40);
+		byte[] data = makeData(50);
+		//3 blocks of up to 20 bytes
+		link.respond(ACTION_BLOCK_ACK_1, new byte[] {(byte)0xC7, 0x04, (byte)0xC1, 0x00, 0x00, 0x00, 0x02}, ACTION_NORMAL_OK);
+		dlms.action(null, IMAGE_TRANSFER, data);
+		assertEquals(3, link.getRequests().size());
+		assertEquals(4, link.getRequest(0)[1]);
+		assertArrayEquals(new byte[] {(byte)0xC3, 0x06, (byte)0xC1, 0x00, 0x00, 0x00, 0x00, 0x02, 0x14}, Arrays.copyOf(link.getRequest(1), 9));
+		assertArrayEquals(new byte[] {(byte)0xC3, 0x06, (byte)0xC1, (byte)0xFF, 0x00, 0x00, 0x00, 0x03, 0x0A}, Arrays.copyOf(link.getRequest(2), 9));
+		assertArrayEquals(Arrays.copyOfRange(data, 40, 50), dataBlock(link.getRequest(2), 9));
+
+		//the server rejects the second block with Action-Response-Normal
+		link.respond(ACTION_BLOCK_ACK_1, new byte[] {(byte)0xC7, 0x01, (byte)0xC1, 0x03});
+		assertThrows(DlmsException.class, () -> dlms.action(null, IMAGE_TRANSFER, data));
+		link.respond(ACTION_NORMAL_OK);
+		dlms.action(null, SCRIPT, new byte[] {0x12, 0x00, 0x01});
+		assertArrayEquals(new byte[] {(byte)0xC3, 0x01, (byte)0xC1, 0x00, 0x09, 0x00, 0x00, 0x0A, 0x00, 0x00, (byte)0xFF, 0x01, 0x01, 0x12, 0x00, 0x01},
+				link.getRequest(5));
+	}
+
+	@Test
+	void testLostLastBlockOfWindow() throws Exception {
+		CosemParameters params = new CosemParameters();
+		params.setGeneralBlockTransfer(true);
+		params.setGeneralBlockTransferWindow(2);
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = link.associate(params, new byte[] {0x20, 0x00, 0x00}, 256);
+		//block 2 closes the window but is lost, it's retransmitted once block 1 is acknowledged
+		link.respond(new byte[] {(byte)0xE0, 0x42, 0x00, 0x01, 0x00, 0x00, 0x04, (byte)0xC4, 0x01, (byte)0xC1, 0x00})
+				.timeout()
+				.respond(new byte[] {(byte)0xE0, (byte)0x82, 0x00, 0x02, 0x00, 0x01, 0x04, 0x09, 0x02, (byte)0xAB, (byte)0xCD});
+		assertArrayEquals(new byte[] {0x09, 0x02, (byte)0xAB, (byte)0xCD}, dlms.get(null, REGISTER));
+		assertEquals(2, link.getRequests().size());
+		assertArrayEquals(new byte[] {(byte)0xE0, 0x02, 0x00, 0x01, 0x00, 0x01, 0x00}, link.getRequest(1));
+
+		//without a block transfer in progress the timeout isn't recovered
+		assertThrows(PhyLayerException.class, () -> dlms.get(null, REGISTER));
+		assertEquals(3, link.getRequests().size());
+	}
+
+	@Test
+	void testReadFailedMidTransfer() throws Exception {
+		CosemParameters params = new CosemParameters();
+		params.setReferenceType(ReferenceType.SHORT_NAME);
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = link.associate(params, READ_WRITE_WITH_BLOCKS, 40);
+		//the link fails after the first data block of the response
+		link.respond(new byte[] {0x0C, 0x01, 0x02, 0x00, 0x00, 0x01, 0x04, 0x01, 0x00, 0x09, 0x02}).fail();
+		assertThrows(LinkLayerException.class, () -> dlms.read(null, new SnDescriptor(0x0108)));
+		assertArrayEquals(new byte[] {0x05, 0x01, 0x05, 0x00, 0x01}, link.getRequest(1));
+
+		//the next read is a new request instead of asking for block 2
+		SnDescriptor desc = new SnDescriptor(0x0108);
+		link.respond(new byte[] {0x0C, 0x01, 0x00, 0x09, 0x02, (byte)0xAB, (byte)0xCD});
+		dlms.read(null, desc);
+		assertArrayEquals(new byte[] {0x05, 0x01, 0x02, 0x01, 0x08}, link.getRequest(2));
+		assertArrayEquals(new byte[] {0x09, 0x02, (byte)0xAB, (byte)0xCD}, desc.getResponseData());
+	}
+
+	@Test
+	void testWriteFailedMidTransfer() throws Exception {
+		CosemParameters params = new CosemParameters();
+		params.setReferenceType(ReferenceType.SHORT_NAME);
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = link.associate(params, READ_WRITE_WITH_BLOCKS, 40);
+		SnDescriptor calendar = new SnDescriptor(0x0A08);
+		calendar.setRequestData(makeData(50));
+		//the link fails after the first data block is acknowledged
+		link.respond(new byte[] {0x0D, 0x01, 0x02, 0x00, 0x01}).fail();
+		assertThrows(LinkLayerException.class, () -> dlms.write(null, calendar));
+		assertEquals(2, link.getRequests().size());
+		assertEquals(0x07, link.getRequest(1)[2]);
+
+		//the next write is a new request instead of the rest of the previous one
+		SnDescriptor script = new SnDescriptor(0x0B00);
+		script.setRequestData(new byte[] {0x12, 0x00, 0x01});
+		link.respond(new byte[] {0x0D, 0x01, 0x00});
+		dlms.write(null, script);
+		assertArrayEquals(new byte[] {0x06, 0x01, 0x02, 0x0B, 0x00, 0x01, 0x12, 0x00, 0x01}, link.getRequest(2));
+	}
+}
@@ -0,0 +1,66 @@
+package yadi.dlms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.jupiter.api.Test;
+
+public class TestDlmsParser {
+
+	@Test
+	void testArrayOfStructures() throws DlmsException {
+		byte[] data = new byte[] {0x01, 0x02,
+				0x02, 0x02, 0x12, 0x00, 0x0A, 0x0A, 0x02, 0x41, 0x42,
+				0x02, 0x02, 0x10, (byte)0xFF, (byte)0xFE, 0x04, 0x0A, (byte)0xC0, 0x40};
+		DlmsItem item = DlmsParser.getDlmsItem(data);
+		assertEquals(DlmsType.ARRAY, item.getType());
+		assertEquals(2, item.getChildren().size());
+		DlmsItem first = item.getChildren().get(0);
+		assertEquals(DlmsType.STRUCTURE, first.getType());
+		assertEquals("10", first.getChildren().get(0).getValue());
+		assertEquals("AB", first.getChildren().get(1).getValue());
+		DlmsItem second = item.getChildren().get(1);
+		assertEquals("-2", second.getChildren().get(0).getValue());
+		assertEquals(DlmsType.BITSTRING, second.getChildren().get(1).getType());
+		assertEquals("C040", second.getChildren().get(1).getValue());
+	}
+
+	@Test
+	void testTypedValues() throws DlmsException {
+		byte[] data = new byte[] {0x02, 0x04,
+				0x06, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFE,
+				0x17, 0x3F, (byte)0xC0, 0x00, 0x00,
+				0x09, 0x0C, 0x07, (byte)0xE2, 0x05, 0x14, 0x07, 0x0C, 0x1E, 0x00, 0x00, (byte)0x80, 0x00, 0x00,
+				0x09, 0x02, 0x0A, 0x0B};
+		DlmsItem item = DlmsParser.getDlmsItem(data);
+		assertEquals(0xFFFFFFFEL, item.getChildren().get(0).asLong());
+		assertEquals(1.5, item.getChildren().get(1).asDouble());
+		assertEquals(2018, item.getChildren().get(2).asDateTime().getDate().getYear());
+		assertEquals(30, item.getChildren().get(2).asDateTime().getTime().getMinute());
+		assertArrayEquals(new byte[] {0x0A, 0x0B}, item.getChildren().get(3).asBytes());
+		assertEquals("0A0B", item.getChildren().get(3).getValue());
+		assertThrows(DlmsException.class, () -> item.asLong());
+	}
+
+	@Test
+	void testNullData() throws DlmsException {
+		assertArrayEquals(new byte[0], DlmsParser.getPayload(DlmsType.NULL_DATA, new byte[] {0x00, 0x11, 0x05}));
+		assertEquals("", DlmsParser.getString(new byte[] {0x00}));
+		assertArrayEquals(new byte[] {0x00}, DlmsParser.pack(DlmsType.NULL_DATA, new byte[0]));
+		assertArrayEquals(new byte[] {0x00}, DlmsParser.getByteValue(DlmsType.NULL_DATA, ""));
+
+		//the element after the null-data is left in the stream
+		ByteArrayInputStream is = new ByteArrayInputStream(new byte[] {0x11, 0x05});
+		assertArrayEquals(new byte[0], DlmsParser.getPayload(DlmsType.NULL_DATA, is));
+		assertEquals("", DlmsParser.getString(DlmsType.NULL_DATA, is));
+		assertEquals(2, is.available());
+	}
+
+	@Test
+	void testTruncatedData() {
+		assertThrows(DlmsException.class, () -> DlmsParser.getDlmsItem(new byte[] {0x01, 0x02, 0x12, 0x00, 0x01, 0x12}));
+	}
+}
@@ -0,0 +1,89 @@
+package yadi.dlms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsStreamParser.Event;
+
+public class TestDlmsStreamParser {
+
+	private static final byte[] DATA = new byte[] {0x01, 0x02,
+			0x02, 0x03, 0x12, 0x00, 0x0A, 0x09, 0x02, 0x41, 0x42, 0x00,
+			0x02, 0x03, 0x12, 0x00, 0x0B, 0x09, 0x02, 0x43, 0x44, 0x00};
+
+	@Test
+	void testEventsFedByteByByte() throws DlmsException {
+		DlmsStreamParser parser = new DlmsStreamParser();
+		StringBuilder events = new StringBuilder();
+		int fed = 0;
+		Event event;
+		while ((event = parser.next()) != Event.END_OF_INPUT) {
+			if (event == Event.NEED_DATA) {
+				if (fed < DATA.length) {
+					parser.feed(DATA, fed++, 1);
+				} else {
+					parser.endOfInput();
+				}
+				continue;
+			}
+			events.append(event);
+			if (event == Event.VALUE && parser.getType() == DlmsType.UINT16) {
+				events.append('=').append(parser.getLong());
+			}
+			events.append(' ');
+		}
+		assertEquals("START_ARRAY START_STRUCTURE VALUE=10 VALUE NULL_DATA END START_STRUCTURE VALUE=11 VALUE NULL_DATA END END ",
+				events.toString());
+	}
+
+	@Test
+	void testSkipStructure() throws DlmsException {
+		DlmsStreamParser parser = new DlmsStreamParser();
+		parser.feed(DATA, 0, 8);
+		assertEquals(Event.START_ARRAY, parser.next());
+		assertEquals(2, parser.getSize());
+		assertEquals(Event.START_STRUCTURE, parser.next());
+		parser.skip();
+		assertEquals(Event.NEED_DATA, parser.next());
+		parser.feed(DATA, 8, DATA.length - 8);
+		assertEquals(Event.START_STRUCTURE, parser.next());
+		assertEquals(Event.VALUE, parser.next());
+		assertEquals(11, parser.getLong());
+		assertEquals(Event.VALUE, parser.next());
+		assertArrayEquals(new byte[] {0x43, 0x44}, parser.getBytes());
+		assertEquals(Event.NULL_DATA, parser.next());
+		assertEquals(Event.END, parser.next());
+		assertEquals(Event.END, parser.next());
+		parser.endOfInput();
+		assertEquals(Event.END_OF_INPUT, parser.next());
+	}
+
+	@Test
+	void testNextElement() throws DlmsException {
+		DlmsStreamParser parser = new DlmsStreamParser();
+		parser.feed(DATA, 0, 8);
+		assertEquals(Event.START_ARRAY, parser.next());
+		assertNull(parser.nextElement());
+		parser.feed(DATA, 8, 10);
+		assertArrayEquals(Arrays.copyOfRange(DATA, 2, 12), parser.nextElement());
+		assertNull(parser.nextElement());
+		parser.feed(DATA, 18, DATA.length - 18);
+		assertArrayEquals(Arrays.copyOfRange(DATA, 12, 22), parser.nextElement());
+		//the end of the array must be parsed first
+		assertThrows(IllegalStateException.class, () -> parser.nextElement());
+		assertEquals(Event.END, parser.next());
+	}
+
+	@Test
+	void testInvalidLength() throws DlmsException {
+		DlmsStreamParser parser = new DlmsStreamParser();
+		parser.feed(new byte[] {0x01, (byte)0x80});
+		assertThrows(DlmsException.class, () -> parser.next());
+	}
+}
@@ -1,6 +1,10 @@
 package yadi.dlms;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 import org.junit.jupiter.api.Test;
 
@@ -59,4 +63,45 @@ public class TestDlmsType {
 		assertEquals(5, DlmsType.DATE.size);
 		assertEquals(4, DlmsType.TIME.size);
 	}
+	
+	@Test
+	void testDlmsTypeFromTag() throws DlmsException {
+		for (DlmsType type : DlmsType.values()) {
+			if (type.tag != DlmsType.OCTET_STRING.tag) {
+				assertEquals(type, DlmsType.fromTag(type.tag));
+				assertEquals(type.isVariableSize() ? -1 : type.size, DlmsType.fixedSize(type.tag));
+			}
+		}
+		assertEquals(DlmsType.OCTET_STRING, DlmsType.fromTag(9));
+		assertEquals(DlmsType.OCTET_STRING_12, DlmsType.fromOctetString(12));
+		assertEquals(DlmsType.OCTET_STRING, DlmsType.fromOctetString(6));
+		assertEquals(0, DlmsType.fixedSize(0));
+		assertEquals(DlmsType.NULL_DATA, DlmsType.fromTag(0));
+		assertEquals(3, DlmsType.BITSTRING.contentsSize(17));
+		assertThrows(DlmsException.class, () -> DlmsType.fromTag(0xFF));
+		assertThrows(DlmsException.class, () -> DlmsType.fromTag((byte)0x89));
+	}
+	
+	@Test
+	void testLength() {
+		assertEquals(0x7F, DlmsType.readLength(new byte[] {0x7F}, 0));
+		assertEquals(0x80, DlmsType.readLength(new byte[] {0x09, (byte)0x81, (byte)0x80}, 1));
+		assertEquals(0x010203, DlmsType.readLength(ByteBuffer.wrap(new byte[] {(byte)0x83, 0x01, 0x02, 0x03})));
+		assertEquals(4, DlmsType.lengthSize(0x83));
+		//0x80 is the indefinite length of BER, not a valid A-XDR length
+		assertThrows(IllegalArgumentException.class, () -> DlmsType.lengthSize(0x80));
+		assertThrows(IllegalArgumentException.class, () -> DlmsType.readLength(new byte[] {(byte)0x80}, 0));
+		assertThrows(IllegalArgumentException.class, () -> DlmsType.readLength(ByteBuffer.wrap(new byte[] {(byte)0x85, 0, 0, 0, 0, 1})));
+		assertThrows(IllegalArgumentException.class, () -> DlmsType.readLength(new byte[] {(byte)0x84, (byte)0x80, 0, 0, 0}, 0));
+		assertThrows(BufferUnderflowException.class, () -> DlmsType.readLength(ByteBuffer.wrap(new byte[] {(byte)0x82, 0x01})));
+	}
+	
+	@Test
+	void testSkip() {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[] {0x01, 0x02, 0x02, 0x02, 0x12, 0x00, 0x01, 0x00, 0x04, 0x09, 0x00, 0x09, 0x01, 0x41, 0x11});
+		DlmsType.skip(buffer);
+		assertEquals(12, buffer.position());
+		assertThrows(BufferUnderflowException.class, () -> DlmsType.skip(ByteBuffer.wrap(new byte[] {0x09, 0x03, 0x41})));
+		assertThrows(IllegalArgumentException.class, () -> DlmsType.skip(ByteBuffer.wrap(new byte[] {(byte)0xFF})));
+	}
 }
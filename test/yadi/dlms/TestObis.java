@@ -0,0 +1,44 @@
+package yadi.dlms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.cosem.CosemParser;
+import yadi.dlms.cosem.CosemSerializer;
+
+public class TestObis {
+
+	@Test
+	void testObisRepresentations() {
+		Obis obis = new Obis("1.0.99.1.0.255");
+		assertEquals(0x0100630100FFL, obis.toLong());
+		assertArrayEquals(new byte[] {1, 0, 99, 1, 0, (byte)0xFF}, obis.getValue());
+		assertEquals("1.0.99.1.0.255", obis.toString());
+		assertEquals(99, obis.getGroup(2));
+		assertEquals(obis, new Obis(1, 0, 99, 1, 0, 255));
+		assertEquals(obis.hashCode(), new Obis(new byte[] {1, 0, 99, 1, 0, (byte)0xFF}).hashCode());
+		assertNotEquals(obis, new Obis("1.0.99.2.0.255"));
+		assertSame(Obis.valueOf("0.0.1.0.0.255"), Obis.valueOf(0x0000010000FFL));
+	}
+
+	@Test
+	void testInvalidObis() {
+		assertThrows(IllegalArgumentException.class, () -> new Obis("1.0.99.1.0"));
+		assertThrows(IllegalArgumentException.class, () -> new Obis("1.0.99.1.0.255.1"));
+		assertThrows(IllegalArgumentException.class, () -> new Obis("1.0.99..0.255"));
+		assertThrows(IllegalArgumentException.class, () -> new Obis("1.0.256.1.0.255"));
+		assertThrows(IllegalArgumentException.class, () -> new Obis("1.0.a.1.0.255"));
+	}
+
+	@Test
+	void testObisCodec() {
+		byte[] data = new CosemSerializer().obis(Obis.valueOf("0.0.1.0.0.255")).serialize();
+		assertArrayEquals(new byte[] {0x09, 0x06, 0x00, 0x00, 0x01, 0x00, 0x00, (byte)0xFF}, data);
+		assertSame(Obis.valueOf("0.0.1.0.0.255"), CosemParser.make(data).obis());
+	}
+}
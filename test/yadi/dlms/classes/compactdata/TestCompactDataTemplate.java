@@ -0,0 +1,61 @@
+package yadi.dlms.classes.compactdata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.DlmsType;
+import yadi.dlms.Obis;
+import yadi.dlms.ScriptedLink;
+import yadi.dlms.cosem.CosemParameters;
+
+public class TestCompactDataTemplate {
+
+	@Test
+	void testDecode() {
+		//structure {uint32, int16, octet-string, array[2] of float32}
+		byte[] description = {0x02, 0x04, 0x06, 0x10, 0x09, 0x01, 0x00, 0x02, 0x17};
+		CompactDataTemplate template = new CompactDataTemplate(7, description);
+		assertEquals(5, template.getFieldCount());
+		assertEquals(DlmsType.FLOAT32, template.getType(4));
+
+		byte[] buffer = {0x07, 0x00, 0x01, 0x00, 0x00, (byte)0xFF, (byte)0xFE, 0x02, 0x41, 0x42,
+				0x43, 0x66, 0x00, 0x00, (byte)0xC0, 0x00, 0x00, 0x00};
+		CompactDataTemplate.Record record = template.newRecord();
+		assertSame(record, template.decode(buffer, record));
+		assertEquals(65536, record.getLong(0));
+		assertEquals(-2, record.getLong(1));
+		assertArrayEquals(new byte[] {0x41, 0x42}, record.getBytes(2));
+		assertEquals(8, record.getOffset(2));
+		assertEquals(230.0, record.getDouble(3));
+		assertEquals(-2.0, record.getDouble(4));
+		assertThrows(IllegalArgumentException.class, () -> record.getLong(2));
+
+		buffer[0] = 0x08;
+		assertThrows(IllegalArgumentException.class, () -> template.decode(buffer, record));
+		assertThrows(IllegalArgumentException.class, () -> template.decode(new byte[] {0x07, 0x00}, record));
+		assertThrows(IllegalArgumentException.class, () -> new CompactDataTemplate(1, new byte[] {0x02, 0x02, 0x06}));
+	}
+
+	@Test
+	void testReadEmptyBuffer() throws Exception {
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = link.associate(new CosemParameters(), new byte[] {0x00, 0x00, 0x18}, 256);
+		CompactData compactData = new CompactData(Obis.valueOf("0.0.66.0.1.255"));
+		//after a reset the compact buffer is an empty octet-string, the template isn't needed
+		link.respond(new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00, 0x09, 0x00});
+		assertNull(compactData.read(dlms, null, null));
+		assertEquals(1, link.getRequests().size());
+
+		link.respond(new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00, 0x09, 0x03, 0x07, 0x00, 0x2A},
+				new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00, 0x11, 0x07},
+				new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00, 0x09, 0x01, 0x12});
+		assertEquals(42, compactData.read(dlms, null, null).getLong(0));
+		assertEquals(4, link.getRequests().size());
+	}
+}
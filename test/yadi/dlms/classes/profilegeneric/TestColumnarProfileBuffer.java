@@ -0,0 +1,167 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsType;
+import yadi.dlms.Obis;
+import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.cosem.CosemSerializer;
+
+public class TestColumnarProfileBuffer {
+
+	private static final CaptureObject[] CAPTURE_OBJECTS = {
+			new CaptureObject(8, Obis.valueOf("0.0.1.0.0.255"), 2, 0),
+			new CaptureObject(3, Obis.valueOf("1.0.1.8.0.255"), 2, 0),
+			new CaptureObject(3, Obis.valueOf("1.0.32.7.0.255"), 2, 0),
+			new CaptureObject(1, Obis.valueOf("0.0.96.1.0.255"), 2, 0)
+	};
+
+	@Test
+	void testParse() {
+		int rows = 100;
+		LocalDateTime start = LocalDateTime.of(2024, 2, 28, 23, 0);
+		CosemSerializer serializer = new CosemSerializer().array(rows);
+		for (int i = 0; i < rows; ++i) {
+			serializer.structure(4)
+					.datetime(new CosemDateTime(start.plusMinutes(15 * i)))
+					.uint32(0xF0000000 + i);
+			if (i % 10 == 0) {
+				serializer.rawByte(0);
+			} else {
+				serializer.float32(230.5f);
+			}
+			serializer.string("m"+i);
+		}
+
+		ColumnarProfileBuffer buffer = ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, serializer.serialize());
+		assertEquals(rows, buffer.getRowCount());
+		assertEquals(4, buffer.getColumnCount());
+		assertEquals(ColumnarProfileBuffer.ColumnType.DATETIME, buffer.getColumnType(0));
+		assertEquals(ColumnarProfileBuffer.ColumnType.INTEGER, buffer.getColumnType(1));
+		assertEquals(ColumnarProfileBuffer.ColumnType.FLOAT, buffer.getColumnType(2));
+		assertEquals(ColumnarProfileBuffer.ColumnType.BYTES, buffer.getColumnType(3));
+		assertEquals(2, buffer.findColumn(3, Obis.valueOf("1.0.32.7.0.255"), 2));
+		assertEquals(-1, buffer.findColumn(3, Obis.valueOf("1.0.32.7.0.255"), 3));
+
+		assertEquals(LocalDateTime.of(2024, 2, 29, 0, 15), buffer.getLocalDateTime(5, 0));
+		assertEquals(0xF0000005L, buffer.getLong(5, 1));
+		assertTrue(buffer.isNull(10, 2));
+		assertFalse(buffer.isNull(11, 2));
+		assertEquals(230.5, buffer.getDouble(11, 2));
+		assertArrayEquals("m99".getBytes(), buffer.getBytes(99, 3));
+
+		long[] timestamps = buffer.getTimestamps();
+		assertEquals(rows, timestamps.length);
+		assertEquals(15 * 60 * 1000L, timestamps[1] - timestamps[0]);
+		assertEquals(0xF0000000L + 42, buffer.getDoubleColumn(1)[42]);
+		assertThrows(IllegalArgumentException.class, () -> buffer.getLong(0, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> buffer.getLong(rows, 1));
+	}
+
+	@Test
+	void testExpandNullData() {
+		CosemSerializer serializer = new CosemSerializer().array(4)
+				.structure(4).datetime(new CosemDateTime(LocalDateTime.of(2024, 3, 1, 0, 0))).uint32(100).float32(230f).string("a")
+				.structure(4).rawByte(0).uint32(110).rawByte(0).rawByte(0)
+				.structure(4).rawByte(0).rawByte(0).float32(231f).string("b")
+				.structure(4).rawByte(0).uint32(130).rawByte(0).rawByte(0);
+
+		ColumnarProfileBuffer buffer = ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, serializer.serialize(), 900);
+		assertEquals(LocalDateTime.of(2024, 3, 1, 0, 45), buffer.getLocalDateTime(3, 0));
+		assertArrayEquals(new long[] {100, 110, 110, 130}, buffer.getLongColumn(1));
+		assertArrayEquals(new double[] {230, 230, 231, 231}, buffer.getDoubleColumn(2));
+		assertArrayEquals("b".getBytes(), buffer.getBytes(3, 3));
+		assertFalse(buffer.isNull(1, 0));
+
+		ColumnarProfileBuffer compressed = ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, serializer.serialize());
+		assertTrue(compressed.isNull(1, 0));
+		assertTrue(compressed.isNull(2, 1));
+	}
+
+	@Test
+	void testParseParallel() {
+		int rows = 10000;
+		CosemSerializer serializer = new CosemSerializer().array(rows);
+		serializer.structure(4).datetime(new CosemDateTime(LocalDateTime.of(2024, 1, 1, 0, 0))).uint32(0).float32(0.5f).string("a");
+		for (int i = 1; i < rows; ++i) {
+			serializer.structure(4).rawByte(0).uint32(i);
+			if (i % 7 == 0) {
+				serializer.float32(i);
+			} else {
+				serializer.rawByte(0);
+			}
+			serializer.rawByte(0);
+		}
+		byte[] data = serializer.serialize();
+
+		ColumnarProfileBuffer sequential = ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, data, 60);
+		ColumnarProfileBuffer parallel = ColumnarProfileBuffer.parseParallel(CAPTURE_OBJECTS, data, 60, ForkJoinPool.commonPool());
+		assertEquals(rows, parallel.getRowCount());
+		assertArrayEquals(sequential.getTimestamps(), parallel.getTimestamps());
+		assertArrayEquals(sequential.getLongColumn(1), parallel.getLongColumn(1));
+		assertArrayEquals(sequential.getDoubleColumn(2), parallel.getDoubleColumn(2));
+		assertArrayEquals("a".getBytes(), parallel.getBytes(rows - 1, 3));
+		assertTrue(ColumnarProfileBuffer.parseParallel(CAPTURE_OBJECTS, data, ForkJoinPool.commonPool()).isNull(5000, 0));
+	}
+
+	@Test
+	void testTwelveByteStrings() {
+		byte[] serialNumber = "SN0123456789".getBytes();
+		CosemDateTime captureTime = new CosemDateTime(LocalDateTime.of(2024, 3, 1, 12, 30));
+		byte[] data = new CosemSerializer().array(1)
+				.structure(4).datetime(captureTime).uint32(1).float32(230f).octetString(serialNumber)
+				.serialize();
+
+		ColumnarProfileBuffer buffer = ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, data);
+		assertEquals(ColumnarProfileBuffer.ColumnType.DATETIME, buffer.getColumnType(0));
+		assertEquals(LocalDateTime.of(2024, 3, 1, 12, 30), buffer.getLocalDateTime(0, 0));
+		assertEquals(ColumnarProfileBuffer.ColumnType.BYTES, buffer.getColumnType(3));
+		assertArrayEquals(serialNumber, buffer.getBytes(0, 3));
+
+		ColumnarProfileBuffer typed = new ColumnarProfileBuffer(CAPTURE_OBJECTS).dateTimeColumn(3);
+		typed.appendAll(ByteBuffer.wrap(new CosemSerializer().array(1)
+				.structure(4).datetime(captureTime).uint32(1).float32(230f).datetime(captureTime)
+				.serialize()));
+		assertEquals(LocalDateTime.of(2024, 3, 1, 12, 30), typed.getLocalDateTime(0, 3));
+	}
+
+	@Test
+	void testDateAndTimeCells() {
+		byte[] date = {0x07, (byte)0xE8, 0x03, 0x01, 0x05};
+		byte[] time = {0x0C, 0x1E, 0x00, 0x00};
+		CosemDateTime captureTime = new CosemDateTime(LocalDateTime.of(2024, 3, 1, 12, 30));
+		byte[] data = new CosemSerializer().array(1)
+				.structure(4).datetime(captureTime).uint32(1)
+				.rawByte(DlmsType.TIME.tag).rawBuffer(time).rawByte(DlmsType.DATE.tag).rawBuffer(date)
+				.serialize();
+
+		ColumnarProfileBuffer buffer = ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, data);
+		assertEquals(ColumnarProfileBuffer.ColumnType.BYTES, buffer.getColumnType(2));
+		assertArrayEquals(time, buffer.getBytes(0, 2));
+		assertEquals(ColumnarProfileBuffer.ColumnType.BYTES, buffer.getColumnType(3));
+		assertArrayEquals(date, buffer.getBytes(0, 3));
+	}
+
+	@Test
+	void testInvalidEntries() {
+		byte[] wrongSize = new CosemSerializer().array(1).structure(2).uint8(1).uint8(2).serialize();
+		assertThrows(IllegalArgumentException.class, () -> ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, wrongSize));
+		byte[] truncated = new CosemSerializer().array(2).structure(4).uint8(1).serialize();
+		assertThrows(IllegalArgumentException.class, () -> ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, truncated));
+		//the length of the array doesn't fit the buffer
+		ColumnarProfileBuffer buffer = new ColumnarProfileBuffer(CAPTURE_OBJECTS);
+		byte[] oversized = {0x01, (byte)0x84, 0x7F, (byte)0xFF, (byte)0xFF, (byte)0xFF};
+		assertThrows(IllegalArgumentException.class, () -> buffer.appendAll(ByteBuffer.wrap(oversized)));
+		assertEquals(0, buffer.getRowCount());
+	}
+}
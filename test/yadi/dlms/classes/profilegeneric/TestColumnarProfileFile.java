@@ -0,0 +1,120 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import yadi.dlms.Obis;
+import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.cosem.CosemSerializer;
+
+public class TestColumnarProfileFile {
+
+	private static final CaptureObject[] CAPTURE_OBJECTS = {
+			new CaptureObject(8, Obis.valueOf("0.0.1.0.0.255"), 2, 0),
+			new CaptureObject(3, Obis.valueOf("1.0.1.8.0.255"), 2, 0),
+			new CaptureObject(3, Obis.valueOf("1.0.32.7.0.255"), 2, 0),
+			new CaptureObject(1, Obis.valueOf("0.0.96.1.0.255"), 2, 0)
+	};
+
+	private static ColumnarProfileBuffer makeBuffer(int firstRow, int rows) {
+		CosemSerializer serializer = new CosemSerializer().array(rows);
+		for (int i = firstRow; i < firstRow + rows; ++i) {
+			serializer.structure(4)
+					.datetime(new CosemDateTime(LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(15 * i)))
+					.uint32(i);
+			if (i % 3 == 0) {
+				serializer.rawByte(0);
+			} else {
+				serializer.float64(i / 2.0);
+			}
+			serializer.string("row"+i);
+		}
+		return ColumnarProfileBuffer.parse(CAPTURE_OBJECTS, serializer.serialize());
+	}
+
+	@Test
+	void testWriteAndRead(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("profile.ypc");
+		try (ColumnarProfileFile.Writer writer = ColumnarProfileFile.create(file, CAPTURE_OBJECTS)) {
+			writer.append(makeBuffer(0, 100));
+		}
+		try (ColumnarProfileFile.Writer writer = ColumnarProfileFile.append(file)) {
+			writer.append(makeBuffer(100, 0));
+			writer.append(makeBuffer(100, 50));
+		}
+
+		try (ColumnarProfileFile.Reader reader = ColumnarProfileFile.open(file)) {
+			assertEquals(150, reader.getRowCount());
+			assertEquals(3, reader.getChunkCount());
+			assertEquals(CAPTURE_OBJECTS[2].getObis(), reader.getCaptureObjects()[2].getObis());
+			ColumnarProfileBuffer expected = makeBuffer(0, 150);
+			for (int row = 0; row < 150; ++row) {
+				assertEquals(expected.getLocalMillis(row, 0), reader.getLocalMillis(row, 0));
+				assertEquals(row, reader.getLong(row, 1));
+				assertEquals(row % 3 == 0, reader.isNull(row, 2));
+				if (row % 3 != 0) {
+					assertEquals(row / 2.0, reader.getDouble(row, 2));
+				}
+				assertArrayEquals(("row"+row).getBytes(), reader.getBytes(row, 3));
+			}
+			ColumnarProfileFile.Chunk chunk = reader.getChunk(2);
+			assertEquals(50, chunk.getRowCount());
+			assertEquals(0xFF, chunk.getClockStatus(0, 0));
+			assertFalse(chunk.isNull(1, 2));
+			assertTrue(chunk.isNull(2, 2));
+		}
+	}
+
+	@Test
+	void testPartiallyWrittenChunk(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("profile.ypc");
+		try (ColumnarProfileFile.Writer writer = ColumnarProfileFile.create(file, CAPTURE_OBJECTS)) {
+			writer.append(makeBuffer(0, 100));
+		}
+		long committed = Files.size(file);
+		try (ColumnarProfileFile.Writer writer = ColumnarProfileFile.append(file)) {
+			writer.append(makeBuffer(100, 50));
+		}
+		//a failure before the size was written leaves the contents of the chunk without its commit marker
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4), committed);
+		}
+		try (ColumnarProfileFile.Reader reader = ColumnarProfileFile.open(file)) {
+			assertEquals(100, reader.getRowCount());
+			assertEquals(1, reader.getChunkCount());
+		}
+
+		//the next chunk replaces it, even if it's smaller
+		try (ColumnarProfileFile.Writer writer = ColumnarProfileFile.append(file)) {
+			writer.append(makeBuffer(100, 10));
+		}
+		try (ColumnarProfileFile.Reader reader = ColumnarProfileFile.open(file)) {
+			assertEquals(110, reader.getRowCount());
+			assertEquals(2, reader.getChunkCount());
+			assertEquals(109, reader.getLong(109, 1));
+			assertArrayEquals("row109".getBytes(), reader.getBytes(109, 3));
+		}
+
+		//a chunk cut short by the end of the file is ignored as well
+		long size = Files.size(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 20);
+		}
+		try (ColumnarProfileFile.Reader reader = ColumnarProfileFile.open(file)) {
+			assertEquals(100, reader.getRowCount());
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import yadi.dlms.Obis;
+
+public class TestFileProfileCheckpointStore {
+
+	@Test
+	void testSaveAndLoad(@TempDir Path dir) throws IOException {
+		ProfileCheckpointStore store = new FileProfileCheckpointStore(dir);
+		Obis profile = Obis.valueOf("1.0.99.1.0.255");
+		assertNull(store.load("meter/1", profile));
+		
+		store.save(new ProfileCheckpoint("meter/1", profile, 10, new byte[] {0x12, 0x00, 0x01}));
+		store.save(new ProfileCheckpoint("meter/1", profile, 11, new byte[] {0x12, 0x00, 0x02}));
+		ProfileCheckpoint checkpoint = store.load("meter/1", profile);
+		assertEquals(11, checkpoint.getEntryIndex());
+		assertArrayEquals(new byte[] {0x12, 0x00, 0x02}, checkpoint.getLastEntry());
+		assertNull(store.load("meter/1", Obis.valueOf("1.0.99.2.0.255")));
+		try (Stream<Path> files = Files.list(dir)) {
+			assertEquals(1, files.count());
+		}
+		
+		//ids that differ only in characters not allowed in file names don't share a checkpoint
+		assertNull(store.load("meter_1", profile));
+		store.save(new ProfileCheckpoint("meter_1", profile, 5, new byte[] {0x12, 0x00, 0x05}, 1000));
+		assertEquals(11, store.load("meter/1", profile).getEntryIndex());
+		assertEquals(1000, store.load("meter_1", profile).getTime());
+	}
+}
@@ -0,0 +1,52 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.Obis;
+import yadi.dlms.ScriptedLink;
+import yadi.dlms.cosem.CosemParser;
+import yadi.dlms.cosem.CosemSerializer;
+
+public class TestProfileBufferReader {
+
+	private static byte[] dataBlock(int blockNum, boolean last, byte[] data, int from, int to) {
+		byte[] header = {(byte)0xC4, 0x02, (byte)0xC1, (byte)(last ? 1 : 0), 0, 0, 0, (byte)blockNum, 0, (byte)(to - from)};
+		byte[] block = Arrays.copyOf(header, header.length + to - from);
+		System.arraycopy(data, from, block, header.length, to - from);
+		return block;
+	}
+
+	@Test
+	void testEntriesSplitBetweenBlocks() throws Exception {
+		CosemSerializer serializer = new CosemSerializer().array(3);
+		for (int i = 0; i < 3; ++i) {
+			serializer.structure(2).uint16(i).octetString(new byte[] {1, 2, 3, 4, (byte)i});
+		}
+		byte[] data = serializer.serialize();
+		ScriptedLink link = new ScriptedLink().respond(
+				dataBlock(1, false, data, 0, 14),
+				dataBlock(2, false, data, 14, 20),
+				dataBlock(3, true, data, 20, data.length));
+
+		ProfileGeneric profile = new ProfileGeneric(Obis.valueOf("1.0.99.1.0.255"));
+		try (ProfileBufferReader reader = profile.readBuffer(new DlmsClient(link), null)) {
+			ProfileGenericEntry entry = reader.next();
+			assertEquals(3, reader.getEntryCount());
+			assertEquals(1, link.getRequests().size());
+			assertEquals(0, CosemParser.make(entry.getItems().get(0).getData()).uint16());
+			for (int i = 1; i < 3; ++i) {
+				entry = reader.next();
+				assertArrayEquals(new byte[] {1, 2, 3, 4, (byte)i}, CosemParser.make(entry.getItems().get(1).getData()).octetString());
+			}
+			assertEquals(3, link.getRequests().size());
+			assertNull(reader.next());
+		}
+	}
+}
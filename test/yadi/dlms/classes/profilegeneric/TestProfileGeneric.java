@@ -0,0 +1,56 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.Obis;
+import yadi.dlms.ScriptedLink;
+import yadi.dlms.classes.clock.CosemDateTime;
+import yadi.dlms.cosem.CosemSerializer;
+
+public class TestProfileGeneric {
+
+	private static final byte[] GET_BUFFER = {(byte)0xC0, 0x01, (byte)0xC1, 0x00, 0x07, 0x01, 0x00, 0x63, 0x01, 0x00, (byte)0xFF, 0x02};
+	private static final byte[] EMPTY_BUFFER = {(byte)0xC4, 0x01, (byte)0xC1, 0x00, 0x01, 0x00};
+
+	private static byte[] accessSelection(byte[] request) {
+		assertArrayEquals(GET_BUFFER, Arrays.copyOf(request, GET_BUFFER.length));
+		return Arrays.copyOfRange(request, GET_BUFFER.length, request.length);
+	}
+
+	@Test
+	void testSelectiveAccess() throws Exception {
+		ScriptedLink link = new ScriptedLink();
+		DlmsClient dlms = new DlmsClient(link);
+		ProfileGeneric profile = new ProfileGeneric(Obis.valueOf("1.0.99.1.0.255"));
+		link.respond(EMPTY_BUFFER, EMPTY_BUFFER, EMPTY_BUFFER, EMPTY_BUFFER);
+
+		assertEquals(0, profile.getBuffer(dlms, null).size());
+		assertArrayEquals(new byte[] {0x00}, accessSelection(link.getRequest(0)));
+
+		profile.getBuffer(dlms, null, 2, 5);
+		assertArrayEquals(new byte[] {0x01, 0x02, 0x02, 0x04, 0x06, 0x00, 0x00, 0x00, 0x02, 0x06, 0x00, 0x00, 0x00, 0x05,
+				0x12, 0x00, 0x01, 0x12, 0x00, 0x00}, accessSelection(link.getRequest(1)));
+
+		profile.getBuffer(dlms, null, 1, 0, 2, 3);
+		assertArrayEquals(new byte[] {0x01, 0x02, 0x02, 0x04, 0x06, 0x00, 0x00, 0x00, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00,
+				0x12, 0x00, 0x02, 0x12, 0x00, 0x03}, accessSelection(link.getRequest(2)));
+
+		CosemDateTime from = new CosemDateTime(LocalDateTime.of(2024, 1, 1, 0, 0));
+		CosemDateTime to = new CosemDateTime(LocalDateTime.of(2024, 1, 2, 0, 0));
+		profile.getBuffer(dlms, null, from, to);
+		byte[] selection = accessSelection(link.getRequest(3));
+		//restricting object: the clock time, 2/0.0.1.0.0.255/8
+		byte[] header = {0x01, 0x01, 0x02, 0x04, 0x02, 0x04, 0x12, 0x00, 0x08, 0x09, 0x06, 0x00, 0x00, 0x01, 0x00, 0x00, (byte)0xFF,
+				0x0F, 0x02, 0x12, 0x00, 0x00};
+		assertArrayEquals(header, Arrays.copyOf(selection, header.length));
+		assertArrayEquals(new CosemSerializer().datetime(from).datetime(to).array(0).serialize(),
+				Arrays.copyOfRange(selection, header.length, selection.length));
+	}
+}
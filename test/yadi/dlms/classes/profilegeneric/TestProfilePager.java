@@ -0,0 +1,58 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.Obis;
+import yadi.dlms.ScriptedLink;
+import yadi.dlms.cosem.CosemSerializer;
+import yadi.dlms.linklayer.LinkLayerException;
+
+public class TestProfilePager {
+
+	private static byte[] page(int from, int to) {
+		CosemSerializer serializer = new CosemSerializer().rawBuffer(new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00}).array(to - from + 1);
+		for (int i = from; i <= to; ++i) {
+			serializer.structure(1).uint16(i);
+		}
+		return serializer.serialize();
+	}
+
+	private static byte[] selectedEntries(byte[] request) {
+		//from_entry and to_entry of the entry descriptor at the end of the request
+		return Arrays.copyOfRange(request, request.length - 16, request.length - 6);
+	}
+
+	@Test
+	void testResumeAfterFailure() throws Exception {
+		ScriptedLink link = new ScriptedLink().respond(page(1, 2)).fail().respond(page(3, 4), page(5, 5));
+		List<Integer> received = new ArrayList<>();
+		ProfilePager.PageListener listener = (from, to, entries) -> {
+			for (ProfileGenericEntry entry : entries.getEntries()) {
+				received.add(entry.getItems().get(0).getData()[2] & 0xFF);
+			}
+		};
+
+		ProfilePager pager = new ProfilePager(Obis.valueOf("1.0.99.1.0.255"), 1, 5).setPageSize(2);
+		DlmsClient dlms = new DlmsClient(link);
+		assertThrows(LinkLayerException.class, () -> pager.read(dlms, null, listener));
+		assertEquals(3, pager.getNextEntry());
+		assertFalse(pager.isFinished());
+		pager.read(dlms, null, listener);
+		assertTrue(pager.isFinished());
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), received);
+		assertEquals(4, link.getRequests().size());
+		assertArrayEquals(new byte[] {0x06, 0, 0, 0, 3, 0x06, 0, 0, 0, 4}, selectedEntries(link.getRequest(2)));
+		assertArrayEquals(new byte[] {0x06, 0, 0, 0, 5, 0x06, 0, 0, 0, 5}, selectedEntries(link.getRequest(3)));
+	}
+}
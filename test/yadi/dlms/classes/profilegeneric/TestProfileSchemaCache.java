@@ -0,0 +1,93 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import yadi.dlms.Obis;
+import yadi.dlms.classes.register.CosemScalarAndUnit;
+import yadi.dlms.classes.register.CosemUnit;
+
+public class TestProfileSchemaCache {
+
+	@Test
+	void testPersistence(@TempDir Path dir) throws IOException {
+		Obis profile = Obis.valueOf("1.0.99.1.0.255");
+		Obis energy = Obis.valueOf("1.0.1.8.0.255");
+		CaptureObject[] captureObjects = {
+				new CaptureObject(8, Obis.valueOf("0.0.1.0.0.255"), 2, 0),
+				new CaptureObject(3, energy, 2, 0)
+		};
+		ProfileSchemaCache cache = new ProfileSchemaCache(dir, 0);
+		cache.putCaptureObjects("ACME/E350/1.2", profile, captureObjects);
+		cache.putScalerUnit("ACME/E350/1.2", energy, new CosemScalarAndUnit(-3, CosemUnit.WH));
+
+		ProfileSchemaCache restarted = new ProfileSchemaCache(dir, 0);
+		CaptureObject[] loaded = restarted.getCaptureObjects("ACME/E350/1.2", profile);
+		assertEquals(2, loaded.length);
+		assertEquals(energy, loaded[1].getObis());
+		assertEquals(3, loaded[1].getClassId());
+		assertEquals(-3, restarted.getScalerUnit("ACME/E350/1.2", energy).getScalar());
+		assertEquals(CosemUnit.WH, restarted.getScalerUnit("ACME/E350/1.2", energy).getUnit());
+		assertNull(restarted.getCaptureObjects("ACME/E350/1.3", profile));
+
+		restarted.invalidateCaptureObjects("ACME/E350/1.2", profile);
+		assertNull(new ProfileSchemaCache(dir, 0).getCaptureObjects("ACME/E350/1.2", profile));
+		assertEquals(CosemUnit.WH, new ProfileSchemaCache(dir, 0).getScalerUnit("ACME/E350/1.2", energy).getUnit());
+	}
+
+	@Test
+	void testModelNames(@TempDir Path dir) throws IOException {
+		Obis energy = Obis.valueOf("1.0.1.8.0.255");
+		ProfileSchemaCache cache = new ProfileSchemaCache(dir, 0);
+		cache.putScalerUnit("A.1", energy, new CosemScalarAndUnit(-3, CosemUnit.WH));
+		cache.putScalerUnit("A_1", energy, new CosemScalarAndUnit(0, CosemUnit.VARH));
+
+		ProfileSchemaCache restarted = new ProfileSchemaCache(dir, 0);
+		assertEquals(CosemUnit.WH, restarted.getScalerUnit("A.1", energy).getUnit());
+		assertEquals(CosemUnit.VARH, restarted.getScalerUnit("A_1", energy).getUnit());
+
+		//a file renamed to another model is rejected
+		Path file = dir.resolve(PropertiesFile.encodeName("A.1")+".schema");
+		Files.copy(file, dir.resolve(PropertiesFile.encodeName("B")+".schema"), StandardCopyOption.REPLACE_EXISTING);
+		assertThrows(IOException.class, () -> new ProfileSchemaCache(dir, 0).getScalerUnit("B", energy));
+	}
+
+	@Test
+	void testConcurrentSaves(@TempDir Path dir) throws Exception {
+		ProfileSchemaCache cache = new ProfileSchemaCache(dir, 0);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 64; ++i) {
+				Obis obis = Obis.valueOf("1.0.1.8."+i+".255");
+				futures.add(executor.submit(() -> {
+					cache.putScalerUnit("model", obis, new CosemScalarAndUnit(-3, CosemUnit.WH));
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		ProfileSchemaCache restarted = new ProfileSchemaCache(dir, 0);
+		for (int i = 0; i < 64; ++i) {
+			assertEquals(CosemUnit.WH, restarted.getScalerUnit("model", Obis.valueOf("1.0.1.8."+i+".255")).getUnit());
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package yadi.dlms.classes.profilegeneric;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsClient;
+import yadi.dlms.Obis;
+import yadi.dlms.ScriptedLink;
+import yadi.dlms.cosem.CosemParser;
+import yadi.dlms.cosem.CosemSerializer;
+
+public class TestProfileSynchronizer {
+
+	private static final Obis PROFILE = Obis.valueOf("1.0.99.1.0.255");
+	private static final int CAPTURE_PERIOD = 900;
+
+	/**
+	 * Profile generic of a meter, whose entries hold a capture counter
+	 */
+	private static class ProfileMeter {
+		final List<Integer> buffer = new ArrayList<>();
+		final List<String> reads = new ArrayList<>();
+		final int profileEntries;
+		int captures;
+
+		ProfileMeter(int profileEntries) {
+			this.profileEntries = profileEntries;
+		}
+
+		void capture(int count) {
+			for (int i = 0; i < count; ++i) {
+				if (buffer.size() == profileEntries) {
+					buffer.remove(0);
+				}
+				buffer.add(++captures);
+			}
+		}
+
+		byte[] respond(byte[] request) {
+			CosemSerializer response = new CosemSerializer().rawBuffer(new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00});
+			switch (request[11]) {
+			case 4:
+				reads.add("capture_period");
+				return response.uint32(CAPTURE_PERIOD).serialize();
+			case 7:
+				return response.uint32(buffer.size()).serialize();
+			case 2:
+				int from = ByteBuffer.wrap(request, 17, 4).getInt();
+				int to = Math.min(buffer.size(), ByteBuffer.wrap(request, 22, 4).getInt());
+				reads.add(from+"-"+to);
+				response.array(Math.max(0, to - from + 1));
+				for (int i = from; i <= to; ++i) {
+					response.structure(1).uint32(buffer.get(i - 1));
+				}
+				return response.serialize();
+			default:
+				throw new IllegalArgumentException();
+			}
+		}
+	}
+
+	private static class MemoryStore implements ProfileCheckpointStore {
+		final Map<String, ProfileCheckpoint> checkpoints = new HashMap<>();
+
+		@Override public ProfileCheckpoint load(String meterId, Obis profile) {
+			return checkpoints.get(meterId+profile);
+		}
+
+		@Override public void save(ProfileCheckpoint checkpoint) {
+			checkpoints.put(checkpoint.getMeterId()+checkpoint.getProfile(), checkpoint);
+		}
+
+		/**
+		 * Moves the time of the checkpoint back, as if it was read some capture periods ago
+		 */
+		void age(String meterId, int capturePeriods) {
+			ProfileCheckpoint checkpoint = load(meterId, PROFILE);
+			save(new ProfileCheckpoint(meterId, PROFILE, checkpoint.getEntryIndex(), checkpoint.getLastEntry(),
+					checkpoint.getTime() - capturePeriods * CAPTURE_PERIOD * 1000L));
+		}
+	}
+
+	private final MemoryStore store = new MemoryStore();
+	private final ProfileSynchronizer sync = new ProfileSynchronizer(PROFILE, store);
+
+	private static List<Integer> values(ProfileSynchronizer.Result result) {
+		List<Integer> values = new ArrayList<>();
+		for (ProfileGenericEntry entry : result.getEntries()) {
+			values.add(CosemParser.make(entry.getItems().get(0).getData()).integer());
+		}
+		return values;
+	}
+
+	private List<Integer> fetch(DlmsClient dlms, boolean continuous) throws Exception {
+		ProfileSynchronizer.Result result = sync.fetch(dlms, null, "meter");
+		assertEquals(continuous, result.isContinuous());
+		sync.commit(result);
+		return values(result);
+	}
+
+	private static DlmsClient connect(ProfileMeter meter) {
+		return new DlmsClient(new ScriptedLink().answer(meter::respond));
+	}
+
+	@Test
+	void testFilling() throws Exception {
+		ProfileMeter meter = new ProfileMeter(100);
+		DlmsClient dlms = connect(meter);
+		meter.capture(5);
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), fetch(dlms, true));
+		meter.capture(3);
+		assertEquals(Arrays.asList(6, 7, 8), fetch(dlms, true));
+		//only the checkpoint entry is read again
+		assertEquals(Arrays.asList("1-5", "5-8"), meter.reads);
+	}
+
+	@Test
+	void testWrapped() throws Exception {
+		ProfileMeter meter = new ProfileMeter(10);
+		DlmsClient dlms = connect(meter);
+		meter.capture(10);
+		fetch(dlms, true);
+		meter.capture(3);
+		store.age("meter", 3);
+		assertEquals(Arrays.asList(11, 12, 13), fetch(dlms, true));
+		//the checkpoint entry moved from 10 to 7, the read starts one capture earlier
+		assertEquals(Arrays.asList("1-10", "capture_period", "6-10"), meter.reads);
+
+		//no capture, still full
+		meter.reads.clear();
+		assertTrue(fetch(dlms, true).isEmpty());
+		assertEquals(Arrays.asList("capture_period", "9-10"), meter.reads);
+	}
+
+	@Test
+	void testClockChange() throws Exception {
+		ProfileMeter meter = new ProfileMeter(40);
+		DlmsClient dlms = connect(meter);
+		meter.capture(40);
+		fetch(dlms, true);
+		//the clock moved forward, more entries were captured than the time elapsed predicts
+		meter.capture(5);
+		store.age("meter", 1);
+		meter.reads.clear();
+		assertEquals(Arrays.asList(41, 42, 43, 44, 45), fetch(dlms, true));
+		//the older entries are searched without reading the same entries again
+		assertEquals(Arrays.asList("capture_period", "38-40", "22-37"), meter.reads);
+	}
+
+	@Test
+	void testReset() throws Exception {
+		ProfileMeter meter = new ProfileMeter(10);
+		DlmsClient dlms = connect(meter);
+		meter.capture(6);
+		fetch(dlms, true);
+		meter.buffer.clear();
+		meter.capture(2);
+		assertEquals(Arrays.asList(7, 8), fetch(dlms, false));
+		meter.capture(1);
+		assertEquals(Arrays.asList(9), fetch(dlms, true));
+	}
+
+	@Test
+	void testOverwritten() throws Exception {
+		ProfileMeter meter = new ProfileMeter(10);
+		DlmsClient dlms = connect(meter);
+		meter.capture(10);
+		fetch(dlms, true);
+		meter.capture(15);
+		store.age("meter", 15);
+		meter.reads.clear();
+		assertEquals(Arrays.asList(16, 17, 18, 19, 20, 21, 22, 23, 24, 25), fetch(dlms, false));
+		assertEquals(Arrays.asList("capture_period", "1-10"), meter.reads);
+		assertFalse(store.load("meter", PROFILE) == null);
+	}
+}
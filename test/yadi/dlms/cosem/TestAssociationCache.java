@@ -0,0 +1,43 @@
+package yadi.dlms.cosem;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsException;
+import yadi.dlms.Obis;
+
+public class TestAssociationCache {
+
+	@Test
+	void testRestorePreEstablished() {
+		AssociationCache cache = new AssociationCache();
+		AssociationCache.Association association = AssociationCache.preEstablished(new byte[] {0x00, 0x10, 0x1D}, 512, null);
+		cache.put("meter", association);
+		assertSame(association, cache.get("meter"));
+		assertNull(cache.get("other"));
+		
+		Cosem cosem = new Cosem();
+		assertTrue(cosem.restoreAssociation(cache.get("meter")));
+		assertTrue(cosem.isAssociated());
+		assertSame(association, cosem.getAssociation());
+	}
+
+	@Test
+	void testInvalidatedByExceptionResponse() {
+		AssociationCache cache = new AssociationCache();
+		cache.put("meter", AssociationCache.preEstablished(new byte[] {0x00, 0x10, 0x1D}, 512, null));
+		Cosem cosem = new Cosem();
+		assertTrue(cosem.restoreAssociation(cache.get("meter")));
+		
+		LnDescriptor att = new LnDescriptor(3, new Obis("1.0.1.8.0.255"), 2);
+		//state-error: service-not-allowed
+		assertThrows(DlmsException.class, () -> cosem.parseGetResponse(att, new byte[] {(byte)0xD8, 0x00, 0x01}));
+		assertFalse(cosem.isAssociated());
+		assertNull(cache.get("meter"));
+	}
+}
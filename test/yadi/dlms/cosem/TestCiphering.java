@@ -0,0 +1,74 @@
+package yadi.dlms.cosem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsException;
+import yadi.dlms.Obis;
+import yadi.dlms.cosem.CosemParameters.AuthenticationType;
+import yadi.dlms.cosem.CosemParameters.CipheringType;
+import yadi.dlms.cosem.CosemParameters.SecurityType;
+
+public class TestCiphering {
+
+	private static final byte[] SERVER_SYS_TITLE = new byte[] {0x4D, 0x4D, 0x4D, 0x00, 0x00, 0x00, 0x00, 0x01};
+	private static final byte[] DEDICATED_KEY = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+	private static Cosem makeCosem(CipheringType cipheringType, byte[] conformance) {
+		CosemParameters params = new CosemParameters();
+		params.setSecurityType(SecurityType.AUTHENTICATION_ENCRYPTION);
+		params.setCipheringType(cipheringType);
+		Cosem cosem = new Cosem(params);
+		assertTrue(cosem.restoreAssociation(new AssociationCache.Association(conformance, 512, SERVER_SYS_TITLE,
+				DEDICATED_KEY, AuthenticationType.PUBLIC)));
+		return cosem;
+	}
+
+	private static byte[] serverCipher(byte[] key, byte[] apdu) throws DlmsException {
+		CosemParameters server = new CosemParameters();
+		server.setSecurityType(SecurityType.AUTHENTICATION_ENCRYPTION);
+		server.setSystemTitle(SERVER_SYS_TITLE);
+		return Security.authenticatedEncryption(server, key, apdu);
+	}
+
+	@Test
+	void testDedicatedCiphering() throws DlmsException {
+		Cosem cosem = makeCosem(CipheringType.DEDICATED, new byte[] {0x00, 0x10, 0x1D});
+		LnDescriptor att = new LnDescriptor(3, new Obis("1.0.1.8.0.255"), 2);
+		byte[] request = cosem.requestGet(att);
+		assertEquals(Constants.xDlmsApdu.DedicatedCiphering.GET_REQUEST, request[0] & 0xFF);
+
+		byte[] ciphered = serverCipher(DEDICATED_KEY, new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00, 0x12, 0x00, 0x07});
+		byte[] response = new byte[ciphered.length + 2];
+		response[0] = (byte)Constants.xDlmsApdu.DedicatedCiphering.GET_RESPONSE;
+		response[1] = (byte)ciphered.length;
+		System.arraycopy(ciphered, 0, response, 2, ciphered.length);
+		assertTrue(cosem.parseGetResponse(att, response));
+		assertArrayEquals(new byte[] {0x12, 0x00, 0x07}, att.getResponseData());
+	}
+
+	@Test
+	void testGeneralDedicatedCiphering() throws DlmsException {
+		//general protection granted
+		Cosem cosem = makeCosem(CipheringType.GENERAL_DEDICATED, new byte[] {0x40, 0x10, 0x1D});
+		LnDescriptor att = new LnDescriptor(3, new Obis("1.0.1.8.0.255"), 2);
+		byte[] request = cosem.requestGet(att);
+		assertEquals(Constants.xDlmsApdu.General.GENERAL_DED_CIPHERING, request[0] & 0xFF);
+		assertArrayEquals(cosem.getParameters().getSystemTitle(), Arrays.copyOfRange(request, 2, 10));
+
+		byte[] ciphered = serverCipher(DEDICATED_KEY, new byte[] {(byte)0xC4, 0x01, (byte)0xC1, 0x00, 0x11, 0x05});
+		byte[] response = new byte[ciphered.length + 11];
+		response[0] = (byte)Constants.xDlmsApdu.General.GENERAL_DED_CIPHERING;
+		response[1] = (byte)SERVER_SYS_TITLE.length;
+		System.arraycopy(SERVER_SYS_TITLE, 0, response, 2, SERVER_SYS_TITLE.length);
+		response[10] = (byte)ciphered.length;
+		System.arraycopy(ciphered, 0, response, 11, ciphered.length);
+		assertTrue(cosem.parseGetResponse(att, response));
+		assertArrayEquals(new byte[] {0x11, 0x05}, att.getResponseData());
+	}
+}
@@ -0,0 +1,33 @@
+package yadi.dlms.cosem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class TestCosemAddress {
+
+	@Test
+	void testEncodedDescriptor() {
+		CosemAddress address = new CosemAddress(7, "1.0.99.1.0.255", 2);
+		CosemSerializer serializer = new CosemSerializer();
+		address.writeTo(serializer);
+		assertArrayEquals(new byte[] {0x00, 0x07, 0x01, 0x00, 0x63, 0x01, 0x00, (byte)0xFF, 0x02}, serializer.serialize());
+		assertEquals(address, new CosemAddress(7, "1.0.99.1.0.255", 2));
+		assertNotEquals(address, new CosemAddress(7, "1.0.99.1.0.255", 3));
+	}
+
+	@Test
+	void testDescriptorsShareAddress() {
+		CosemAddress address = new CosemAddress(3, "1.0.1.8.0.255", 2);
+		LnDescriptor first = new LnDescriptor(address, new byte[] {1});
+		LnDescriptor second = new LnDescriptor(address);
+		assertSame(first.getAddress(), second.getAddress());
+		assertArrayEquals(new byte[] {0x00, 0x03}, second.getClassId());
+		assertArrayEquals(new byte[] {1, 0, 1, 8, 0, (byte)0xFF}, second.getObis());
+		assertEquals(2, second.getIndex());
+		assertEquals(0, second.getRequestData().length);
+	}
+}
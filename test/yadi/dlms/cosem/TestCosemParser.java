@@ -0,0 +1,67 @@
+package yadi.dlms.cosem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TestCosemParser {
+
+	@Test
+	void testParseRegion() {
+		byte[] data = new byte[] {0x7F, 0x02, 0x03, 0x10, (byte)0xFF, (byte)0x85, 0x05, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFE, 0x12, 0x01, 0x00, 0x7F};
+		CosemParser parser = new CosemParser(data, 1, data.length - 2);
+		parser.verifyStructureSize(3);
+		assertEquals(-123, parser.int16());
+		assertEquals(-2, parser.int32());
+		assertEquals(256, parser.uint16());
+		assertFalse(parser.hasRemaining());
+		assertThrows(IllegalArgumentException.class, () -> parser.uint8());
+	}
+
+	@Test
+	void testOctetStringViews() {
+		byte[] data = new byte[] {0x09, 0x03, 0x01, 0x02, 0x03, 0x09, 0x02, 0x04, 0x05};
+		CosemParser parser = CosemParser.make(data);
+		ByteBuffer view = parser.octetStringView();
+		assertEquals(3, view.remaining());
+		assertEquals(0x02, view.get(1));
+		byte[] dst = new byte[4];
+		assertEquals(2, parser.octetString(dst, 1));
+		assertArrayEquals(new byte[] {0x00, 0x04, 0x05, 0x00}, dst);
+	}
+	
+	@Test
+	void testSkipAndSelect() {
+		//array of 2 rows: {datetime, bitstring(10), uint32, structure{null-data, uint16}}
+		byte[] data = new byte[] {0x01, 0x02,
+				0x02, 0x04, 0x19, 0x07, (byte)0xE4, 0x01, 0x01, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+				0x04, 0x0A, (byte)0xFF, (byte)0xC0, 0x06, 0x00, 0x00, 0x00, 0x01, 0x02, 0x02, 0x00, 0x12, 0x00, 0x0A,
+				0x02, 0x04, 0x19, 0x07, (byte)0xE4, 0x01, 0x01, 0x03, 0x00, 0x0F, 0x00, 0x00, 0x00, 0x00, 0x00,
+				0x04, 0x0A, (byte)0xFF, (byte)0xC0, 0x06, 0x00, 0x00, 0x00, 0x02, 0x02, 0x02, 0x00, 0x12, 0x00, 0x0B};
+		CosemParser parser = CosemParser.make(data);
+		List<ByteBuffer> column = parser.select("[*][2]");
+		assertEquals(2, column.size());
+		assertEquals(1, CosemParser.make(column.get(0)).uint32());
+		assertEquals(2, CosemParser.make(column.get(1)).uint32());
+		assertFalse(parser.hasRemaining());
+		
+		parser = CosemParser.make(data);
+		parser.seek("[1][3][1]");
+		assertEquals(11, parser.uint16());
+		
+		parser = CosemParser.make(data);
+		parser.seek(0);
+		parser.skip();
+		assertArrayEquals(new byte[] {0x02, 0x04, 0x19, 0x07, (byte)0xE4, 0x01, 0x01, 0x03, 0x00, 0x0F, 0x00, 0x00, 0x00, 0x00, 0x00,
+				0x04, 0x0A, (byte)0xFF, (byte)0xC0, 0x06, 0x00, 0x00, 0x00, 0x02, 0x02, 0x02, 0x00, 0x12, 0x00, 0x0B}, parser.rawElement());
+		assertFalse(parser.hasRemaining());
+		assertThrows(IllegalArgumentException.class, () -> CosemParser.make(data).seek("[2]"));
+		assertThrows(IllegalArgumentException.class, () -> CosemParser.make(data).select("[x]"));
+	}
+}
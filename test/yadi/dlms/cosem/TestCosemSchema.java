@@ -0,0 +1,49 @@
+package yadi.dlms.cosem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.classes.activitycalendar.DayProfile;
+import yadi.dlms.classes.activitycalendar.DayProfileAction;
+import yadi.dlms.classes.specialday.SpecialDayEntry;
+
+public class TestCosemSchema {
+
+	@Test
+	void testDecodeArray() {
+		byte[] data = new byte[] {0x01, 0x02,
+				0x02, 0x03, 0x12, 0x00, 0x01, 0x09, 0x05, 0x07, (byte)0xE4, 0x01, 0x01, (byte)0xFF, 0x11, 0x02,
+				0x02, 0x03, 0x12, 0x00, 0x02, 0x09, 0x05, (byte)0xFF, (byte)0xFF, 0x0C, 0x19, (byte)0xFF, 0x11, 0x03};
+		SpecialDayEntry[] entries = SpecialDayEntry.SCHEMA.decodeArray(data, SpecialDayEntry[]::new);
+		assertEquals(2, entries.length);
+		assertEquals(1, entries[0].getIndex());
+		assertEquals(2020, entries[0].getDate().getYear());
+		assertEquals(2, entries[0].getDayId());
+		assertEquals(25, entries[1].getDate().getMonthDay());
+		assertEquals(3, entries[1].getDayId());
+		assertArrayEquals(data, SpecialDayEntry.SCHEMA.encodeArray(entries));
+	}
+
+	@Test
+	void testNestedArray() {
+		byte[] data = new byte[] {0x01, 0x01,
+				0x02, 0x02, 0x11, 0x05, 0x01, 0x01,
+				0x02, 0x03, 0x09, 0x04, 0x06, 0x00, 0x00, 0x00,
+				0x09, 0x06, 0x00, 0x00, 0x0A, 0x00, 0x64, (byte)0xFF, 0x12, 0x00, 0x01};
+		DayProfile[] profiles = DayProfile.SCHEMA.decodeArray(data, DayProfile[]::new);
+		assertEquals(5, profiles[0].getDayId());
+		DayProfileAction action = profiles[0].getDaySchedule()[0];
+		assertEquals(6, action.getStartTime().getHour());
+		assertArrayEquals(new byte[] {0x00, 0x00, 0x0A, 0x00, 0x64, (byte)0xFF}, action.getScriptLogicalName());
+		assertEquals(1, action.getScriptSelector());
+		assertArrayEquals(data, DayProfile.SCHEMA.encodeArray(profiles));
+	}
+
+	@Test
+	void testWrongStructureSize() {
+		assertThrows(IllegalArgumentException.class, () -> SpecialDayEntry.SCHEMA.decode(new byte[] {0x02, 0x02, 0x12, 0x00, 0x01}));
+	}
+}
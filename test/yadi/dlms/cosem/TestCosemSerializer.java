@@ -1,6 +1,13 @@
 package yadi.dlms.cosem;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
 
 import yadi.dlms.cosem.CosemSerializer;
@@ -72,4 +79,43 @@ public class TestCosemSerializer {
 		assertArrayEquals(new CosemSerializer().int8(-100).serialize(), new byte[] {0x0F, (byte)0x9C});
 		assertArrayEquals(new CosemSerializer().int8(-128).serialize(), new byte[] {0x0F, (byte)0x80});
 	}
+	
+	@Test
+	void testCosemSerializeIntoBuffer() {
+		ByteBuffer apdu = ByteBuffer.allocate(4);
+		apdu.put(new byte[] {(byte)0xC1, 0x01, 0x41});
+		CosemSerializer serializer = new CosemSerializer(apdu).uint32(0x01020304).uint16(0x0506);
+		assertArrayEquals(new byte[] {0x06, 0x01, 0x02, 0x03, 0x04, 0x12, 0x05, 0x06}, serializer.serialize());
+		ByteBuffer out = serializer.getBuffer();
+		assertArrayEquals(new byte[] {(byte)0xC1, 0x01, 0x41, 0x06, 0x01, 0x02, 0x03, 0x04, 0x12, 0x05, 0x06}, 
+				Arrays.copyOf(out.array(), out.position()));
+		assertArrayEquals(new byte[] {0x11, 0x07}, serializer.reset().uint8(7).serialize());
+	}
+
+	@Test
+	void testCosemSerializeIntoDirectBuffer() {
+		ByteBuffer apdu = ByteBuffer.allocateDirect(4);
+		apdu.put(new byte[] {(byte)0xC1, 0x01, 0x41});
+		CosemSerializer serializer = new CosemSerializer(apdu).uint32(0x01020304);
+		assertArrayEquals(new byte[] {0x06, 0x01, 0x02, 0x03, 0x04}, serializer.serialize());
+		ByteBuffer out = serializer.getBuffer();
+		assertTrue(out.isDirect());
+		ByteBuffer dst = ByteBuffer.allocate(16);
+		serializer.writeTo(dst);
+		assertEquals(5, dst.position());
+		out.flip();
+		byte[] header = new byte[3];
+		out.get(header);
+		assertArrayEquals(new byte[] {(byte)0xC1, 0x01, 0x41}, header);
+	}
+
+	@Test
+	void testPooledSerializer() {
+		CosemSerializer serializer = CosemSerializer.acquire().uint8(1);
+		assertArrayEquals(new byte[] {0x11, 0x01}, serializer.serializeAndRelease());
+		CosemSerializer reused = CosemSerializer.acquire();
+		assertSame(serializer, reused);
+		assertEquals(0, reused.size());
+		assertArrayEquals(new byte[] {0x12, 0x00, 0x02}, reused.uint16(2).serializeAndRelease());
+	}
 }
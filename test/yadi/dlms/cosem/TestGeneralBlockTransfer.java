@@ -0,0 +1,66 @@
+package yadi.dlms.cosem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsException;
+
+public class TestGeneralBlockTransfer {
+
+	@Test
+	void testSendWindow() throws DlmsException {
+		GeneralBlockTransfer gbt = new GeneralBlockTransfer();
+		byte[] apdu = new byte[] {1, 2, 3, 4, 5};
+		assertArrayEquals(new byte[] {(byte)0xE0, 0x01, 0x00, 0x01, 0x00, 0x00, 0x02, 1, 2}, gbt.send(apdu, 2, 1));
+		assertNull(gbt.nextQueued());
+		//server acks block 1 and opens a window of 2 blocks
+		assertNull(gbt.receive(new byte[] {(byte)0xE0, 0x02, 0x00, 0x01, 0x00, 0x01, 0x00}));
+		assertArrayEquals(new byte[] {(byte)0xE0, 0x41, 0x00, 0x02, 0x00, 0x01, 0x02, 3, 4}, gbt.nextRequest(1));
+		assertArrayEquals(new byte[] {(byte)0xE0, (byte)0x81, 0x00, 0x03, 0x00, 0x01, 0x01, 5}, gbt.nextQueued());
+		assertNull(gbt.nextQueued());
+	}
+
+	@Test
+	void testReceiveStreamWithLostBlock() throws DlmsException {
+		GeneralBlockTransfer gbt = new GeneralBlockTransfer();
+		assertNull(gbt.receive(new byte[] {(byte)0xE0, 0x43, 0x00, 0x01, 0x00, 0x00, 0x01, 10}));
+		assertTrue(gbt.isStreaming());
+		//block 2 lost, block 3 closes the window
+		assertNull(gbt.receive(new byte[] {(byte)0xE0, 0x03, 0x00, 0x03, 0x00, 0x00, 0x01, 30}));
+		assertFalse(gbt.isStreaming());
+		assertTrue(gbt.isActive());
+		assertArrayEquals(new byte[] {(byte)0xE0, 0x03, 0x00, 0x01, 0x00, 0x01, 0x00}, gbt.nextRequest(3));
+		assertNull(gbt.receive(new byte[] {(byte)0xE0, 0x43, 0x00, 0x02, 0x00, 0x01, 0x01, 20}));
+		assertArrayEquals(new byte[] {10, 20, 30}, gbt.receive(new byte[] {(byte)0xE0, (byte)0x83, 0x00, 0x03, 0x00, 0x01, 0x01, 30}));
+		assertFalse(gbt.isActive());
+	}
+
+	@Test
+	void testFullBlockFitsPdu() throws DlmsException {
+		int maxPduSize = 512;
+		GeneralBlockTransfer gbt = new GeneralBlockTransfer();
+		byte[] apdu = new byte[2000];
+		byte[] block = gbt.send(apdu, maxPduSize - GeneralBlockTransfer.HEADER_SIZE, 1);
+		assertEquals(maxPduSize, block.length);
+		assertNull(gbt.receive(new byte[] {(byte)0xE0, 0x02, 0x00, 0x01, 0x00, 0x01, 0x00}));
+		assertEquals(maxPduSize, gbt.nextRequest(1).length);
+		assertEquals(maxPduSize, gbt.nextQueued().length);
+	}
+
+	@Test
+	void testMaxWindowSize() throws DlmsException {
+		GeneralBlockTransfer gbt = new GeneralBlockTransfer();
+		gbt.setMaxWindowSize(1);
+		byte[] apdu = new byte[] {1, 2, 3, 4, 5};
+		assertArrayEquals(new byte[] {(byte)0xE0, 0x01, 0x00, 0x01, 0x00, 0x00, 0x02, 1, 2}, gbt.send(apdu, 2, 4));
+		//the server opens a window of 3 blocks, still one block is sent per request
+		assertNull(gbt.receive(new byte[] {(byte)0xE0, 0x03, 0x00, 0x01, 0x00, 0x01, 0x00}));
+		assertArrayEquals(new byte[] {(byte)0xE0, 0x01, 0x00, 0x02, 0x00, 0x01, 0x02, 3, 4}, gbt.nextRequest(4));
+		assertNull(gbt.nextQueued());
+	}
+}
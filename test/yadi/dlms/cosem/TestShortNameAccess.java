@@ -0,0 +1,61 @@
+package yadi.dlms.cosem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import yadi.dlms.DlmsException;
+
+public class TestShortNameAccess {
+
+	@Test
+	void testReadMultipleVariables() throws DlmsException {
+		Cosem cosem = new Cosem();
+		SnDescriptor first = new SnDescriptor(0x1234);
+		SnDescriptor second = new SnDescriptor(0x5678);
+		second.setRequestData(new byte[] {0x01, 0x12, 0x00, 0x01});
+		assertArrayEquals(new byte[] {0x05, 0x02, 0x02, 0x12, 0x34, 0x04, 0x56, 0x78, 0x01, 0x12, 0x00, 0x01},
+				cosem.readRequest(first, second));
+		assertTrue(cosem.parseReadResponse(new SnDescriptor[] {first, second},
+				new byte[] {0x0C, 0x02, 0x00, 0x02, 0x02, 0x11, 0x01, 0x09, 0x01, 0x05, 0x00, 0x12, 0x00, 0x07}));
+		assertArrayEquals(new byte[] {0x02, 0x02, 0x11, 0x01, 0x09, 0x01, 0x05}, first.getResponseData());
+		assertArrayEquals(new byte[] {0x12, 0x00, 0x07}, second.getResponseData());
+	}
+
+	@Test
+	void testReadDataBlocks() throws DlmsException {
+		Cosem cosem = new Cosem();
+		SnDescriptor desc = new SnDescriptor(0x1234);
+		cosem.readRequest(desc);
+		assertFalse(cosem.parseReadResponse(desc, new byte[] {0x0C, 0x01, 0x02, 0x00, 0x00, 0x01, 0x03, 0x01, 0x00, 0x12}));
+		assertArrayEquals(new byte[] {0x05, 0x01, 0x05, 0x00, 0x01}, cosem.readRequest(desc));
+		assertTrue(cosem.parseReadResponse(desc, new byte[] {0x0C, 0x01, 0x02, (byte)0xFF, 0x00, 0x02, 0x02, 0x00, 0x07}));
+		assertArrayEquals(new byte[] {0x12, 0x00, 0x07}, desc.getResponseData());
+		assertArrayEquals(new byte[] {0x05, 0x01, 0x02, 0x12, 0x34}, cosem.readRequest(desc));
+	}
+
+	@Test
+	void testReadAccessError() throws DlmsException {
+		Cosem cosem = new Cosem();
+		SnDescriptor first = new SnDescriptor(0x1234);
+		SnDescriptor second = new SnDescriptor(0x5678);
+		assertThrows(DlmsException.class, () -> cosem.parseReadResponse(new SnDescriptor[] {first, second},
+				new byte[] {0x0C, 0x02, 0x01, 0x03, 0x00, 0x11, 0x05}));
+		assertArrayEquals(new byte[] {0x11, 0x05}, second.getResponseData());
+	}
+
+	@Test
+	void testWriteMultipleVariables() throws DlmsException {
+		Cosem cosem = new Cosem();
+		SnDescriptor first = new SnDescriptor(0x1234);
+		first.setRequestData(new byte[] {0x11, 0x01});
+		SnDescriptor second = new SnDescriptor(0x5678);
+		second.setRequestData(new byte[] {0x03, 0x00});
+		assertArrayEquals(new byte[] {0x06, 0x02, 0x02, 0x12, 0x34, 0x02, 0x56, 0x78, 0x02, 0x11, 0x01, 0x03, 0x00},
+				cosem.writeRequest(first, second));
+		assertTrue(cosem.parseWriteResponse(new SnDescriptor[] {first, second}, new byte[] {0x0D, 0x02, 0x00, 0x00}));
+	}
+}